@@ -0,0 +1,100 @@
+/*
+ * Copyright (C) 2015 Evangelos Pournaras
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+
+package components;
+
+import enums.FingerDescriptorTypes;
+import dsutil.protopeer.FingerDescriptor;
+import protopeer.Finger;
+import protopeer.PeerIdentifier;
+import protopeer.network.NetworkAddress;
+
+/**
+ * A read-only descriptor of a neighbor returned by the Peer Sampling Service.
+ * It gives access to the finger, the age and the other descriptor types of a
+ * neighbor without copying the <code>FingerDescriptor</code> of the view. The
+ * wrapped descriptor is shared with the view and it is never modified. The
+ * age is the age of the neighbor at the time the descriptor was handed out by
+ * the view.
+ *
+ * @author Evangelos
+ */
+public final class ImmutableDescriptor {
+
+    private final FingerDescriptor descriptor;
+    private final double age;
+
+    ImmutableDescriptor(FingerDescriptor descriptor, double age){
+        this.descriptor=descriptor;
+        this.age=age;
+    }
+
+    public Finger getFinger(){
+        return descriptor.getFinger();
+    }
+
+    public NetworkAddress getNetworkAddress(){
+        return descriptor.getNetworkAddress();
+    }
+
+    public PeerIdentifier getPeerIdentifier(){
+        return descriptor.getPeerIdentifier();
+    }
+
+    public double getAge(){
+        return age;
+    }
+
+    /**
+	 * Returns the value of a descriptor type or null if the neighbor does not
+     * have this type. The value must not be modified.
+     *
+     * @param type the descriptor type
+	 */
+    public Object getDescriptor(Enum type){
+        if(type==FingerDescriptorTypes.AGE){
+            return age;
+        }
+        return descriptor.getDescriptor(type);
+    }
+
+    public boolean hasDescriptor(Enum type){
+        return descriptor.hasDescriptor(type);
+    }
+
+    /**
+	 * Returns a modifiable copy of the descriptor with its age.
+	 */
+    public FingerDescriptor toFingerDescriptor(){
+        FingerDescriptor copy=descriptor.clone();
+        copy.replaceDescriptor(FingerDescriptorTypes.AGE, age);
+        return copy;
+    }
+
+    /**
+	 * Checks if this descriptor wraps the given descriptor object.
+	 */
+    boolean wraps(FingerDescriptor descriptor){
+        return this.descriptor==descriptor;
+    }
+
+    @Override
+    public String toString(){
+        return descriptor.getFinger()+" age: "+age;
+    }
+}
@@ -0,0 +1,230 @@
+/*
+ * Copyright (C) 2015 Evangelos Pournaras
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+
+package components;
+
+import dsutil.protopeer.FingerDescriptor;
+import enums.FingerDescriptorTypes;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import protopeer.network.NetworkAddress;
+import util.SwapMessage;
+
+/**
+ * Delta encodes the buffers exchanged with repeat partners. The buffer lists
+ * of the messages are changed in place and the digests keep their own copies,
+ * since a message sent by a peer is only copied shallowly, so its buffer list
+ * is shared by the sender and the receiver. For every recent partner, it
+ * remembers the last buffer sent to it and the last buffer received from it,
+ * with their sequence numbers. A descriptor of a sent
+ * buffer that is in one of these buffers with the same finger and the same
+ * descriptors except the age is sent as a reference with its current age.
+ * The receiver resolves the references if the buffers it remembers have the
+ * sequence numbers of the bases of the message. References that cannot be
+ * resolved, e.g. because a message was lost or two swaps crossed, are
+ * dropped from the buffer. Only the digests of the partners with an exchange
+ * within a horizon are used for references and the digests are forgotten
+ * after twice the horizon. In this way, both partners forget a digest at
+ * about the same time and a receiver still has the digests the references of
+ * a sender refer to, if messages are delivered within the horizon.
+ *
+ * @author Evangelos
+ */
+public class PartnerDigests {
+
+    private final static int SENT=0;
+    private final static int RECEIVED=1;
+
+    private final LinkedHashMap<NetworkAddress, Digest> digests;
+    private final AgeDescriptorManager ageManager;
+    private final double horizon;
+
+    /**
+	 * Creates the digests of the partners.
+     *
+     * @param horizon the time since the last exchange with a partner within
+     * which its digest is used
+	 */
+    public PartnerDigests(double horizon){
+        this.digests=new LinkedHashMap<NetworkAddress, Digest>(16, 0.75f, true);
+        this.ageManager=new AgeDescriptorManager();
+        this.horizon=horizon;
+    }
+
+    /**
+	 * Replaces the descriptors of the buffer of a message that were exchanged
+     * in the last swap with the partner by references. The complete buffer
+     * is remembered as the last buffer sent to the partner.
+     *
+     * @param message the encoded message with the complete buffer
+     * @param partner the receiver of the message
+     * @param time the current time
+	 */
+    public synchronized void encode(SwapMessage message, NetworkAddress partner, double time){
+        Digest digest=this.getDigest(partner, time);
+        Map<NetworkAddress, Integer> bases=new HashMap<NetworkAddress, Integer>();
+        if(time-digest.time<=this.horizon){
+            for(int i=0;i<digest.received.size();i++){
+                bases.put(digest.received.get(i).getNetworkAddress(), i<<1|RECEIVED);
+            }
+            for(int i=0;i<digest.sent.size();i++){
+                bases.put(digest.sent.get(i).getNetworkAddress(), i<<1|SENT);
+            }
+        }
+        List<FingerDescriptor> buffer=message.buffer;
+        List<FingerDescriptor> full=new ArrayList<FingerDescriptor>();
+        int[] references=new int[buffer.size()];
+        double[] ages=new double[buffer.size()];
+        int referenced=0;
+        for(int i=0;i<buffer.size();i++){
+            FingerDescriptor descriptor=buffer.get(i);
+            Integer reference=bases.get(descriptor.getNetworkAddress());
+            if(reference!=null&&this.isSame(descriptor, this.getBase(digest, reference))){
+                references[i]=reference;
+                ages[referenced++]=this.ageManager.getAge(descriptor);
+            }
+            else{
+                references[i]=-1;
+                full.add(descriptor);
+            }
+        }
+        message.sentBase=digest.sentSequence;
+        message.receivedBase=digest.receivedSequence;
+        message.sequence=++digest.sentSequence;
+        message.references=references;
+        message.ages=Arrays.copyOf(ages, referenced);
+        digest.sent.clear();
+        digest.sent.addAll(buffer);
+        digest.time=time;
+        buffer.clear();
+        buffer.addAll(full);
+    }
+
+    /**
+	 * Restores the complete buffer of a delta encoded message. The complete
+     * buffer is remembered as the last buffer received from the partner. It
+     * returns the number of references that could not be resolved.
+     *
+     * @param message the decoded message
+     * @param partner the sender of the message
+     * @param time the current time
+	 */
+    public synchronized int decode(SwapMessage message, NetworkAddress partner, double time){
+        Digest digest=this.getDigest(partner, time);
+        //the bases are named as seen from the sender
+        List<FingerDescriptor> sentBase=digest.receivedSequence==message.sentBase?digest.received:null;
+        List<FingerDescriptor> receivedBase=digest.sentSequence==message.receivedBase?digest.sent:null;
+        List<FingerDescriptor> buffer=new ArrayList<FingerDescriptor>(message.references.length);
+        int unresolved=0;
+        int full=0;
+        int referenced=0;
+        for(int reference:message.references){
+            if(reference<0){
+                buffer.add(message.buffer.get(full++));
+                continue;
+            }
+            double age=message.ages[referenced++];
+            List<FingerDescriptor> base=(reference&1)==SENT?sentBase:receivedBase;
+            int index=reference>>1;
+            if(base==null||index>=base.size()){
+                unresolved++;
+                continue;
+            }
+            FingerDescriptor descriptor=base.get(index).clone();
+            this.ageManager.setAge(descriptor, age);
+            buffer.add(descriptor);
+        }
+        message.buffer.clear();
+        message.buffer.addAll(buffer);
+        message.references=null;
+        message.ages=null;
+        digest.received.clear();
+        digest.received.addAll(buffer);
+        digest.receivedSequence=message.sequence;
+        digest.time=time;
+        return unresolved;
+    }
+
+    /**
+	 * Returns the digest of a partner. The digests not used for twice the
+     * horizon are forgotten first. They are the eldest in the access order.
+	 */
+    private Digest getDigest(NetworkAddress partner, double time){
+        Iterator<Digest> iterator=this.digests.values().iterator();
+        while(iterator.hasNext()){
+            if(time-iterator.next().time<=2*this.horizon){
+                break;
+            }
+            iterator.remove();
+        }
+        Digest digest=this.digests.get(partner);
+        if(digest==null){
+            digest=new Digest();
+            digest.time=time;
+            this.digests.put(partner, digest);
+        }
+        return digest;
+    }
+
+    private FingerDescriptor getBase(Digest digest, int reference){
+        List<FingerDescriptor> base=(reference&1)==SENT?digest.sent:digest.received;
+        return base.get(reference>>1);
+    }
+
+    /**
+	 * Checks if two descriptors of the same peer have the same identifier and
+     * the same descriptors except the age.
+	 */
+    private boolean isSame(FingerDescriptor descriptor, FingerDescriptor base){
+        if(!descriptor.getPeerIdentifier().equals(base.getPeerIdentifier())){
+            return false;
+        }
+        Map<Enum, Object> descriptors=descriptor.getDescriptors();
+        Map<Enum, Object> baseDescriptors=base.getDescriptors();
+        if(descriptors.size()!=baseDescriptors.size()){
+            return false;
+        }
+        for(Map.Entry<Enum, Object> entry:descriptors.entrySet()){
+            if(entry.getKey()==FingerDescriptorTypes.AGE){
+                continue;
+            }
+            Object value=entry.getValue();
+            Object baseValue=baseDescriptors.get(entry.getKey());
+            if(value==null?baseValue!=null||!baseDescriptors.containsKey(entry.getKey()):!value.equals(baseValue)){
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+	 * The last buffers exchanged with a partner.
+	 */
+    private static class Digest{
+        private double time;
+        private int sentSequence;
+        private int receivedSequence;
+        private final List<FingerDescriptor> sent=new ArrayList<FingerDescriptor>();
+        private final List<FingerDescriptor> received=new ArrayList<FingerDescriptor>();
+    }
+}
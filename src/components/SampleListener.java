@@ -0,0 +1,40 @@
+/*
+ * Copyright (C) 2015 Evangelos Pournaras
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+
+package components;
+
+import java.util.List;
+
+/**
+ * Receives the fresh descriptors that enter the view of a
+ * <code>ViewManager</code>. It is notified after every selection that adds
+ * descriptors to the view, including the selection of the bootstrap
+ * neighbors, outside the lock of the view.
+ *
+ * @author Evangelos
+ */
+public interface SampleListener {
+
+    /**
+	 * Called with the descriptors added to the view by a selection. The
+     * descriptors are read-only and the list must not be modified.
+     *
+     * @param samples the fresh descriptors in the order they entered the view
+	 */
+    public void samplesArrived(List<ImmutableDescriptor> samples);
+}
@@ -0,0 +1,87 @@
+/*
+ * Copyright (C) 2015 Evangelos Pournaras
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+
+package components;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import dsutil.protopeer.FingerDescriptor;
+import protopeer.network.NetworkAddress;
+
+/**
+ * The queue of samples of the <code>ViewManager</code>. It holds the
+ * descriptors that entered the view and have not been returned as samples
+ * yet, in the order they entered the view. The queue is updated with the
+ * descriptors added to and evicted from the view by every selection, so the
+ * cost of an update depends on the number of exchanged descriptors and not on
+ * the length of the view. All operations take constant time.
+ *
+ * @author Evangelos
+ */
+public class SampleQueue {
+
+    private final Map<NetworkAddress, ImmutableDescriptor> samples;
+
+    public SampleQueue(){
+        this.samples=new LinkedHashMap<NetworkAddress, ImmutableDescriptor>();
+    }
+
+    /**
+	 * Adds a descriptor at the end of the queue. A queued descriptor of the
+     * same peer is replaced.
+     *
+     * @param descriptor the added descriptor
+	 */
+    public synchronized void add(ImmutableDescriptor descriptor){
+        this.samples.remove(descriptor.getNetworkAddress());
+        this.samples.put(descriptor.getNetworkAddress(), descriptor);
+    }
+
+    /**
+	 * Removes a descriptor of the view from the queue. A queued descriptor of
+     * the same peer that wraps a different object, e.g. a more recent one, is
+     * not removed.
+     *
+     * @param descriptor the removed descriptor of the view
+	 */
+    public synchronized void remove(FingerDescriptor descriptor){
+        ImmutableDescriptor sample=this.samples.get(descriptor.getNetworkAddress());
+        if(sample!=null&&sample.wraps(descriptor)){
+            this.samples.remove(descriptor.getNetworkAddress());
+        }
+    }
+
+    /**
+	 * Removes and returns the descriptor at the head of the queue or null if
+     * the queue is empty.
+	 */
+    public synchronized ImmutableDescriptor poll(){
+        Iterator<ImmutableDescriptor> iterator=this.samples.values().iterator();
+        if(iterator.hasNext()){
+            ImmutableDescriptor sample=iterator.next();
+            iterator.remove();
+            return sample;
+        }
+        return null;
+    }
+
+    public synchronized int size(){
+        return this.samples.size();
+    }
+}
@@ -0,0 +1,128 @@
+/*
+ * Copyright (C) 2015 Evangelos Pournaras
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+
+package components;
+
+import dsutil.protopeer.FingerDescriptor;
+import enums.MessageType;
+import enums.ViewPropagationPolicy;
+import java.util.List;
+import protopeer.network.NetworkAddress;
+
+/**
+ * The active and passive states of the swaps of a peer for the view
+ * propagation policies, independently of how the messages are delivered. The
+ * active state selects the partner and sends an ACTION with a buffer in the
+ * PUSHPULL and PUSH policies and without descriptors in the PULL policy. An
+ * ACTION is answered with a REACTION in the PUSHPULL and PULL policies and its
+ * buffer is merged in the PUSHPULL and PUSH policies. A REACTION is merged in
+ * the PUSHPULL and PULL policies and a BUSY message makes the peer back off
+ * from its sender. The age of the view is increased by A after every active
+ * and passive state.
+ *
+ * It is run by the <code>PeerSamplingService</code> peerlet and by the
+ * <code>ParallelSimulation</code>, so that both simulate the same protocol.
+ *
+ * @author Evangelos
+ */
+public class SwapProtocol {
+
+    private final ViewManager viewManager;
+    private final ViewPropagationPolicy viewPropagationPolicy;
+    private final int A;
+    private final int backOffSelections;
+    private final SwapTransport transport;
+
+    /**
+	 * Creates the swaps of a peer.
+     *
+     * @param viewManager the view manager of the peer
+     * @param viewPropagationPolicy the view propagation policy
+     * @param A the age increase after every active and passive state
+     * @param backOffSelections the number of peer selections that avoid a
+     * peer after it answered with a BUSY message
+     * @param transport the transport of the messages
+	 */
+    public SwapProtocol(ViewManager viewManager, ViewPropagationPolicy viewPropagationPolicy, int A, int backOffSelections, SwapTransport transport){
+        this.viewManager=viewManager;
+        this.viewPropagationPolicy=viewPropagationPolicy;
+        this.A=A;
+        this.backOffSelections=backOffSelections;
+        this.transport=transport;
+    }
+
+    /**
+	 * Runs the active state. The ACTION is sent to the peer selected by the
+     * peer selection policy, unless the swap of the period has already been
+     * performed in another way, and then the age is increased.
+     *
+     * @param swap false if no ACTION is sent in this active state
+	 */
+    public void runActiveState(boolean swap){
+        if(swap){
+            FingerDescriptor neighbor=this.viewManager.selectPeer();
+            if(neighbor!=null){
+                this.transport.send(MessageType.ACTION, neighbor.getNetworkAddress(), this.hasActionBuffer());
+            }
+        }
+        this.viewManager.increaseAge(A);
+    }
+
+    /**
+	 * Returns true if the ACTIONs carry a buffer in the view propagation
+     * policy.
+	 */
+    public boolean hasActionBuffer(){
+        return this.viewPropagationPolicy!=ViewPropagationPolicy.PULL;
+    }
+
+    /**
+	 * Runs the passive state for a received message and then increases the
+     * age.
+     *
+     * @param type the type of the received message
+     * @param source the sender of the message
+     * @param buffer the received buffer
+	 */
+    public void runPassiveState(MessageType type, NetworkAddress source, List<FingerDescriptor> buffer){
+        switch(type){
+            case REACTION:
+                if(this.viewPropagationPolicy!=ViewPropagationPolicy.PUSH){
+                    this.transport.merge(buffer);
+                }
+                break;
+            case ACTION:
+                if(!this.transport.accept(source)){
+                    break;
+                }
+                if(this.viewPropagationPolicy!=ViewPropagationPolicy.PUSH){
+                    this.transport.send(MessageType.REACTION, source, true);
+                }
+                if(this.viewPropagationPolicy!=ViewPropagationPolicy.PULL){
+                    this.transport.merge(buffer);
+                }
+                break;
+            case BUSY:
+                this.viewManager.backOff(source, this.backOffSelections);
+                break;
+            default:
+                // another message type has been received and just ignore it...
+        }
+        this.viewManager.increaseAge(A);
+    }
+}
@@ -0,0 +1,61 @@
+/*
+ * Copyright (C) 2015 Evangelos Pournaras
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+
+package components;
+
+import dsutil.protopeer.FingerDescriptor;
+import enums.MessageType;
+import java.util.List;
+import protopeer.network.NetworkAddress;
+
+/**
+ * Sends and merges the buffers of the swaps of a <code>SwapProtocol</code>.
+ * It is implemented by the <code>PeerSamplingService</code> peerlet with the
+ * messages of ProtoPeer and by the <code>ParallelSimulation</code> with the
+ * events of its partitions.
+ *
+ * @author Evangelos
+ */
+public interface SwapTransport {
+
+    /**
+	 * Sends a message of a swap. A message with a buffer carries the buffer
+     * created by the view manager for the destination, and a message without
+     * a buffer carries no descriptors.
+     *
+     * @param type the type of the message
+     * @param destination the destination peer
+     * @param withBuffer true if the message carries a buffer
+	 */
+    public void send(MessageType type, NetworkAddress destination, boolean withBuffer);
+
+    /**
+	 * Merges a received buffer in the view.
+     *
+     * @param buffer the received buffer
+	 */
+    public void merge(List<FingerDescriptor> buffer);
+
+    /**
+	 * Decides if a received ACTION is accepted. A rejected ACTION is neither
+     * answered nor merged.
+     *
+     * @param source the sender of the ACTION
+	 */
+    public boolean accept(NetworkAddress source);
+}
@@ -0,0 +1,538 @@
+/*
+ * Copyright (C) 2015 Evangelos Pournaras
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+
+package components;
+
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.RandomAccess;
+import java.util.Set;
+import java.util.TreeSet;
+import dsutil.protopeer.FingerDescriptor;
+import protopeer.network.NetworkAddress;
+
+/**
+ * The view of the <code>ViewManager</code>. Next to the positional list that
+ * the protocol requires for the permutation and the head operations, it keeps
+ * a hash index of the descriptors by network address and an ordering of the
+ * descriptors by age. In this way, the duplicate checks, the replacement of
+ * older duplicates, the removal of the oldest descriptors and the removal of
+ * the head do not scan the list for every descriptor. Removals in the middle
+ * of the list are marked and the list is compacted once at the end of each
+ * operation. The oldest descriptors used for healing are found by a partial
+ * selection that keeps the positional tie-breaking of the protocol.
+ *
+ * The ages of the descriptors are kept by the view as primitive values. The
+ * age descriptor of a received descriptor is read once when it enters the
+ * view and it is written back only to the copies of the descriptors that
+ * leave the view, e.g. in the buffer of a swap. The view stores the time each
+ * descriptor was born and computes the age from the time of the view when
+ * it is needed. Aging all descriptors only advances the time of the view.
+ *
+ * The view records the descriptors it adds and evicts, so that the samples
+ * of the <code>ViewManager</code> are updated only with these changes.
+ *
+ * The view is read-only for other classes. It is modified only by the
+ * operations defined here.
+ *
+ * @author Evangelos
+ */
+public class View extends AbstractList<FingerDescriptor> implements RandomAccess{
+
+    private final List<Entry> entries;
+    private final Map<NetworkAddress, Entry> index;
+    private final TreeSet<Entry> ageOrder;
+    private final AgeDescriptorManager ageManager;
+    private long sequence;
+    private double time;
+    private double[] births;
+    private int[] positions;
+    private final List<FingerDescriptor> added;
+    private final List<FingerDescriptor> evicted;
+
+    /**
+	 * Creates an empty view.
+     *
+     * @param ageManager the age manager used to compare the descriptors
+	 */
+    public View(AgeDescriptorManager ageManager){
+        this.ageManager=ageManager;
+        this.entries=new ArrayList<Entry>();
+        this.index=new HashMap<NetworkAddress, Entry>();
+        this.ageOrder=new TreeSet<Entry>(new Comparator<Entry>(){
+            public int compare(Entry a, Entry b){
+                int order=Double.compare(a.birth, b.birth);
+                if(order!=0){
+                    return order;
+                }
+                return a.sequence<b.sequence?-1:(a.sequence==b.sequence?0:1);
+            }
+        });
+        this.sequence=0;
+        this.added=new ArrayList<FingerDescriptor>();
+        this.evicted=new ArrayList<FingerDescriptor>();
+        this.births=new double[0];
+        this.time=0.0;
+        this.positions=new int[0];
+    }
+
+    @Override
+    public FingerDescriptor get(int position){
+        return entries.get(position).descriptor;
+    }
+
+    @Override
+    public int size(){
+        return entries.size();
+    }
+
+    /**
+	 * Checks in constant time if a descriptor of the same peer is in the view.
+     *
+     * @param o the checked descriptor
+	 */
+    @Override
+    public boolean contains(Object o){
+        if(o instanceof FingerDescriptor){
+            return index.containsKey(((FingerDescriptor)o).getNetworkAddress());
+        }
+        return false;
+    }
+
+    /**
+	 * Returns the descriptor in the view with the given network address or
+     * null if there is no such descriptor.
+     *
+     * @param address the network address of the requested descriptor
+	 */
+    public FingerDescriptor getDescriptor(NetworkAddress address){
+        Entry entry=index.get(address);
+        return entry==null?null:entry.descriptor;
+    }
+
+    /**
+	 * Returns a copy of the descriptor at a position with its current age.
+     *
+     * @param position the position of the copied descriptor
+	 */
+    public FingerDescriptor copy(int position){
+        Entry entry=entries.get(position);
+        FingerDescriptor copy=entry.descriptor.clone();
+        ageManager.setAge(copy, time-entry.birth);
+        return copy;
+    }
+
+    /**
+	 * Returns the descriptor at a position wrapped in a read-only descriptor
+     * with its current age. The descriptor is not copied.
+     *
+     * @param position the position of the descriptor
+	 */
+    public ImmutableDescriptor getImmutable(int position){
+        Entry entry=entries.get(position);
+        return new ImmutableDescriptor(entry.descriptor, time-entry.birth);
+    }
+
+    /**
+	 * Returns the descriptor of the view wrapped in a read-only descriptor with
+     * its current age or null if the descriptor object is not in the view.
+     *
+     * @param descriptor a descriptor of the view
+	 */
+    public ImmutableDescriptor getImmutable(FingerDescriptor descriptor){
+        Entry entry=index.get(descriptor.getNetworkAddress());
+        if(entry==null||entry.descriptor!=descriptor){
+            return null;
+        }
+        return new ImmutableDescriptor(entry.descriptor, time-entry.birth);
+    }
+
+    /**
+	 * Increases the age of all the descriptors in the view by advancing the
+     * time of the view. It does not depend on the length of the view.
+     *
+     * @param timePassed the increase of the age
+	 */
+    public void increaseAge(double timePassed){
+        this.time+=timePassed;
+    }
+
+    /**
+	 * Sets the time of the view. The age of every descriptor is the time of
+     * the view minus the time the descriptor was born.
+     *
+     * @param time the time of the view
+	 */
+    public void setTime(double time){
+        this.time=time;
+    }
+
+    /**
+	 * Returns the descriptors added to the view since the last call of
+     * <code>clearChanges</code>. Some of them may have been evicted again.
+	 */
+    public List<FingerDescriptor> getAdded(){
+        return added;
+    }
+
+    /**
+	 * Returns the descriptors evicted from the view since the last call of
+     * <code>clearChanges</code>.
+	 */
+    public List<FingerDescriptor> getEvicted(){
+        return evicted;
+    }
+
+    /**
+	 * Forgets the added and evicted descriptors.
+	 */
+    public void clearChanges(){
+        added.clear();
+        evicted.clear();
+    }
+
+    /**
+	 * Returns the oldest descriptor in the view or null if the view is empty.
+     * Among descriptors with the same age, the one at the lowest position is
+     * returned, so that the ties are broken randomly after a permutation.
+	 */
+    public FingerDescriptor getOldest(){
+        if(ageOrder.isEmpty()){
+            return null;
+        }
+        return this.breakTie(ageOrder.first(), Collections.<NetworkAddress>emptySet());
+    }
+
+    /**
+	 * Returns the oldest descriptor of a peer that is not excluded, or null if
+     * all the peers of the view are excluded. Among descriptors with the same
+     * age, the one at the lowest position is returned.
+     *
+     * @param excluded the excluded peers
+	 */
+    public FingerDescriptor getOldest(Set<NetworkAddress> excluded){
+        for(Entry entry:ageOrder){
+            if(!excluded.contains(entry.descriptor.getNetworkAddress())){
+                return this.breakTie(entry, excluded);
+            }
+        }
+        return null;
+    }
+
+    /**
+	 * Returns the descriptor of the given oldest entry, or of the entry at the
+     * lowest position with the same age that is not excluded. The positional
+     * list is scanned only if there are other entries with the same age.
+	 */
+    private FingerDescriptor breakTie(Entry oldest, Set<NetworkAddress> excluded){
+        Entry next=ageOrder.higher(oldest);
+        if(next==null||Double.compare(next.birth, oldest.birth)!=0){
+            return oldest.descriptor;
+        }
+        for(Entry entry:entries){
+            if(!entry.removed&&Double.compare(entry.birth, oldest.birth)==0&&!excluded.contains(entry.descriptor.getNetworkAddress())){
+                return entry.descriptor;
+            }
+        }
+        return oldest.descriptor;
+    }
+
+    /**
+	 * Appends the descriptors of the buffer at the end of the view without
+     * inserting duplicates. If a descriptor is already in the view and the
+     * existing one is older, the existing one is removed and the received one
+     * is appended. Descriptors of the excluded peer are ignored.
+     *
+     * @param buffer the appended descriptors
+     * @param excluded the descriptor of the local peer
+	 */
+    public void appendUnique(List<FingerDescriptor> buffer, FingerDescriptor excluded){
+        boolean removals=false;
+        for(FingerDescriptor neighbor:buffer){
+            if(neighbor.equals(excluded)){
+                continue;
+            }
+            Entry duplicate=index.get(neighbor.getNetworkAddress());
+            if(duplicate==null){
+                this.append(neighbor);
+            }
+            else if(time-duplicate.birth>ageManager.getAge(neighbor)){
+                this.unlink(duplicate);
+                removals=true;
+                this.append(neighbor);
+            }
+        }
+        if(removals){
+            this.compact();
+        }
+    }
+
+    /**
+	 * Finds the positions of the n oldest descriptors in the view. Among
+     * descriptors with the same age, the ones closer to the head of the view
+     * are selected first, as a stable sort of the view by age would do.
+     *
+     * The returned array is reused by the next call. Only its first
+     * min(n, size) elements are the selected positions, in no specific order.
+     *
+     * @param n the number of oldest descriptors
+	 */
+    int[] selectOldest(int n){
+        int size=entries.size();
+        if(births.length<size){
+            births=new double[Math.max(size, 2*births.length)];
+            positions=new int[births.length];
+        }
+        for(int i=0;i<size;i++){
+            births[i]=entries.get(i).birth;
+            positions[i]=i;
+        }
+        selectOldest(births, positions, size, n);
+        return positions;
+    }
+
+    /**
+	 * Finds the n oldest of size items with a partial selection (quickselect)
+     * over primitive arrays instead of sorting them. The births are indexed by
+     * the position of the items and the positions have to hold 0 to size-1.
+     * Afterwards, the first min(n, size) positions are the ones of the oldest
+     * items, in no specific order. Among items with the same birth, the ones
+     * with the lower positions are selected first. It is shared by the view
+     * and the <code>CycleSimulation</code>.
+     *
+     * @param births the births of the items
+     * @param positions the positions of the items, which are reordered
+     * @param size the number of items
+     * @param n the number of oldest items
+	 */
+    public static void selectOldest(double[] births, int[] positions, int size, int n){
+        int k=Math.min(n, size);
+        int left=0;
+        int right=size-1;
+        while(k>0&&k<size&&left<right){
+            swapPositions(positions, (left+right)>>>1, right);
+            int pivot=positions[right];
+            int store=left;
+            for(int i=left;i<right;i++){
+                if(isOlder(births, positions[i], pivot)){
+                    swapPositions(positions, i, store++);
+                }
+            }
+            swapPositions(positions, store, right);
+            if(store==k||store==k-1){
+                break;
+            }
+            else if(store<k){
+                left=store+1;
+            }
+            else{
+                right=store-1;
+            }
+        }
+    }
+
+    /**
+	 * Checks if the item at position a comes before the item at position b in
+     * the age order used by <code>selectOldest</code>.
+	 */
+    private static boolean isOlder(double[] births, int a, int b){
+        return births[a]<births[b]||(births[a]==births[b]&&a<b);
+    }
+
+    private static void swapPositions(int[] positions, int i, int j){
+        int position=positions[i];
+        positions[i]=positions[j];
+        positions[j]=position;
+    }
+
+    /**
+	 * Removes n descriptors from the head of the view.
+     *
+     * @param n the number of removed descriptors
+	 */
+    public void removeHead(int n){
+        if(n<=0){
+            return;
+        }
+        List<Entry> head=entries.subList(0, Math.min(n, entries.size()));
+        for(Entry entry:head){
+            index.remove(entry.descriptor.getNetworkAddress());
+            ageOrder.remove(entry);
+            evicted.add(entry.descriptor);
+        }
+        head.clear();
+    }
+
+    /**
+	 * Returns a mark of the descriptors that have entered the view so far.
+	 */
+    public long getMark(){
+        return sequence;
+    }
+
+    /**
+	 * Removes up to n descriptors of the peers of the given descriptors, in
+     * the order of the list. The peers that are not in the view and the
+     * descriptors that entered the view after the given mark are skipped.
+     *
+     * @param descriptors the descriptors of the removed peers
+     * @param n the maximum number of removed descriptors
+     * @param mark the mark returned by <code>getMark()</code>
+     * @return the number of removed descriptors
+	 */
+    public int removePeers(List<FingerDescriptor> descriptors, int n, long mark){
+        int removed=0;
+        for(int i=0;i<descriptors.size()&&removed<n;i++){
+            Entry entry=index.get(descriptors.get(i).getNetworkAddress());
+            if(entry!=null&&entry.sequence<mark){
+                this.unlink(entry);
+                removed++;
+            }
+        }
+        if(removed>0){
+            this.compact();
+        }
+        return removed;
+    }
+
+    /**
+	 * Removes the descriptors at the given positions. The order of the
+     * remaining descriptors is retained.
+     *
+     * @param positions the distinct positions of the removed descriptors
+     * @param n the number of positions used from the array
+	 */
+    public void removeAt(int[] positions, int n){
+        if(n<=0){
+            return;
+        }
+        for(int i=0;i<n;i++){
+            this.unlink(entries.get(positions[i]));
+        }
+        this.compact();
+    }
+
+    /**
+	 * Swaps the descriptors at two positions of the view.
+     *
+     * @param i a position in the view
+     * @param j a position in the view
+	 */
+    public void swap(int i, int j){
+        Entry ei=entries.get(i);
+        entries.set(i, entries.get(j));
+        entries.set(j, ei);
+    }
+
+    /**
+	 * Moves the descriptors at the given positions to the end of the view. Both
+     * the moved and the remaining descriptors retain their relative order.
+     *
+     * @param positions the distinct positions of the moved descriptors
+     * @param n the number of positions used from the array
+	 */
+    public void moveToEnd(int[] positions, int n){
+        if(n<=0){
+            return;
+        }
+        for(int i=0;i<n;i++){
+            entries.get(positions[i]).moved=true;
+        }
+        List<Entry> moved=new ArrayList<Entry>(n);
+        int j=0;
+        for(int i=0;i<entries.size();i++){
+            Entry entry=entries.get(i);
+            if(entry.moved){
+                entry.moved=false;
+                moved.add(entry);
+            }
+            else{
+                entries.set(j++, entry);
+            }
+        }
+        for(Entry entry:moved){
+            entries.set(j++, entry);
+        }
+    }
+
+    /**
+	 * Appends a descriptor that does not exist in the view.
+     *
+     * @param descriptor the appended descriptor
+	 */
+    private void append(FingerDescriptor descriptor){
+        Entry entry=new Entry(descriptor, time-ageManager.getAge(descriptor), sequence++);
+        entries.add(entry);
+        index.put(descriptor.getNetworkAddress(), entry);
+        ageOrder.add(entry);
+        added.add(descriptor);
+    }
+
+    /**
+	 * Removes an entry from the index and the age ordering and marks it for
+     * removal from the positional list.
+	 */
+    private void unlink(Entry entry){
+        ageOrder.remove(entry);
+        index.remove(entry.descriptor.getNetworkAddress());
+        entry.removed=true;
+        evicted.add(entry.descriptor);
+    }
+
+    /**
+	 * Removes the marked entries from the positional list in one pass.
+	 */
+    private void compact(){
+        int j=0;
+        for(int i=0;i<entries.size();i++){
+            Entry entry=entries.get(i);
+            if(!entry.removed){
+                entries.set(j++, entry);
+            }
+        }
+        entries.subList(j, entries.size()).clear();
+    }
+
+    /**
+	 * A descriptor together with the time it was born, i.e. the time of the
+     * view minus its age when it entered the view, and the order it entered
+     * the view. The order keeps descriptors with the same age apart in the
+     * age ordering.
+	 */
+    private static class Entry{
+
+        private final FingerDescriptor descriptor;
+        private final double birth;
+        private final long sequence;
+        private boolean removed;
+        private boolean moved;
+
+        private Entry(FingerDescriptor descriptor, double birth, long sequence){
+            this.descriptor=descriptor;
+            this.birth=birth;
+            this.sequence=sequence;
+            this.removed=false;
+            this.moved=false;
+        }
+    }
+}
@@ -22,9 +22,16 @@ import java.util.ArrayList;
 import java.util.List;
 import enums.PeerSelectionPolicy;
 import java.util.Collection;
-import java.util.Queue;
-import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.SplittableRandom;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
 import protopeer.Finger;
+import protopeer.network.NetworkAddress;
+import protopeer.time.Clock;
 import dsutil.protopeer.FingerDescriptor;
 
 
@@ -38,14 +45,24 @@ import dsutil.protopeer.FingerDescriptor;
  */
 public class ViewManager{
 
-    private Queue<FingerDescriptor> samples;
-    private final List<FingerDescriptor> view;
+    private final SampleQueue samples;
+    private final View view;
     private final FingerDescriptor myDescriptor;
+    private volatile FingerDescriptor myDescriptorCopy;
     private int c;
     private int H;
     private int S;
     private PeerSelectionPolicy policy;
     private AgeDescriptorManager ageManager;
+    private final Clock clock;
+    private volatile ViewSnapshot snapshot;
+    private final List<SampleListener> listeners;
+    private final List<CompletableFuture<ImmutableDescriptor>> pendingSamples;
+    private final SplittableRandom random;
+    private final SplittableRandom samplingSeeds;
+    private final ThreadLocal<SplittableRandom> samplingRandom;
+    private final Map<NetworkAddress, Long> backOffs;
+    private long selections;
     
     /**
 	 * Requires a set of parameters in order the defined operations to be
@@ -60,15 +77,82 @@ public class ViewManager{
      * local descriptor
 	 */
     public ViewManager (int c, int H, int S, PeerSelectionPolicy peerSelectionPolicy, Finger myFinger){
+        this(c, H, S, peerSelectionPolicy, myFinger, null);
+    }
+
+    /**
+	 * Creates a view manager whose descriptor ages follow a clock. The age of
+     * a descriptor is the time passed on the clock since the descriptor was
+     * born and it is computed when the descriptors are compared or copied.
+     * If the clock is null, the ages are increased by <code>increaseAge</code>.
+     *
+     * @param c the view length
+     * @param H the healing parameter
+     * @param S the swap parameter
+     * @param peerSelectionPolicy the peer selection police. It can by RAND or
+     * OLD
+     * @param myFinger the finger of the local peer. It is used to construct the
+     * local descriptor
+     * @param clock the clock of the local peer or null
+	 */
+    public ViewManager (int c, int H, int S, PeerSelectionPolicy peerSelectionPolicy, Finger myFinger, Clock clock){
+        this(c, H, S, peerSelectionPolicy, myFinger, clock, new SplittableRandom());
+    }
+
+    /**
+	 * Creates a view manager whose random decisions are taken from the given
+     * source. The permutation, the random removals and the peer selection use
+     * it under the lock of the view. The samples read without locking use
+     * sources split from it once per reading thread. With a seeded source
+     * and a single thread, the view manager is deterministic.
+     *
+     * @param c the view length
+     * @param H the healing parameter
+     * @param S the swap parameter
+     * @param peerSelectionPolicy the peer selection police. It can by RAND or
+     * OLD
+     * @param myFinger the finger of the local peer. It is used to construct the
+     * local descriptor
+     * @param clock the clock of the local peer or null
+     * @param random the random source of the local peer. It is owned by the
+     * view manager after the call.
+	 */
+    public ViewManager (int c, int H, int S, PeerSelectionPolicy peerSelectionPolicy, Finger myFinger, Clock clock, SplittableRandom random){
         this.c=c;
         this.H=H;
         this.S=S;
         this.policy=peerSelectionPolicy;
-        this.view=new ArrayList<FingerDescriptor>();
-        this.samples=new ConcurrentLinkedQueue<FingerDescriptor>();
         this.ageManager=new AgeDescriptorManager();
+        this.view=new View(this.ageManager);
+        this.samples=new SampleQueue();
         this.myDescriptor=new FingerDescriptor(myFinger);
         this.ageManager.initAge(myDescriptor);
+        this.clock=clock;
+        this.updateTime();
+        this.snapshot=new ViewSnapshot(new ArrayList<ImmutableDescriptor>());
+        this.listeners=new CopyOnWriteArrayList<SampleListener>();
+        this.pendingSamples=new ArrayList<CompletableFuture<ImmutableDescriptor>>();
+        this.backOffs=new HashMap<NetworkAddress, Long>();
+        this.random=random;
+        this.samplingSeeds=random.split();
+        this.samplingRandom=new ThreadLocal<SplittableRandom>(){
+            @Override
+            protected SplittableRandom initialValue(){
+                synchronized(samplingSeeds){
+                    return samplingSeeds.split();
+                }
+            }
+        };
+    }
+
+    /**
+	 * Sets the time of the view to the time of the clock, if the ages follow
+     * a clock.
+	 */
+    private void updateTime(){
+        if(this.clock!=null){
+            this.view.setTime(this.clock.getCurrentTime());
+        }
     }
 
     /**
@@ -77,72 +161,158 @@ public class ViewManager{
      * @param bootstrapPeers the neighbors that <code>NeighborManager</code> holds
 	 */
     public void setBootstrapPeers(Collection<Finger> bootstrapPeers){
-        synchronized(this.view){
-            for(Finger peer:bootstrapPeers){
-                FingerDescriptor descriptor=new FingerDescriptor(peer.clone());
-                this.ageManager.initAge(descriptor);
-                this.getView().add(descriptor);
-            }
-            //gurantees there are no more than c nodes in the view at the beginning
-            this.select(new ArrayList());
+        List<FingerDescriptor> descriptors=new ArrayList<FingerDescriptor>();
+        for(Finger peer:bootstrapPeers){
+            FingerDescriptor descriptor=new FingerDescriptor(peer.clone());
+            this.ageManager.initAge(descriptor);
+            descriptors.add(descriptor);
         }
+        //gurantees there are no more than c nodes in the view at the beginning
+        this.select(descriptors);
     }
 
     /**
 	 * Updates the sampels in the queue after an update, that is the call of the
-     * select() method. First the old elements are removed from the view and
-     * then the new ones are added in the queue.
+     * select() method. First the descriptors evicted from the view are removed
+     * from the queue and then the descriptors added to the view and still in
+     * it are added in the queue. Only the changes of the view are processed.
+     * It returns the added descriptors.
      *
 	 */
-    private void updateSamples(){
+    private List<ImmutableDescriptor> updateSamples(){
+        List<ImmutableDescriptor> fresh=new ArrayList<ImmutableDescriptor>();
         //step 1: removes from the queue items do not exist in the view anymore
-        for(FingerDescriptor descriptor:this.getSamples()){
-            if(!this.view.contains(descriptor)){
-                this.getSamples().remove(descriptor);
-            }
+        for(FingerDescriptor descriptor:this.view.getEvicted()){
+            this.samples.remove(descriptor);
         }
         //step 2: add new items in the queue
-        for(FingerDescriptor descriptor:this.view){
-            if(!this.samples.contains(descriptor)){
-                this.getSamples().add(descriptor);
+        for(FingerDescriptor descriptor:this.view.getAdded()){
+            ImmutableDescriptor sample=this.view.getImmutable(descriptor);
+            if(sample!=null){
+                this.samples.add(sample);
+                fresh.add(sample);
             }
         }
+        this.view.clearChanges();
+        return fresh;
     }
 
+    /**
+	 * Publishes a snapshot with the descriptors in the view. The descriptors
+     * are wrapped once per update of the view instead of copied once per read.
+	 */
+    private void publishSnapshot(){
+        List<ImmutableDescriptor> descriptors=new ArrayList<ImmutableDescriptor>(this.view.size());
+        for(int i=0;i<this.view.size();i++){
+            descriptors.add(this.view.getImmutable(i));
+        }
+        this.snapshot=new ViewSnapshot(descriptors);
+    }
 
     /**
-	 * Increases the age of the neighbor descriptors
+	 * Increases the age of the neighbor descriptors. The cost does not depend
+     * on the length of the view. It has no effect if the ages follow a clock.
      *
      * @param timePassed the time passed as it it defined by the used timers
 	 */
     public void increaseAge(double timePassed){
         synchronized(this.view){
-            for(FingerDescriptor neighbor:this.getView()){
-                this.ageManager.increaseAge(neighbor, timePassed);
+            if(this.clock==null){
+                this.view.increaseAge(timePassed);
             }
         }
     }
 
+    /**
+	 * Returns true if the view contains a descriptor with the given network
+     * address.
+     *
+     * @param address the network address of the peer
+	 */
+    public boolean contains(NetworkAddress address){
+        synchronized(this.view){
+            return this.view.getDescriptor(address)!=null;
+        }
+    }
+
     /**
 	 * Selects a peer from the view to gossip with. The selction can be done by
      * following two different the RAND and OLD policies. In the first case, a
      * random descriptor is selected to gossip with, whereas, in the OLD policy,
      * the descriptor with the oldest age is returned. Note that this police is
      * reffered to the paper as "OLD". Hoewever, it refers to the oldest
-     * descriptor.
+     * descriptor. The peers that have been backed off are avoided, unless all
+     * the peers of the view have been backed off. In the RAND policy the peer
+     * is drawn uniformly among the peers that have not been backed off.
 	 */
     public FingerDescriptor selectPeer(){
-        if(view.size()>0){
-            switch(policy){
-                case RAND:
-                    return this.getView().get((int)(Math.random()*this.getView().size()));
-                case OLD:
-                    return this.ageManager.getOldestDescriptor(this.view);
-                default:
-                    return null; //no defined policy
+        synchronized(this.view){
+            this.selections++;
+            if(view.size()>0){
+                if(!this.backOffs.isEmpty()){
+                    this.expireBackOffs();
+                }
+                switch(policy){
+                    case RAND:
+                        if(!this.backOffs.isEmpty()){
+                            int eligible=0;
+                            for(FingerDescriptor peer:this.view){
+                                if(!this.backOffs.containsKey(peer.getNetworkAddress())){
+                                    eligible++;
+                                }
+                            }
+                            if(eligible>0){
+                                int k=this.random.nextInt(eligible);
+                                for(FingerDescriptor peer:this.view){
+                                    if(!this.backOffs.containsKey(peer.getNetworkAddress())){
+                                        if(k==0){
+                                            return peer;
+                                        }
+                                        k--;
+                                    }
+                                }
+                            }
+                        }
+                        return this.getView().get(this.random.nextInt(this.getView().size()));
+                    case OLD:
+                        if(!this.backOffs.isEmpty()){
+                            FingerDescriptor peer=this.view.getOldest(this.backOffs.keySet());
+                            if(peer!=null){
+                                return peer;
+                            }
+                        }
+                        return this.view.getOldest();
+                    default:
+                        return null; //no defined policy
+                }
+            }
+            return null;
+        }
+    }
+
+    /**
+	 * Makes the peer selection avoid a peer for a number of selections, e.g.
+     * after the peer answered that it is overloaded.
+     *
+     * @param peer the avoided peer
+     * @param selections the number of selections that avoid the peer
+	 */
+    public void backOff(NetworkAddress peer, int selections){
+        synchronized(this.view){
+            this.backOffs.put(peer, this.selections+selections);
+        }
+    }
+
+    /**
+	 * Forgets the back-offs whose selections have passed.
+	 */
+    private void expireBackOffs(){
+        Iterator<Long> iterator=this.backOffs.values().iterator();
+        while(iterator.hasNext()){
+            if(iterator.next()<this.selections){
+                iterator.remove();
             }
         }
-        return null;
     }
 
     /**
@@ -160,11 +330,38 @@ public class ViewManager{
 	 */
     public void permute(){
         for(int i=1;i<getView().size();i++){
-            int j=(int)(Math.random()*(i+1));
-            FingerDescriptor aj=getView().get(j);
-            FingerDescriptor ai=getView().get(i);
-            getView().set(i, aj);
-            getView().set(j, ai);
+            int j=this.random.nextInt(i+1);
+            this.view.swap(i, j);
+        }
+    }
+
+    /**
+	 * Creates the buffer sent in a swap. The buffer contains a copy of the
+     * local descriptor followed by c/2-1 neighbors from the head of the view
+     * after it is permuted and the H oldest neighbors are moved at the end.
+	 */
+    public List<FingerDescriptor> createBuffer(){
+        List<FingerDescriptor> buffer=new ArrayList<FingerDescriptor>();
+        this.createBuffer(buffer);
+        return buffer;
+    }
+
+    /**
+	 * Creates the buffer sent in a swap in the given list, e.g. the buffer of
+     * the sent message. The copy of the local descriptor is shared
+     * by all buffers until the local descriptor changes, so the receivers
+     * must not modify it, and the copies of the neighbors are owned by the
+     * receiver.
+     *
+     * @param buffer the empty list filled with the buffer
+	 */
+    public void createBuffer(List<FingerDescriptor> buffer){
+        buffer.add(this.getMyDescriptorCopy());
+        synchronized(this.view){
+            this.updateTime();
+            this.permute();
+            this.moveOldItemsAtTheEnd();
+            this.addSomeNeighbors(buffer);
         }
     }
 
@@ -174,29 +371,124 @@ public class ViewManager{
      * peer.
 	 */
     public Collection<FingerDescriptor> getSomeNeighbors(){
-        Collection neighbors=new ArrayList();
+        Collection<FingerDescriptor> neighbors=new ArrayList<FingerDescriptor>();
+        this.addSomeNeighbors(neighbors);
+        return neighbors;
+    }
+
+    private void addSomeNeighbors(Collection<FingerDescriptor> neighbors){
         for(int i=0;i<Math.floor(this.getView().size()/2)-1;i++){
-            FingerDescriptor finger=this.getView().get(i).clone();
+            FingerDescriptor finger=this.view.copy(i);
             neighbors.add(finger);
 
         }
-        return neighbors;
+    }
+
+    /**
+	 * Returns the copy of the local descriptor sent in the buffers. It is
+     * created again only after the local descriptor changes.
+	 */
+    private FingerDescriptor getMyDescriptorCopy(){
+        FingerDescriptor copy=this.myDescriptorCopy;
+        if(copy==null){
+            synchronized(this.myDescriptor){
+                copy=this.myDescriptorCopy;
+                if(copy==null){
+                    copy=this.myDescriptor.clone();
+                    this.myDescriptorCopy=copy;
+                }
+            }
+        }
+        return copy;
+    }
+
+    /**
+	 * Adds a descriptor type in the local descriptor.
+     *
+     * @param type the descriptor type
+     * @param value the value of the descriptor
+	 */
+    public void addDescriptor(Enum type, Object value){
+        synchronized(this.myDescriptor){
+            this.myDescriptor.addDescriptor(type, value);
+            this.myDescriptorCopy=null;
+        }
+    }
+
+    /**
+	 * Removes a descriptor type from the local descriptor.
+     *
+     * @param type the descriptor type
+	 */
+    public void removeDescriptor(Enum type){
+        synchronized(this.myDescriptor){
+            this.myDescriptor.removeDescriptor(type);
+            this.myDescriptorCopy=null;
+        }
     }
 
     /**
 	 * Creates the new view after the swap. Guarantees that the appropriate
      * neighbors are retained in the view and its size is c. The queue with the
-     * samples is updated.
+     * samples is updated and a new snapshot of the view is published. Then,
+     * the pending samples are completed if the view is not empty and the
+     * listeners are notified about the fresh descriptors, outside the lock of
+     * the view.
      *
      * @param buffer the received buffer of neighbors
 	 */
     public void select(List<FingerDescriptor> buffer){
+        this.selectBatch(buffer, 1, Collections.<FingerDescriptor>emptyList());
+    }
+
+    /**
+	 * Creates the new view after several swaps in one pass. The buffers are
+     * appended in the order they were received, so a duplicate in a later
+     * buffer replaces an older one. Then up to n*H old items and n*S swapped
+     * items are removed, and random items until the size of the view is c.
+     * The swapped items are the descriptors sent in the swaps that are still
+     * in the view and have not been replaced by the received buffers, since
+     * the view may have been permuted by other buffers after they were sent,
+     * and the head of the view for the rest. The
+     * selection of the oldest items, the update of the samples and the
+     * snapshot are performed once for all the buffers. For one buffer and no
+     * sent descriptors it is the same as <code>select</code>.
+     *
+     * @param buffers the descriptors of the received buffers, concatenated
+     * @param n the number of buffers
+     * @param sent the descriptors sent since the last selection
+	 */
+    public void selectBatch(List<FingerDescriptor> buffers, int n, List<FingerDescriptor> sent){
+        List<ImmutableDescriptor> fresh;
+        List<CompletableFuture<ImmutableDescriptor>> completed=null;
         synchronized(this.view){
-            this.appendUnique(buffer);
-            this.removeOldItems(Math.min(H, this.getView().size()-c));
-            this.removeHead(Math.min(S, this.getView().size()-c));
+            this.updateTime();
+            long mark=this.view.getMark();
+            this.appendUnique(buffers);
+            this.removeOldItems(Math.min(n*H, this.getView().size()-c));
+            int swapped=Math.max(0, Math.min(n*S, this.getView().size()-c));
+            swapped-=this.view.removePeers(sent, swapped, mark);
+            this.removeHead(swapped);
             this.removeAtRandom(this.getView().size()-c);
-            this.updateSamples();
+            fresh=this.updateSamples();
+            this.publishSnapshot();
+            if(this.view.size()>0&&!this.pendingSamples.isEmpty()){
+                completed=new ArrayList<CompletableFuture<ImmutableDescriptor>>(this.pendingSamples);
+                this.pendingSamples.clear();
+            }
+        }
+        if(completed!=null){
+            for(CompletableFuture<ImmutableDescriptor> future:completed){
+                if(!future.isDone()){
+                    future.complete(this.getSample());
+                }
+            }
+        }
+        if(!fresh.isEmpty()){
+            List<ImmutableDescriptor> arrived=Collections.unmodifiableList(fresh);
+            for(SampleListener listener:this.listeners){
+                listener.samplesArrived(arrived);
+            }
         }
     }
 
@@ -209,119 +501,40 @@ public class ViewManager{
      * @param buffer the received list with the neighbors
 	 */
     private void appendUnique(List<FingerDescriptor> buffer){
-        for(FingerDescriptor neighbor:buffer){
-            if(!neighbor.equals(this.myDescriptor)){
-                if(!this.view.contains(neighbor)){
-                    this.getView().add(neighbor);
-                }
-                else{
-                    //Here we find the position of the existing neighbor
-                    int index=0;
-                    for(FingerDescriptor dublicate:this.view){
-                        if(dublicate.equals(neighbor)){
-                            break;
-                        }
-                        index++;
-                    }
-                    if(this.ageManager.isOlder(this.getView().get(index), neighbor)){
-                        this.getView().remove(index);
-                        this.getView().add(neighbor);
-                    }
-                }
-            }
-        }
+        this.view.appendUnique(buffer, this.myDescriptor);
     }
 
     /**
 	 * Removes the H oldest items in the view. The methods retains the order of
-     * the remaining items in the view. The algorithm is as follows:
-     *
-     * 1. Create a sorted list with the indices of the view
-     * 2. Create a list and insert the H oldest items there
-     * 3. Remove the items from the view by quering the 2nd list
-     *
-     * Algorithm needs optimization but it works fine and is tested
+     * the remaining items in the view. Among items with the same age, the ones
+     * closer to the head of the view are removed first.
      *
      * @param H the number of oldest descriptors to be removed
 	 */
     private void removeOldItems(int H){
-        ArrayList<Integer> sortedIndices=new ArrayList<Integer>();
-        for(int i=0;i<this.getView().size();i++){
-            sortedIndices.add(i);
+        if(H<=0){
+            return;
         }
-        for(int i=1;i<sortedIndices.size();i++){
-            FingerDescriptor descriptor=this.getView().get(sortedIndices.get(i));
-            for(int j=0;j<i;j++){
-                FingerDescriptor comparedDescriptor=this.getView().get(sortedIndices.get(j));
-                if(this.ageManager.isOlder(descriptor, comparedDescriptor)){
-                    sortedIndices.add(j, sortedIndices.remove(i));
-                    break;
-                }
-            }
-        }
-        ArrayList<FingerDescriptor> kOldestItems=new ArrayList<FingerDescriptor>();
-        for(int i=0;i<H;i++){
-           kOldestItems.add(this.getView().get(sortedIndices.get(i)));
-        }
-        this.getView().removeAll(kOldestItems);
+        int[] oldest=this.view.selectOldest(H);
+        this.view.removeAt(oldest, Math.min(H, this.view.size()));
     }
 
     /**
 	 * Moves the H oldest items at the end of the view. It retains the ordering
-     * of the items that are moved at the end. The algorithm works in 3 phases:
-     *
-     * 1. Create and initial a list wih the indices of the neighbors in the view
-     * 2. Sort the indices in that list
-     * 3. Scan the indices and move oldest neighbors at the end appropriatelly,
-     * by keeping the order. At the same time update the indices of the right
-     * neighbors due to the move of the neighbor.
-     *
-     * @param H the number of oldest descriptors to be moved
+     * of the items that are moved at the end and of the items that remain in
+     * front of them. Among items with the same age, the ones closer to the
+     * head of the view are moved first. The oldest items are found with a
+     * partial selection instead of sorting the view.
 	 */
     public void moveOldItemsAtTheEnd(){
-        //initialization
-        ArrayList<Integer> sortedIndices=new ArrayList<Integer>();
-        for(int i=0;i<this.getView().size();i++){
-            sortedIndices.add(i);
-        }
-        //sort the movedNeighborIndex list
-        for(int i=1;i<sortedIndices.size();i++){
-            FingerDescriptor descriptor=this.getView().get(sortedIndices.get(i));
-            for(int j=0;j<i;j++){
-                FingerDescriptor comparedDescriptor=this.getView().get(sortedIndices.get(j));
-                if(this.ageManager.isOlder(descriptor, comparedDescriptor)){
-                    sortedIndices.add(j, sortedIndices.remove(i));
-                    break;
-                }
-            }
-        }
         //if the size of the view is less than c, we gurantee to move a
         //proportinal number of old items to H at the end
         int movedItems=this.getView().size()*H/c;
-        int scannedItems=movedItems;
-        //move items at the end and update the sortedIndices list on the fly
-        for(int i=0;i<movedItems;i++){
-            int min=Integer.MAX_VALUE;
-            int movedItemIndex=-1;
-            int scannedItemIndex=0;
-            for(int j=0;j<scannedItems;j++){
-                int indexElement=sortedIndices.get(j).intValue();
-                if(indexElement<min){
-                    min=indexElement;
-                    movedItemIndex=scannedItemIndex;
-                }
-            }
-            sortedIndices.remove(movedItemIndex);
-            scannedItems--;
-            this.getView().add(this.getView().remove(min));
-            for(int j=0;j<sortedIndices.size();j++){
-                Integer indexToNeighbor=sortedIndices.get(j);
-                if(indexToNeighbor.intValue()>min){
-                    indexToNeighbor=indexToNeighbor.intValue()-1;
-                    sortedIndices.set(j, indexToNeighbor);
-                }
-            }
+        if(movedItems<=0){
+            return;
         }
+        int[] oldest=this.view.selectOldest(movedItems);
+        this.view.moveToEnd(oldest, movedItems);
     }
 
     /**
@@ -331,10 +544,7 @@ public class ViewManager{
      * @param S the number of S items to be removed
 	 */
     private void removeHead(int S){
-        for(int i=0;i<S;i++){
-            this.getView().remove(0);
-        }
-
+        this.view.removeHead(S);
     }
 
     /**
@@ -343,9 +553,80 @@ public class ViewManager{
      * @param r the number of randomly removed peers
 	 */
     private void removeAtRandom(int r){
+        if(r<=0){
+            return;
+        }
+        int[] positions=new int[r];
+        boolean[] selected=new boolean[this.view.size()];
         for(int i=0;i<r;i++){
-            this.getView().remove((int)(Math.random()*this.getView().size()));
+            int position=this.random.nextInt(this.view.size());
+            while(selected[position]){
+                position=this.random.nextInt(this.view.size());
+            }
+            selected[position]=true;
+            positions[i]=position;
+        }
+        this.view.removeAt(positions, r);
+    }
+
+    /**
+	 * Returns a random sample from the view without copying it. The sample is
+     * taken from the queue with the descriptors that entered the view and have
+     * not been returned yet. If the queue is empty, a random descriptor of the
+     * snapshot of the view is returned. It returns null if the view is empty.
+	 */
+    public ImmutableDescriptor getSample(){
+        ImmutableDescriptor sample=this.samples.poll();
+        if(sample!=null){
+            return sample;
         }
+        List<ImmutableDescriptor> descriptors=this.snapshot.getDescriptors();
+        if(descriptors.size()>0){
+            return descriptors.get(this.samplingRandom.get().nextInt(descriptors.size()));
+        }
+        return null;
+    }
+
+    /**
+	 * Returns a future of the next random sample. If the view is not empty, the
+     * future is already completed with <code>getSample()</code>. Otherwise, it
+     * is completed by the first selection that populates the view, e.g. the
+     * selection of the bootstrap neighbors, with one of the fresh descriptors.
+     * The future is never completed with null.
+	 */
+    public CompletableFuture<ImmutableDescriptor> nextSample(){
+        ImmutableDescriptor sample=this.getSample();
+        if(sample==null){
+            synchronized(this.view){
+                if(this.view.size()==0){
+                    CompletableFuture<ImmutableDescriptor> future=new CompletableFuture<ImmutableDescriptor>();
+                    this.pendingSamples.add(future);
+                    return future;
+                }
+            }
+            //the view was populated after the sample was requested
+            sample=this.getSample();
+        }
+        return CompletableFuture.completedFuture(sample);
+    }
+
+    /**
+	 * Registers a listener notified about the fresh descriptors that enter the
+     * view.
+     *
+     * @param listener the registered listener
+	 */
+    public void addSampleListener(SampleListener listener){
+        this.listeners.add(listener);
+    }
+
+    /**
+	 * Unregisters a listener of the fresh descriptors.
+     *
+     * @param listener the unregistered listener
+	 */
+    public void removeSampleListener(SampleListener listener){
+        this.listeners.remove(listener);
     }
 
     /**
@@ -356,16 +637,57 @@ public class ViewManager{
     }
 
     /**
+     * Returns the local descriptor. It must be changed only with
+     * <code>addDescriptor</code> and <code>removeDescriptor</code>, so that
+     * the copy sent in the buffers is updated.
+     *
      * @return the myDescriptor
      */
     public FingerDescriptor getMyDescriptor() {
         return myDescriptor;
     }
 
+    /**
+	 * Returns k distinct random descriptors from the snapshot of the view
+     * without copying them. They are drawn without replacement with a partial
+     * Fisher-Yates shuffle over the positions of the snapshot, so only k
+     * random numbers are drawn and no lock is taken. If the view has fewer
+     * than k descriptors, all of them are returned in random order.
+     *
+     * @param k the number of requested descriptors
+	 */
+    public List<ImmutableDescriptor> getRandomDescriptors(int k){
+        List<ImmutableDescriptor> descriptors=this.snapshot.getDescriptors();
+        int n=descriptors.size();
+        k=Math.max(0, Math.min(k, n));
+        List<ImmutableDescriptor> selected=new ArrayList<ImmutableDescriptor>(k);
+        SplittableRandom random=this.samplingRandom.get();
+        int[] positions=new int[n];
+        for(int i=0;i<n;i++){
+            positions[i]=i;
+        }
+        for(int i=0;i<k;i++){
+            int j=i+random.nextInt(n-i);
+            int position=positions[j];
+            positions[j]=positions[i];
+            positions[i]=position;
+            selected.add(descriptors.get(position));
+        }
+        return selected;
+    }
+
+    /**
+	 * Returns the snapshot of the view published after the last selection. It
+     * does not require any locking.
+	 */
+    public ViewSnapshot getSnapshot() {
+        return snapshot;
+    }
+
     /**
      * @return the samples
      */
-    public Queue<FingerDescriptor> getSamples() {
+    public SampleQueue getSamples() {
         return samples;
     }
 }
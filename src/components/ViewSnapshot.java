@@ -0,0 +1,92 @@
+/*
+ * Copyright (C) 2015 Evangelos Pournaras
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+
+package components;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import dsutil.protopeer.FingerDescriptor;
+import protopeer.Finger;
+
+/**
+ * An immutable copy of the view published by the <code>ViewManager</code>
+ * after every update of the view. It is read by other threads without locking
+ * the view. The descriptors have the ages they had at the time of the update.
+ * The descriptors of the view are wrapped in <code>ImmutableDescriptor</code>s
+ * without copying them. Copies as <code>FingerDescriptor</code>s are created
+ * only when they are first requested and they are shared by all readers, so
+ * they must not be modified.
+ *
+ * @author Evangelos
+ */
+public class ViewSnapshot {
+
+    private final List<ImmutableDescriptor> descriptors;
+    private final List<Finger> fingers;
+    private volatile List<FingerDescriptor> fingerDescriptors;
+
+    /**
+	 * Creates a snapshot of the view.
+     *
+     * @param descriptors the descriptors of the view. The list is owned by the
+     * snapshot after the call.
+	 */
+    public ViewSnapshot(List<ImmutableDescriptor> descriptors){
+        List<Finger> fingers=new ArrayList<Finger>(descriptors.size());
+        for(ImmutableDescriptor descriptor:descriptors){
+            fingers.add(descriptor.getFinger());
+        }
+        this.descriptors=Collections.unmodifiableList(descriptors);
+        this.fingers=Collections.unmodifiableList(fingers);
+    }
+
+    /**
+     * @return the read-only descriptors of the view
+     */
+    public List<ImmutableDescriptor> getDescriptors(){
+        return descriptors;
+    }
+
+    /**
+     * @return the read-only copies of the descriptors of the view
+     */
+    public List<FingerDescriptor> getFingerDescriptors(){
+        List<FingerDescriptor> copies=fingerDescriptors;
+        if(copies==null){
+            copies=new ArrayList<FingerDescriptor>(descriptors.size());
+            for(ImmutableDescriptor descriptor:descriptors){
+                copies.add(descriptor.toFingerDescriptor());
+            }
+            copies=Collections.unmodifiableList(copies);
+            fingerDescriptors=copies;
+        }
+        return copies;
+    }
+
+    /**
+     * @return the read-only fingers of the view
+     */
+    public List<Finger> getFingers(){
+        return fingers;
+    }
+
+    public int size(){
+        return descriptors.size();
+    }
+}
@@ -0,0 +1,33 @@
+/*
+ * Copyright (C) 2015 Evangelos Pournaras
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+
+package enums;
+
+/**
+ * Defines how the buffers of the swaps are encoded. In the FULL encoding,
+ * every buffer carries all its descriptors. In the DELTA encoding, the
+ * descriptors that were exchanged with the same partner in the last swap are
+ * sent as references with their current age and only the new or changed
+ * descriptors are sent in full.
+ *
+ * @author Evangelos
+ */
+public enum BufferEncoding {
+    FULL,
+    DELTA
+}
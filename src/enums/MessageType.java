@@ -21,11 +21,14 @@ package enums;
 /**
  * This is the message type sent by the Peer Samplign Service. It is important
  * for trigerring the appropriate reaction in the passive state. A message can
- * an action for a swap message or a reaction to a swap message.
+ * an action for a swap message or a reaction to a swap message. A busy
+ * message is a reaction with no descriptors of a peer that does not accept
+ * more swaps at the moment.
  * 
  * @author Evangelos
  */
 public enum MessageType {
     ACTION,
-    REACTION
+    REACTION,
+    BUSY
 }
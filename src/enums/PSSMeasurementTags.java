@@ -28,5 +28,11 @@ public enum PSSMeasurementTags{
     MESSAGE_REACTION_SENT,
     MESSAGE_ACTION_RECEIVED,
     MESSAGE_REACTION_REVEIVED,
-    VIEW_LENGTH
+    VIEW_LENGTH,
+    SWAP_BYTES,
+    UNRESOLVED_REFERENCES,
+    PIGGYBACKED_MESS,
+    DROPPED_MESS,
+    DEFERRED_MESS,
+    REJECTED_MESS
 }
@@ -19,10 +19,15 @@
 package enums;
 
 /**
- * Defines if the gossiping protocol is push or push-pull. 
+ * Defines if the gossiping protocol is push, pull or push-pull. In the PUSH
+ * policy the active peer sends its buffer and gets no reply. In the PULL
+ * policy the active peer sends a request with no descriptors and merges the
+ * buffer of the reply. In the PUSHPULL policy both peers send and merge their
+ * buffers.
  * @author Evangelos
  */
 public enum ViewPropagationPolicy {
     PUSH,
+    PULL,
     PUSHPULL
 }
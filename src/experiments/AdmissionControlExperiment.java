@@ -0,0 +1,159 @@
+/*
+ * Copyright (C) 2015 Evangelos Pournaras
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+
+package experiments;
+
+import enums.AgingPolicy;
+import enums.BufferEncoding;
+import enums.MessageType;
+import enums.PeerSelectionPolicy;
+import enums.ViewPropagationPolicy;
+import java.util.Arrays;
+import peerlets.PeerSamplingService;
+import protopeer.BasePeerlet;
+import protopeer.Experiment;
+import protopeer.Peer;
+import protopeer.PeerFactory;
+import protopeer.SimulatedExperiment;
+import protopeer.network.Message;
+import protopeer.util.quantities.Time;
+import util.InDegreeCollector;
+import util.SwapMessage;
+
+/**
+ * Measures the load of the peers with the OLD peer selection policy, in which
+ * popular peers receive many more ACTIONs than the average, with and without
+ * the admission control of the Peer Sampling Service. The first argument is
+ * the admission control: none, drop for dropping the rejected ACTIONs, or busy
+ * for answering them with BUSY messages, from which the senders back off. The
+ * rate of admitted ACTIONs is set close to the average rate of 1 ACTION per
+ * second, so that only the popular peers reject swaps. The ACTIONs received,
+ * the REACTIONs and all the swap messages sent by every peer are counted after
+ * a warm-up period, together with the rejected and deferred swaps and the
+ * in-degree of the peers at the end.
+ *
+ * @author Evangelos
+ */
+public class AdmissionControlExperiment extends SimulatedExperiment{
+
+    private final static int warmUpDuration=60;
+    private final static int runDuration=60;
+    private final static int N=1000;
+    private final static int c=50;
+    private final static int H=1;
+    private final static int S=25;
+    private final static ViewPropagationPolicy viewPropagationPolicy=ViewPropagationPolicy.PUSHPULL;
+    private final static PeerSelectionPolicy peerSelectionPolicy=PeerSelectionPolicy.OLD;
+    private final static int T=1000;
+    private final static int A=1000;
+    private final static int B=6000;
+    private final static double rate=1.2;
+    private final static int burst=2;
+
+    private static boolean measuring=false;
+    private final static int[] actionsReceived=new int[N];
+    private final static int[] reactionsSent=new int[N];
+    private final static int[] messagesSent=new int[N];
+    private static int deferred=0;
+
+    public static void main(String[] args) {
+        final String admissionControl=args.length>0?args[0]:"busy";
+        Experiment.initEnvironment();
+        AdmissionControlExperiment experiment=new AdmissionControlExperiment();
+        experiment.init();
+        PeerFactory peerFactory=new PeerFactory() {
+            public Peer createPeer(int peerIndex, Experiment experiment) {
+                PeerSamplingService pss=new PeerSamplingService(c, H, S, peerSelectionPolicy, viewPropagationPolicy, T, A, B, AgingPolicy.EVENT, BufferEncoding.FULL);
+                if(!admissionControl.equals("none")){
+                    pss.setAdmissionControl(rate, burst, admissionControl.equals("busy"));
+                }
+                Peer newPeer=Experiments.createPeer(peerIndex, experiment, pss);
+                newPeer.addPeerlet(new LoadMeter(peerIndex));
+                return newPeer;
+            }
+        };
+        experiment.initPeers(0, N, peerFactory);
+        experiment.startPeers(0, N);
+        experiment.runSimulation(Time.inSeconds(warmUpDuration));
+        measuring=true;
+        experiment.runSimulation(Time.inSeconds(runDuration));
+        measuring=false;
+
+        InDegreeCollector collector=EpochReporter.collectInDegrees(experiment);
+        System.out.println("admission control: "+admissionControl+", rate: "+rate+"/s, burst: "+burst);
+        System.out.println("\t\t\tmean\tp99\tmax");
+        printLoad("ACTIONs received/s", actionsReceived);
+        printLoad("REACTIONs sent/s", reactionsSent);
+        printLoad("messages sent/s", messagesSent);
+        int rejected=sum(actionsReceived)-sum(reactionsSent);
+        System.out.println("rejected swaps/s: "+Experiments.round((double)rejected/runDuration)+", deferred swaps/s: "+Experiments.round((double)deferred/runDuration));
+        System.out.println("in-degree st. dev.: "+Experiments.round(collector.getStDev())+", max: "+collector.getMax());
+    }
+
+    private static void printLoad(String load, int[] counts){
+        int[] sorted=Arrays.copyOf(counts, counts.length);
+        Arrays.sort(sorted);
+        int p99=sorted[Math.max(0, (int)Math.ceil(0.99*sorted.length)-1)];
+        System.out.println(load+"\t"+Experiments.round((double)sum(counts)/counts.length/runDuration)+"\t"+Experiments.round((double)p99/runDuration)+"\t"+Experiments.round((double)sorted[sorted.length-1]/runDuration));
+    }
+
+    private static int sum(int[] counts){
+        int sum=0;
+        for(int count:counts){
+            sum+=count;
+        }
+        return sum;
+    }
+
+    /**
+	 * Counts the swap messages received and sent by a peer during the
+     * measurement.
+	 */
+    private static class LoadMeter extends BasePeerlet{
+
+        private final int index;
+
+        public LoadMeter(int index){
+            this.index=index;
+        }
+
+        @Override
+        public void handleIncomingMessage(Message message){
+            if(measuring&&message instanceof SwapMessage){
+                MessageType type=((SwapMessage)message).type;
+                if(type==MessageType.ACTION){
+                    actionsReceived[this.index]++;
+                }
+                else if(type==MessageType.BUSY){
+                    deferred++;
+                }
+            }
+        }
+
+        @Override
+        public void handleOutgoingMessage(Message message){
+            if(measuring&&message instanceof SwapMessage){
+                messagesSent[this.index]++;
+                MessageType type=((SwapMessage)message).type;
+                if(type==MessageType.REACTION){
+                    reactionsSent[this.index]++;
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,106 @@
+/*
+ * Copyright (C) 2015 Evangelos Pournaras
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+
+package experiments;
+
+import enums.AgingPolicy;
+import enums.BufferEncoding;
+import enums.PeerSelectionPolicy;
+import enums.ViewPropagationPolicy;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import peerlets.PeerSamplingService;
+import protopeer.Experiment;
+import protopeer.Peer;
+import protopeer.PeerFactory;
+import protopeer.SimulatedExperiment;
+import protopeer.util.quantities.Time;
+
+/**
+ * Measures the garbage collection time, the allocations and the processed
+ * events per second of a large simulation, with or without the recycling of
+ * the swap messages. The first argument is true or false for the recycling,
+ * which is disabled by default. The collections and the wall time are
+ * measured after a warm-up period, in which the views are filled.
+ *
+ * @author Evangelos
+ */
+public class AllocationExperiment extends SimulatedExperiment{
+
+    private final static int warmUpDuration=10;
+    private final static int runDuration=30;
+    private final static int N=2000;
+    private final static int c=50;
+    private final static int H=1;
+    private final static int S=25;
+    private final static ViewPropagationPolicy viewPropagationPolicy=ViewPropagationPolicy.PUSHPULL;
+    private final static PeerSelectionPolicy peerSelectionPolicy=PeerSelectionPolicy.RAND;
+    private final static int T=1000;
+    private final static int A=1000;
+    private final static int B=6000;
+
+    public static void main(String[] args) {
+        final boolean messagePooling=args.length>0&&Boolean.parseBoolean(args[0]);
+        Experiment.initEnvironment();
+        AllocationExperiment experiment=new AllocationExperiment();
+        experiment.init();
+        PeerFactory peerFactory=new PeerFactory() {
+            public Peer createPeer(int peerIndex, Experiment experiment) {
+                PeerSamplingService pss=new PeerSamplingService(c, H, S, peerSelectionPolicy, viewPropagationPolicy, T, A, B, AgingPolicy.EVENT, BufferEncoding.FULL);
+                pss.setMessagePooling(messagePooling);
+                return Experiments.createPeer(peerIndex, experiment, pss);
+            }
+        };
+        experiment.initPeers(0, N, peerFactory);
+        experiment.startPeers(0, N);
+        experiment.runSimulation(Time.inSeconds(warmUpDuration));
+
+        com.sun.management.ThreadMXBean threads=(com.sun.management.ThreadMXBean)ManagementFactory.getThreadMXBean();
+        long thread=Thread.currentThread().getId();
+        long collections=getCollections();
+        long collectionTime=getCollectionTime();
+        long bytes=threads.getThreadAllocatedBytes(thread);
+        long events=experiment.getEventScheduler().getNumEventsProcessed();
+        long start=System.nanoTime();
+        experiment.runSimulation(Time.inSeconds(runDuration));
+        long wallTime=(System.nanoTime()-start)/1000000;
+        bytes=threads.getThreadAllocatedBytes(thread)-bytes;
+        events=experiment.getEventScheduler().getNumEventsProcessed()-events;
+        collections=getCollections()-collections;
+        collectionTime=getCollectionTime()-collectionTime;
+
+        System.out.println("pooling\tcollections\tGC time (ms)\twall time (ms)\tMB allocated\tevents/s\tbytes/event");
+        System.out.println(messagePooling+"\t"+collections+"\t\t"+collectionTime+"\t\t"+wallTime+"\t\t"+bytes/(1024*1024)+"\t\t"+events*1000/Math.max(1, wallTime)+"\t\t"+bytes/Math.max(1, events));
+    }
+
+    private static long getCollections(){
+        long collections=0;
+        for(GarbageCollectorMXBean collector:ManagementFactory.getGarbageCollectorMXBeans()){
+            collections+=collector.getCollectionCount();
+        }
+        return collections;
+    }
+
+    private static long getCollectionTime(){
+        long time=0;
+        for(GarbageCollectorMXBean collector:ManagementFactory.getGarbageCollectorMXBeans()){
+            time+=collector.getCollectionTime();
+        }
+        return time;
+    }
+}
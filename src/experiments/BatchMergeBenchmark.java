@@ -0,0 +1,179 @@
+/*
+ * Copyright (C) 2015 Evangelos Pournaras
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+
+package experiments;
+
+import components.ImmutableDescriptor;
+import components.ViewManager;
+import dsutil.protopeer.FingerDescriptor;
+import enums.PeerSelectionPolicy;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import protopeer.Finger;
+import protopeer.RingIdentifier;
+import protopeer.network.IntegerNetworkAddress;
+import util.InDegreeCollector;
+
+/**
+ * Compares the merging of every received buffer in the view with the merging
+ * of batches of buffers in one pass, as the Peer Sampling Service does with
+ * <code>setBatchMerging</code>. In every cycle each peer merges its queued
+ * buffers, selects a partner and sends it an ACTION. The partner answers
+ * immediately with a REACTION from its current view and both buffers are
+ * merged or queued. The sent descriptors are remembered until the next merge,
+ * as the Peer Sampling Service does. The time of the merging per received
+ * buffer, in a single thread, and the standard deviation of the in-degree at
+ * the end of the run are measured.
+ *
+ * With N=1000, c=50, H=1 and S=25 in one thread the merge time per buffer was
+ * 40-53 us for every batch size, with no consistent gain over the merging of
+ * every buffer, while the in-degree standard deviation rose from about 7 to
+ * 14 with batches of 2 and to about 17 with batches of 4 or more. The replies
+ * sent while buffers are queued come from views that have not merged them
+ * yet, so the same descriptors are spread to several partners.
+ *
+ * @author Evangelos
+ */
+public class BatchMergeBenchmark {
+
+    private final static int N=1000;
+    private final static int c=50;
+    private final static int H=1;
+    private final static int S=25;
+    private final static int A=1000;
+    private final static int cycles=100;
+    private final static int warmUpCycles=40;
+    private final static int[] batchSizes={1, 2, 4, 8, 16};
+
+    private static ViewManager[] viewManagers;
+    private static List<List<FingerDescriptor>> pendingBuffers;
+    private static List<List<FingerDescriptor>> sentBuffers;
+    private static int[] pendingMerges;
+    private static long mergeTime;
+    private static long merges;
+
+    public static void main(String[] args) {
+        System.out.println("Peers: "+N+", c: "+c+", H: "+H+", S: "+S);
+        System.out.println("merged buffers\tmerge time/buffer (us)\tin-degree st. dev.\tin-degree max");
+        run(1, false);
+        for(int batchSize:batchSizes){
+            run(batchSize, true);
+        }
+    }
+
+    private static void run(int batchSize, boolean print){
+        Random random=new Random(N);
+        createViewManagers(random);
+        int[] order=new int[N];
+        for(int i=0;i<N;i++){
+            order[i]=i;
+        }
+        for(int cycle=0;cycle<cycles;cycle++){
+            if(cycle==warmUpCycles){
+                mergeTime=0;
+                merges=0;
+            }
+            for(int i=N-1;i>0;i--){
+                int j=random.nextInt(i+1);
+                int peer=order[i];
+                order[i]=order[j];
+                order[j]=peer;
+            }
+            for(int peer:order){
+                long start=System.nanoTime();
+                mergePending(peer);
+                mergeTime+=System.nanoTime()-start;
+                FingerDescriptor neighbor=viewManagers[peer].selectPeer();
+                if(neighbor==null){
+                    continue;
+                }
+                int partner=((IntegerNetworkAddress)neighbor.getNetworkAddress()).getIntValue();
+                List<FingerDescriptor> action=viewManagers[peer].createBuffer();
+                List<FingerDescriptor> reaction=viewManagers[partner].createBuffer();
+                if(batchSize>1){
+                    sentBuffers.get(peer).addAll(action);
+                    sentBuffers.get(partner).addAll(reaction);
+                }
+                merge(partner, action, batchSize);
+                viewManagers[partner].increaseAge(A);
+                merge(peer, reaction, batchSize);
+                viewManagers[peer].increaseAge(A);
+            }
+        }
+        InDegreeCollector collector=new InDegreeCollector(N);
+        for(ViewManager viewManager:viewManagers){
+            for(ImmutableDescriptor neighbor:viewManager.getSnapshot().getDescriptors()){
+                collector.count(((IntegerNetworkAddress)neighbor.getNetworkAddress()).getIntValue());
+            }
+        }
+        collector.compute();
+        if(print){
+            System.out.println(batchSize+"\t\t"+Math.round(mergeTime/1000.0/merges*100)/100.0+"\t\t\t"+Math.round(collector.getStDev()*100)/100.0+"\t\t\t"+collector.getMax());
+        }
+    }
+
+    /**
+	 * Merges a received buffer or queues it until the batch is complete.
+	 */
+    private static void merge(int peer, List<FingerDescriptor> buffer, int batchSize){
+        merges++;
+        long start=System.nanoTime();
+        if(batchSize==1){
+            viewManagers[peer].select(buffer);
+            mergeTime+=System.nanoTime()-start;
+            return;
+        }
+        pendingBuffers.get(peer).addAll(buffer);
+        pendingMerges[peer]++;
+        if(pendingMerges[peer]>=batchSize){
+            mergePending(peer);
+        }
+        mergeTime+=System.nanoTime()-start;
+    }
+
+    private static void mergePending(int peer){
+        if(pendingMerges[peer]>0){
+            viewManagers[peer].selectBatch(pendingBuffers.get(peer), pendingMerges[peer], sentBuffers.get(peer));
+            pendingBuffers.get(peer).clear();
+            pendingMerges[peer]=0;
+        }
+        sentBuffers.get(peer).clear();
+    }
+
+    private static void createViewManagers(Random random){
+        viewManagers=new ViewManager[N];
+        pendingBuffers=new ArrayList<List<FingerDescriptor>>();
+        sentBuffers=new ArrayList<List<FingerDescriptor>>();
+        pendingMerges=new int[N];
+        for(int i=0;i<N;i++){
+            viewManagers[i]=new ViewManager(c, H, S, PeerSelectionPolicy.RAND, createFinger(i));
+            List<Finger> bootstrapPeers=new ArrayList<Finger>();
+            for(int j=0;j<c;j++){
+                bootstrapPeers.add(createFinger(random.nextInt(N)));
+            }
+            viewManagers[i].setBootstrapPeers(bootstrapPeers);
+            pendingBuffers.add(new ArrayList<FingerDescriptor>());
+            sentBuffers.add(new ArrayList<FingerDescriptor>());
+        }
+    }
+
+    private static Finger createFinger(int index){
+        return new Finger(new IntegerNetworkAddress(index), new RingIdentifier((double)index/N));
+    }
+}
@@ -0,0 +1,84 @@
+/*
+ * Copyright (C) 2015 Evangelos Pournaras
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+
+package experiments;
+
+import enums.PSSMeasurementTags;
+import enums.PeerSelectionPolicy;
+import enums.ViewPropagationPolicy;
+import simulation.CycleSimulation;
+import util.InDegreeCollector;
+
+/**
+ * Runs the <code>CycleSimulation</code> with the parameters of the
+ * <code>PeerSamplingServiceExperiment</code>, one cycle per period T, and
+ * prints the results per cycle in the format of the
+ * <code>ResultsIllustrator</code>. The number of nodes is given as the first
+ * argument and it is 1000 by default.
+ *
+ * @author Evangelos
+ */
+public class CycleSimulationExperiment {
+
+    private final static int cycles=350;
+    private final static int c=50;
+    private final static int H=0;
+    private final static int S=25;
+    private final static ViewPropagationPolicy viewPropagationPolicy=ViewPropagationPolicy.PUSHPULL;
+    private final static PeerSelectionPolicy peerSelectionPolicy=PeerSelectionPolicy.RAND;
+    private final static long seed=1;
+
+    public static void main(String[] args) {
+        int N=args.length>0?Integer.parseInt(args[0]):1000;
+        long start=System.nanoTime();
+        CycleSimulation simulation=new CycleSimulation(N, c, H, S, peerSelectionPolicy, viewPropagationPolicy, seed);
+        InDegreeCollector collector=new InDegreeCollector(N);
+        System.out.println("*** RESULTS PER EPOCH ***\n");
+        for(int cycle=0;cycle<cycles;cycle++){
+            simulation.run(1);
+            System.out.print("Epoch: "+cycle+"\t");
+            printMessages(simulation, PSSMeasurementTags.MESSAGE_ACTION_RECEIVED);
+            printMessages(simulation, PSSMeasurementTags.MESSAGE_REACTION_REVEIVED);
+            printMessages(simulation, PSSMeasurementTags.MESSAGE_ACTION_SENT);
+            printMessages(simulation, PSSMeasurementTags.MESSAGE_REACTION_SENT);
+            simulation.countInDegrees(collector);
+            collector.compute();
+            System.out.print("Measurement-Indegree St. Deviation: "+Math.round(collector.getStDev()*100)/100.0);
+            if(cycle==140){
+                printInDegreeNodesProportion(collector);
+            }
+            System.out.println();
+        }
+        System.out.println("\n***********************************************\n");
+        System.out.println("Simulated "+N+" nodes for "+cycles+" cycles in "+(System.nanoTime()-start)/1000000+" ms");
+    }
+
+    private static void printMessages(CycleSimulation simulation, PSSMeasurementTags tag){
+        System.out.print("Measurement-"+tag.toString()+": "+(double)simulation.getMessages(tag));
+        System.out.print("\t");
+    }
+
+    private static void printInDegreeNodesProportion(InDegreeCollector collector){
+        int[] histogram=collector.getHistogram();
+        for(int i=0;i<=collector.getMax();i++){
+            if(histogram[i]>0){
+                System.out.println(i+","+histogram[i]);
+            }
+        }
+    }
+}
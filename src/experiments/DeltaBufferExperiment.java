@@ -0,0 +1,89 @@
+/*
+ * Copyright (C) 2015 Evangelos Pournaras
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+
+package experiments;
+
+import enums.AgingPolicy;
+import enums.BufferEncoding;
+import enums.PSSMeasurementTags;
+import enums.PeerSelectionPolicy;
+import enums.ViewPropagationPolicy;
+import peerlets.PeerSamplingService;
+import protopeer.Experiment;
+import protopeer.Peer;
+import protopeer.PeerFactory;
+import protopeer.SimulatedExperiment;
+import protopeer.util.quantities.Time;
+
+/**
+ * Compares the FULL and the DELTA buffer encodings in a small cluster, in
+ * which the same pairs of peers swap many times. The bytes per swap, the
+ * references that could not be resolved and the standard deviation of the
+ * in-degree of the peers, which shows how fast the views converge to random
+ * views, are reported every 10 seconds. The encoding is given as the first
+ * argument, FULL or DELTA, and it is DELTA by default.
+ *
+ * @author Evangelos
+ */
+public class DeltaBufferExperiment extends SimulatedExperiment{
+
+    private final static int runDuration=200;
+    private final static int reportPeriod=10;
+    private final static int N=40;
+    private final static int c=20;
+    private final static int H=1;
+    private final static int S=10;
+    private final static ViewPropagationPolicy viewPropagationPolicy=ViewPropagationPolicy.PUSHPULL;
+    private final static PeerSelectionPolicy peerSelectionPolicy=PeerSelectionPolicy.RAND;
+    private final static int T=1000;
+    private final static int A=1000;
+    private final static int B=6000;
+
+    public static void main(String[] args) {
+        final BufferEncoding bufferEncoding=args.length>0?BufferEncoding.valueOf(args[0]):BufferEncoding.DELTA;
+        Experiment.initEnvironment();
+        DeltaBufferExperiment experiment=new DeltaBufferExperiment();
+        experiment.init();
+        PeerFactory peerFactory=new PeerFactory() {
+            public Peer createPeer(int peerIndex, Experiment experiment) {
+                PeerSamplingService pss=new PeerSamplingService(c, H, S, peerSelectionPolicy, viewPropagationPolicy, T, A, B, AgingPolicy.EVENT, bufferEncoding);
+                pss.setSwapBytesMeasurement(true);
+                return Experiments.createPeer(peerIndex, experiment, pss);
+            }
+        };
+        experiment.initPeers(0, N, peerFactory);
+        experiment.startPeers(0, N);
+
+        System.out.println("Encoding: "+bufferEncoding);
+        System.out.println("time (s)\tbytes/swap\tunresolved references\tin-degree st. dev.");
+        Experiments.ReportSums sums=new Experiments.ReportSums(experiment, reportPeriod);
+        double totalBytes=0.0;
+        double totalSwaps=0.0;
+        for(int time=reportPeriod;time<=runDuration;time+=reportPeriod){
+            experiment.runSimulation(Time.inSeconds(reportPeriod));
+            double[] reportSums=sums.next(PSSMeasurementTags.SWAP_BYTES, PSSMeasurementTags.PAROS_MESS, PSSMeasurementTags.UNRESOLVED_REFERENCES);
+            double bytes=reportSums[0];
+            double swaps=reportSums[1];
+            double unresolved=reportSums[2];
+            totalBytes+=bytes;
+            totalSwaps+=swaps;
+            System.out.println(time+"\t\t"+Experiments.round(swaps>0?bytes/swaps:0.0)+"\t\t"+(long)unresolved+"\t\t\t"+Experiments.round(EpochReporter.collectInDegrees(experiment).getStDev()));
+        }
+        System.out.println("Average bytes/swap: "+Experiments.round(totalBytes/totalSwaps));
+    }
+}
@@ -0,0 +1,234 @@
+/*
+ * Copyright (C) 2015 Evangelos Pournaras
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+
+package experiments;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.NoSuchElementException;
+import peerlets.PeerSamplingService;
+import protopeer.Experiment;
+import protopeer.Peer;
+import protopeer.measurement.MeasurementLog;
+import protopeer.measurement.MeasurementLoggerListener;
+import protopeer.network.NetworkAddress;
+import util.InDegreeCollector;
+
+/**
+ * Writes the results of every measurement epoch as soon as the epoch ends,
+ * instead of scanning the root <code>MeasurementLog</code> after the run as
+ * the <code>ResultsIllustrator</code> does. It listens to the root measurement
+ * logger. The logs of the peers for an epoch are merged in the root log at
+ * the end of the next epoch, so every epoch is written one epoch later. The
+ * last epoch of a run is merged and written by <code>close()</code>. For
+ * every epoch it writes a row
+ * with the sums of the tags, the mean, the standard deviation, the maximum
+ * and the percentiles of the in-degree of the peers at the end of the epoch.
+ * The in-degrees are counted from the views of the Peer Sampling Service by an
+ * <code>InDegreeCollector</code> and their histogram is written in a second
+ * file. Then, the epoch
+ * is removed from the root log and the logs of the peers, so the memory does
+ * not grow with the length of the run. Note that the aggregates of the root
+ * log over all epochs are lost as well.
+ *
+ * @author Evangelos
+ */
+public class EpochReporter implements MeasurementLoggerListener{
+
+    private final Experiment experiment;
+    private final Enum<?>[] tags;
+    private final PrintWriter results;
+    private final PrintWriter histograms;
+    private final static double[] percentiles={1, 50, 99};
+    private InDegreeCollector collector;
+    private final StringBuilder inDegreeResults;
+    private final StringBuilder histogramResults;
+    private int pendingEpoch;
+
+    /**
+	 * Creates the reporter and writes the headers of the files. It has to be
+     * added as a listener of the root measurement logger with
+     * <code>start()</code>.
+     *
+     * @param experiment the experiment
+     * @param output the file of the results per epoch
+     * @param histogramOutput the file of the in-degree histograms
+     * @param tags the summed tags
+	 */
+    public EpochReporter(Experiment experiment, File output, File histogramOutput, Enum<?>... tags) throws IOException{
+        this.experiment=experiment;
+        this.tags=tags;
+        this.results=new PrintWriter(new FileWriter(output));
+        this.histograms=new PrintWriter(new FileWriter(histogramOutput));
+        this.inDegreeResults=new StringBuilder();
+        this.histogramResults=new StringBuilder();
+        this.pendingEpoch=-1;
+        StringBuilder header=new StringBuilder("epoch");
+        for(Enum<?> tag:tags){
+            header.append(',').append(tag);
+        }
+        header.append(",in-degree mean,in-degree st. dev.,in-degree max");
+        for(double percentile:percentiles){
+            header.append(",in-degree p").append((int)percentile);
+        }
+        this.results.println(header);
+        this.histograms.println("epoch,in-degree,nodes");
+    }
+
+    /**
+	 * Starts listening to the end of the epochs.
+	 */
+    public void start(){
+        this.experiment.getRootMeasurementLogger().addMeasurementLoggerListener(this);
+    }
+
+    /**
+	 * Writes the results of the previous epoch, whose logs have been merged in
+     * the root log at the end of this epoch, and counts the in-degrees at the
+     * end of this epoch.
+	 */
+    public void measurementEpochEnded(MeasurementLog log, int epochNumber){
+        if(this.pendingEpoch>=0){
+            this.writeEpoch(log, this.pendingEpoch);
+        }
+        this.pendingEpoch=epochNumber;
+        this.countInDegrees();
+        this.collector.compute();
+        this.inDegreeResults.setLength(0);
+        this.inDegreeResults.append(',').append(Math.round(this.collector.getMean()*100)/100.0)
+                .append(',').append(Math.round(this.collector.getStDev()*100)/100.0)
+                .append(',').append(this.collector.getMax());
+        for(double percentile:percentiles){
+            this.inDegreeResults.append(',').append(this.collector.getPercentile(percentile));
+        }
+        this.histogramResults.setLength(0);
+        int[] histogram=this.collector.getHistogram();
+        for(int i=0;i<=this.collector.getMax();i++){
+            if(histogram[i]>0){
+                this.histogramResults.append(epochNumber).append(',').append(i).append(',').append(histogram[i]).append(System.getProperty("line.separator"));
+            }
+        }
+    }
+
+    /**
+	 * Writes the sums of the tags of an epoch from the root log, together with
+     * the in-degrees counted at its end, and frees the epoch.
+	 */
+    private void writeEpoch(MeasurementLog log, int epochNumber){
+        StringBuilder row=new StringBuilder().append(epochNumber);
+        for(Enum<?> tag:this.tags){
+            row.append(',').append(log.getAggregateByEpochNumber(epochNumber, tag).getSum());
+        }
+        row.append(this.inDegreeResults);
+        this.results.println(row);
+        this.histograms.print(this.histogramResults);
+        this.results.flush();
+        this.histograms.flush();
+        this.freeEpoch(log, epochNumber);
+        this.pendingEpoch=-1;
+    }
+
+    /**
+	 * Counts the views of the Peer Sampling Service that contain every peer.
+     * The peers are indexed in the order of the experiment.
+	 */
+    private void countInDegrees(){
+        if(this.collector==null||this.collector.getInDegrees().length!=this.experiment.getPeers().size()){
+            this.collector=createCollector(this.experiment);
+        }
+        countInDegrees(this.experiment, this.collector);
+    }
+
+    /**
+	 * Counts the in-degrees of the peers of an experiment, i.e. the views of
+     * their Peer Sampling Services that contain every peer, and computes their
+     * statistics.
+     *
+     * @param experiment the experiment with the peers
+	 */
+    static InDegreeCollector collectInDegrees(Experiment experiment){
+        InDegreeCollector collector=createCollector(experiment);
+        countInDegrees(experiment, collector);
+        collector.compute();
+        return collector;
+    }
+
+    private static InDegreeCollector createCollector(Experiment experiment){
+        List<NetworkAddress> peers=new ArrayList<NetworkAddress>();
+        for(Peer peer:experiment.getPeers()){
+            peers.add(peer.getNetworkAddress());
+        }
+        return new InDegreeCollector(peers);
+    }
+
+    private static void countInDegrees(Experiment experiment, InDegreeCollector collector){
+        collector.reset();
+        for(Peer peer:experiment.getPeers()){
+            PeerSamplingService pss=(PeerSamplingService)peer.getPeerletOfType(PeerSamplingService.class);
+            if(pss!=null){
+                collector.countView(pss.getRandomPeerView());
+            }
+        }
+    }
+
+    /**
+	 * Removes the epoch and the previous ones from the root log and the logs
+     * of the peers. The later epochs, which are not merged yet, are kept.
+	 */
+    private void freeEpoch(MeasurementLog log, int epochNumber){
+        this.shrink(log, epochNumber);
+        for(Peer peer:this.experiment.getPeers()){
+            this.shrink(peer.getMeasurementLogger().getMeasurementLog(), epochNumber);
+        }
+    }
+
+    private void shrink(MeasurementLog log, int epochNumber){
+        int maxEpochNumber;
+        try{
+            maxEpochNumber=log.getMaxEpochNumber();
+        }
+        catch(NoSuchElementException e){
+            return; //empty log
+        }
+        log.shrink(epochNumber+1, Math.max(epochNumber+1, maxEpochNumber+1));
+    }
+
+    /**
+	 * Writes the last epoch, whose logs have not been merged in the root log
+     * yet, and closes the files. The logs of the peers for the epoch are
+     * merged as the experiment does at the end of the next epoch. It has to be
+     * called after the end of the run.
+	 */
+    public void close(){
+        if(this.pendingEpoch>=0){
+            MeasurementLog log=this.experiment.getRootMeasurementLog();
+            for(Peer peer:this.experiment.getPeers()){
+                if(peer!=null){
+                    log.mergeWith(peer.getMeasurementLogger().getMeasurementLog(), this.pendingEpoch);
+                }
+            }
+            this.writeEpoch(log, this.pendingEpoch);
+        }
+        this.results.close();
+        this.histograms.close();
+    }
+}
@@ -0,0 +1,174 @@
+/*
+ * Copyright (C) 2015 Evangelos Pournaras
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package experiments;
+
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+import peerlets.PeerSamplingService;
+import protopeer.Experiment;
+import protopeer.MainConfiguration;
+import protopeer.NeighborManager;
+import protopeer.Peer;
+import protopeer.measurement.MeasurementLog;
+import protopeer.servers.bootstrap.BootstrapClient;
+import protopeer.servers.bootstrap.BootstrapServer;
+import protopeer.servers.bootstrap.SimpleConnector;
+import protopeer.servers.bootstrap.SimplePeerIdentifierGenerator;
+
+/**
+ * The parts that the experiments and the benchmarks have in common: the
+ * creation of a peer with the bootstrapping peerlets and a Peer Sampling
+ * Service, the parameters read from a configuration file, the sums of
+ * measurement tags over the epochs of a report period and the rounding of the
+ * printed results.
+ *
+ * @author Evangelos
+ */
+final class Experiments {
+
+    private Experiments(){
+    }
+
+    /**
+	 * Creates a peer with the bootstrap server if it is the first peer, the
+     * neighbor manager, the bootstrap client and the given Peer Sampling
+     * Service. More peerlets can be added to the returned peer.
+     *
+     * @param peerIndex the index of the peer
+     * @param experiment the experiment
+     * @param pss the Peer Sampling Service of the peer
+	 */
+    static Peer createPeer(int peerIndex, Experiment experiment, PeerSamplingService pss){
+        Peer newPeer = new Peer(peerIndex);
+        if (peerIndex == 0) {
+            newPeer.addPeerlet(new BootstrapServer());
+        }
+        newPeer.addPeerlet(new NeighborManager());
+        newPeer.addPeerlet(new SimpleConnector());
+        newPeer.addPeerlet(new BootstrapClient(experiment.getAddressToBindTo(0), new SimplePeerIdentifierGenerator()));
+        newPeer.addPeerlet(pss);
+        return newPeer;
+    }
+
+    /**
+	 * Loads a configuration file in which every parameter can have comma
+     * separated values.
+     *
+     * @param file the path of the file
+	 */
+    static Properties loadProperties(String file) throws IOException{
+        Properties properties=new Properties();
+        InputStream in=new FileInputStream(file);
+        try{
+            properties.load(in);
+        }
+        finally{
+            in.close();
+        }
+        return properties;
+    }
+
+    /**
+	 * Returns the comma separated values of a parameter.
+     *
+     * @param properties the configuration
+     * @param key the parameter
+     * @param defaultValue the values if the parameter is missing
+	 */
+    static List<String> getValues(Properties properties, String key, String defaultValue){
+        List<String> values=new ArrayList<String>();
+        for(String value:properties.getProperty(key, defaultValue).split(",")){
+            if(!value.trim().isEmpty()){
+                values.add(value.trim());
+            }
+        }
+        return values;
+    }
+
+    /**
+	 * Returns the first of the comma separated values of a parameter.
+     *
+     * @param properties the configuration
+     * @param key the parameter
+     * @param defaultValue the value if the parameter is missing
+	 */
+    static String getValue(Properties properties, String key, String defaultValue){
+        List<String> values=getValues(properties, key, defaultValue);
+        return values.isEmpty()?defaultValue:values.get(0);
+    }
+
+    /**
+	 * Rounds a value to two decimals.
+	 */
+    static double round(double value){
+        return round(value, 2);
+    }
+
+    /**
+	 * Rounds a value to a number of decimals.
+	 */
+    static double round(double value, int decimals){
+        double scale=Math.pow(10, decimals);
+        return Math.round(value*scale)/scale;
+    }
+
+    /**
+	 * Sums measurement tags of the root log over consecutive report periods.
+     * Every call of <code>next</code> sums the epochs of the next period,
+     * which has to be simulated before.
+	 */
+    static class ReportSums {
+
+        private final MeasurementLog log;
+        private final int epochsPerReport;
+        private int epoch;
+
+        /**
+    	 * Starts summing from the first epoch.
+         *
+         * @param experiment the experiment whose root log is summed
+         * @param reportPeriod the report period in seconds
+    	 */
+        ReportSums(Experiment experiment, int reportPeriod){
+            this.log=experiment.getRootMeasurementLog();
+            this.epochsPerReport=(int)(reportPeriod*1000/MainConfiguration.getSingleton().measurementEpochDuration);
+            this.epoch=0;
+        }
+
+        /**
+    	 * Returns the sums of the tags over the epochs of the next report
+         * period, in the order of the tags.
+         *
+         * @param tags the summed tags
+    	 */
+        double[] next(Enum<?>... tags){
+            double[] sums=new double[tags.length];
+            int end=this.epoch+this.epochsPerReport;
+            for(;this.epoch<end;this.epoch++){
+                for(int i=0;i<tags.length;i++){
+                    sums[i]+=this.log.getAggregateByEpochNumber(this.epoch, tags[i]).getSum();
+                }
+            }
+            return sums;
+        }
+    }
+}
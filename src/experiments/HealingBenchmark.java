@@ -0,0 +1,223 @@
+/*
+ * Copyright (C) 2015 Evangelos Pournaras
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+
+package experiments;
+
+import components.AgeDescriptorManager;
+import components.ViewManager;
+import dsutil.protopeer.FingerDescriptor;
+import enums.PeerSelectionPolicy;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import protopeer.Finger;
+import protopeer.RingIdentifier;
+import protopeer.network.IntegerNetworkAddress;
+
+/**
+ * Compares the time of the healing operations of the
+ * <code>ViewManager</code> (the removal of the H oldest items in the selection
+ * of the view and the move of the H oldest items at the end of the view before
+ * a buffer is created) with the insertion sort algorithms they replaced, for H
+ * equal to 0, 1 and c/2. The equality of the results of both algorithms is
+ * checked by <code>components.ViewHealingTest</code>, which keeps its own
+ * copies of the replaced algorithms.
+ *
+ * The timings are taken with a plain timer after a warm-up round instead of
+ * JMH, because the project is built by the NetBeans Ant scripts without JMH
+ * and its annotation processor. The operations differ by orders of magnitude,
+ * which a plain timer resolves.
+ *
+ * @author Evangelos
+ */
+public class HealingBenchmark {
+
+    private final static int[] viewLengths={20, 50, 200, 1000};
+    private final static int measuredOperations=200000;
+
+    public static void main(String[] args) {
+        Random random=new Random(1);
+        System.out.println("c\tH\tlegacy move (us)\tmove (us)\tlegacy remove (us)\tremove (us)");
+        for(int round=0;round<2;round++){
+            for(int c:viewLengths){
+                for(int H:new int[]{0, 1, c/2}){
+                    int operations=Math.max(20, measuredOperations/(c*c/20+1));
+                    List<FingerDescriptor> view=createView(c, random);
+                    double legacyMove=timeLegacyMove(view, c, H, operations);
+                    double move=timeMove(view, c, H, operations);
+                    double legacyRemove=timeLegacyRemove(view, c, H, operations);
+                    double remove=timeRemove(view, c, H, operations);
+                    if(round==1){
+                        System.out.println(c+"\t"+H+"\t"+Experiments.round(legacyMove, 3)+"\t\t\t"+Experiments.round(move, 3)+"\t\t"+Experiments.round(legacyRemove, 3)+"\t\t\t"+Experiments.round(remove, 3));
+                    }
+                }
+            }
+        }
+    }
+
+    private static double timeMove(List<FingerDescriptor> view, int c, int H, int operations){
+        ViewManager viewManager=createViewManager(c, H, view);
+        long start=System.nanoTime();
+        for(int i=0;i<operations;i++){
+            viewManager.moveOldItemsAtTheEnd();
+        }
+        return (System.nanoTime()-start)/1000.0/operations;
+    }
+
+    private static double timeLegacyMove(List<FingerDescriptor> view, int c, int H, int operations){
+        List<FingerDescriptor> copy=new ArrayList<FingerDescriptor>(view);
+        long start=System.nanoTime();
+        for(int i=0;i<operations;i++){
+            legacyMoveOldItemsAtTheEnd(copy, c, H);
+        }
+        return (System.nanoTime()-start)/1000.0/operations;
+    }
+
+    /**
+	 * Times the selection of a view of length c out of c+H descriptors, which
+     * removes the H oldest ones. The legacy measurement selects a view of
+     * length c+H, so that nothing is removed, and then runs the insertion sort
+     * algorithm. In this way, both measurements include the same merging and
+     * sample updates.
+	 */
+    private static double timeRemove(List<FingerDescriptor> view, int c, int H, int operations){
+        List<FingerDescriptor> buffer=new ArrayList<FingerDescriptor>(view);
+        buffer.addAll(createView(H, new Random(H)));
+        long start=System.nanoTime();
+        for(int i=0;i<operations;i++){
+            createViewManager(c, H, buffer);
+        }
+        return (System.nanoTime()-start)/1000.0/operations;
+    }
+
+    private static double timeLegacyRemove(List<FingerDescriptor> view, int c, int H, int operations){
+        List<FingerDescriptor> buffer=new ArrayList<FingerDescriptor>(view);
+        buffer.addAll(createView(H, new Random(H)));
+        long start=System.nanoTime();
+        for(int i=0;i<operations;i++){
+            List<FingerDescriptor> copy=new ArrayList<FingerDescriptor>(buffer);
+            createViewManager(c+H, H, buffer);
+            legacyRemoveOldItems(copy, H);
+        }
+        return (System.nanoTime()-start)/1000.0/operations;
+    }
+
+    /**
+	 * Creates a view of descriptors with ages drawn from a small range, so
+     * that many descriptors have the same age.
+	 */
+    private static List<FingerDescriptor> createView(int length, Random random){
+        AgeDescriptorManager ageManager=new AgeDescriptorManager();
+        List<FingerDescriptor> view=new ArrayList<FingerDescriptor>();
+        for(int i=0;i<length;i++){
+            int address=1+random.nextInt(Integer.MAX_VALUE-1);
+            FingerDescriptor descriptor=new FingerDescriptor(new Finger(new IntegerNetworkAddress(address), new RingIdentifier(random.nextDouble())));
+            ageManager.initAge(descriptor);
+            ageManager.setAge(descriptor, 1000.0*random.nextInt(Math.max(1, length/4)));
+            view.add(descriptor);
+        }
+        return view;
+    }
+
+    /**
+	 * Creates a view manager whose view contains the given descriptors in the
+     * same order. With S equal to 0, the selection only removes the H oldest
+     * descriptors when they are more than c.
+	 */
+    private static ViewManager createViewManager(int c, int H, List<FingerDescriptor> view){
+        Finger myFinger=new Finger(new IntegerNetworkAddress(0), new RingIdentifier(0.0));
+        ViewManager viewManager=new ViewManager(c, H, 0, PeerSelectionPolicy.RAND, myFinger);
+        viewManager.select(view);
+        return viewManager;
+    }
+
+    /**
+	 * The insertion sort algorithm that removed the H oldest items. It is the
+     * reference of the timings.
+	 */
+    private static void legacyRemoveOldItems(List<FingerDescriptor> view, int H){
+        AgeDescriptorManager ageManager=new AgeDescriptorManager();
+        ArrayList<Integer> sortedIndices=new ArrayList<Integer>();
+        for(int i=0;i<view.size();i++){
+            sortedIndices.add(i);
+        }
+        for(int i=1;i<sortedIndices.size();i++){
+            FingerDescriptor descriptor=view.get(sortedIndices.get(i));
+            for(int j=0;j<i;j++){
+                FingerDescriptor comparedDescriptor=view.get(sortedIndices.get(j));
+                if(ageManager.isOlder(descriptor, comparedDescriptor)){
+                    sortedIndices.add(j, sortedIndices.remove(i));
+                    break;
+                }
+            }
+        }
+        ArrayList<FingerDescriptor> kOldestItems=new ArrayList<FingerDescriptor>();
+        for(int i=0;i<H;i++){
+           kOldestItems.add(view.get(sortedIndices.get(i)));
+        }
+        view.removeAll(kOldestItems);
+    }
+
+    /**
+	 * The insertion sort algorithm that moved the H oldest items at the end.
+     * The original version always removed the first element of the sorted
+     * indices instead of the moved one, so for more than one moved item it
+     * did not move the oldest items. That index is corrected here. It is the
+     * reference of the timings.
+	 */
+    private static void legacyMoveOldItemsAtTheEnd(List<FingerDescriptor> view, int c, int H){
+        AgeDescriptorManager ageManager=new AgeDescriptorManager();
+        ArrayList<Integer> sortedIndices=new ArrayList<Integer>();
+        for(int i=0;i<view.size();i++){
+            sortedIndices.add(i);
+        }
+        for(int i=1;i<sortedIndices.size();i++){
+            FingerDescriptor descriptor=view.get(sortedIndices.get(i));
+            for(int j=0;j<i;j++){
+                FingerDescriptor comparedDescriptor=view.get(sortedIndices.get(j));
+                if(ageManager.isOlder(descriptor, comparedDescriptor)){
+                    sortedIndices.add(j, sortedIndices.remove(i));
+                    break;
+                }
+            }
+        }
+        int movedItems=view.size()*H/c;
+        int scannedItems=movedItems;
+        for(int i=0;i<movedItems;i++){
+            int min=Integer.MAX_VALUE;
+            int movedItemIndex=-1;
+            for(int j=0;j<scannedItems;j++){
+                int indexElement=sortedIndices.get(j).intValue();
+                if(indexElement<min){
+                    min=indexElement;
+                    movedItemIndex=j;
+                }
+            }
+            sortedIndices.remove(movedItemIndex);
+            scannedItems--;
+            view.add(view.remove(min));
+            for(int j=0;j<sortedIndices.size();j++){
+                Integer indexToNeighbor=sortedIndices.get(j);
+                if(indexToNeighbor.intValue()>min){
+                    indexToNeighbor=indexToNeighbor.intValue()-1;
+                    sortedIndices.set(j, indexToNeighbor);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,68 @@
+/*
+ * Copyright (C) 2015 Evangelos Pournaras
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+
+package experiments;
+
+import enums.PeerSelectionPolicy;
+import enums.ViewPropagationPolicy;
+import simulation.ParallelSimulation;
+
+/**
+ * Measures the scaling of the <code>ParallelSimulation</code> with the
+ * parameters of the <code>PeerSamplingServiceExperiment</code> on 1, 2, 4, 8
+ * and 16 worker threads. Every run simulates the same population for the same
+ * duration with the same seed and its checksum is compared with the one of
+ * the sequential run. The number of peers is given as the first argument and
+ * it is 100000 by default.
+ *
+ * @author Evangelos
+ */
+public class ParallelSimulationBenchmark {
+
+    private final static int runDuration=20;
+    private final static int c=50;
+    private final static int H=0;
+    private final static int S=25;
+    private final static ViewPropagationPolicy viewPropagationPolicy=ViewPropagationPolicy.PUSHPULL;
+    private final static PeerSelectionPolicy peerSelectionPolicy=PeerSelectionPolicy.RAND;
+    private final static int T=1000;
+    private final static int A=1000;
+    private final static double lookahead=50.0;
+    private final static long seed=1;
+    private final static int[] workers={1, 2, 4, 8, 16};
+
+    public static void main(String[] args) throws InterruptedException {
+        int N=args.length>0?Integer.parseInt(args[0]):100000;
+        System.out.println("Peers: "+N+", available processors: "+Runtime.getRuntime().availableProcessors());
+        System.out.println("workers\twall time (s)\tevents/s\tspeedup\tidentical");
+        long sequentialChecksum=0;
+        double sequentialTime=0.0;
+        for(int w:workers){
+            ParallelSimulation simulation=new ParallelSimulation(N, c, H, S, peerSelectionPolicy, viewPropagationPolicy, T, A, lookahead, seed, w);
+            long start=System.nanoTime();
+            simulation.run(runDuration*1000.0);
+            double time=(System.nanoTime()-start)/1e9;
+            long checksum=simulation.getChecksum();
+            if(w==1){
+                sequentialChecksum=checksum;
+                sequentialTime=time;
+            }
+            System.out.println(w+"\t"+Experiments.round(time)+"\t\t"+Math.round(simulation.getEvents()/time)+"\t\t"+Experiments.round(sequentialTime/time)+"\t"+(checksum==sequentialChecksum));
+        }
+    }
+}
@@ -0,0 +1,232 @@
+/*
+ * Copyright (C) 2015 Evangelos Pournaras
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+
+package experiments;
+
+import enums.PSSMeasurementTags;
+import enums.PeerSelectionPolicy;
+import enums.SimulationEngine;
+import enums.ViewPropagationPolicy;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import simulation.CycleSimulation;
+import simulation.ParallelSimulation;
+import util.InDegreeCollector;
+
+/**
+ * Runs a grid of configurations of the Peer Sampling Service in one JVM and
+ * writes the results in one file. The grid is read from a configuration file,
+ * <code>conf/sweep.conf</code> by default or the file given as the first
+ * argument, in which every parameter can have comma separated values. All the
+ * combinations of the values are run with the <code>CycleSimulation</code> or
+ * the <code>ParallelSimulation</code>, several of them concurrently. The
+ * <code>CycleSimulation</code> has no period and age increase, so their values
+ * are ignored and reported as "-". The ProtoPeer simulation of
+ * <code>PeerSamplingServiceExperiment</code> is not part of the sweep, it uses
+ * the singleton experiment of ProtoPeer and cannot run in the same JVM as
+ * other runs, but it reads the first value of every parameter from the same
+ * file. The
+ * results file has a row for every report of every run with the parameters,
+ * the messages per node and period since the previous report, the standard
+ * deviation, the maximum and the 1st and 99th percentiles of the in-degree
+ * and the wall time of the run so far.
+ *
+ * @author Evangelos
+ */
+public class ParameterSweep {
+
+    private final static String header="engine,N,c,H,S,peerSelectionPolicy,viewPropagationPolicy,T,A,seed,period,messages/node,in-degree st. dev.,in-degree max,in-degree p1,in-degree p99,wall time (ms)";
+
+    public static void main(String[] args) throws IOException, InterruptedException {
+        Properties properties=Experiments.loadProperties(args.length>0?args[0]:"conf/sweep.conf");
+        List<Configuration> configurations=createGrid(properties);
+        int concurrentRuns=Integer.parseInt(properties.getProperty("concurrentRuns", "0").trim());
+        if(concurrentRuns<=0){
+            concurrentRuns=Runtime.getRuntime().availableProcessors();
+        }
+        File output=new File(properties.getProperty("output", "log/sweep.csv").trim());
+        if(output.getParentFile()!=null){
+            output.getParentFile().mkdirs();
+        }
+        final PrintWriter writer=new PrintWriter(new FileWriter(output));
+        writer.println(header);
+        System.out.println("Running "+configurations.size()+" configurations, "+concurrentRuns+" concurrently");
+        long start=System.nanoTime();
+        ExecutorService executor=Executors.newFixedThreadPool(concurrentRuns);
+        List<Future<Void>> runs=new ArrayList<Future<Void>>();
+        for(final Configuration configuration:configurations){
+            runs.add(executor.submit(new Callable<Void>(){
+                public Void call() throws InterruptedException{
+                    List<String> rows=configuration.run();
+                    synchronized(writer){
+                        for(String row:rows){
+                            writer.println(row);
+                        }
+                        writer.flush();
+                    }
+                    System.out.println("Finished "+configuration);
+                    return null;
+                }
+            }));
+        }
+        int failed=0;
+        for(int i=0;i<runs.size();i++){
+            try{
+                runs.get(i).get();
+            }
+            catch(ExecutionException e){
+                System.err.println("Failed "+configurations.get(i)+": "+e.getCause());
+                failed++;
+            }
+        }
+        executor.shutdown();
+        writer.close();
+        System.out.println("Finished "+(configurations.size()-failed)+" configurations in "+(System.nanoTime()-start)/1000000+" ms, results in "+output);
+    }
+
+    /**
+	 * Creates all the combinations of the parameter values.
+	 */
+    private static List<Configuration> createGrid(Properties properties){
+        SimulationEngine engine=SimulationEngine.valueOf(properties.getProperty("engine", "CYCLE").trim());
+        int periods=Integer.parseInt(properties.getProperty("periods", "100").trim());
+        int reportPeriods=Integer.parseInt(properties.getProperty("reportPeriods", "10").trim());
+        double lookahead=Double.parseDouble(properties.getProperty("lookahead", "50").trim());
+        int workers=Integer.parseInt(properties.getProperty("workers", "1").trim());
+        //the CYCLE engine has no period and age increase, it runs every other combination once
+        List<String> periodValues=engine==SimulationEngine.CYCLE?Collections.singletonList("0"):Experiments.getValues(properties, "T", "1000");
+        List<String> ageIncreaseValues=engine==SimulationEngine.CYCLE?Collections.singletonList("0"):Experiments.getValues(properties, "A", "1000");
+        List<Configuration> configurations=new ArrayList<Configuration>();
+        for(String N:Experiments.getValues(properties, "N", "1000")){
+            for(String c:Experiments.getValues(properties, "c", "20")){
+                for(String H:Experiments.getValues(properties, "H", "1")){
+                    for(String S:Experiments.getValues(properties, "S", "10")){
+                        for(String peerSelectionPolicy:Experiments.getValues(properties, "peerSelectionPolicy", "RAND")){
+                            for(String viewPropagationPolicy:Experiments.getValues(properties, "viewPropagationPolicy", "PUSHPULL")){
+                                for(String T:periodValues){
+                                    for(String A:ageIncreaseValues){
+                                        for(String seed:Experiments.getValues(properties, "seed", "1")){
+                                            configurations.add(new Configuration(engine, Integer.parseInt(N), Integer.parseInt(c), Integer.parseInt(H), Integer.parseInt(S),
+                                                    PeerSelectionPolicy.valueOf(peerSelectionPolicy), ViewPropagationPolicy.valueOf(viewPropagationPolicy),
+                                                    Integer.parseInt(T), Integer.parseInt(A), Long.parseLong(seed), periods, reportPeriods, lookahead, workers));
+                                        }
+                                    }
+                                }
+                            }
+                        }
+                    }
+                }
+            }
+        }
+        return configurations;
+    }
+
+    /**
+	 * A point of the grid.
+	 */
+    private static class Configuration{
+
+        private final SimulationEngine engine;
+        private final int N;
+        private final int c;
+        private final int H;
+        private final int S;
+        private final PeerSelectionPolicy peerSelectionPolicy;
+        private final ViewPropagationPolicy viewPropagationPolicy;
+        private final int T;
+        private final int A;
+        private final long seed;
+        private final int periods;
+        private final int reportPeriods;
+        private final double lookahead;
+        private final int workers;
+
+        private Configuration(SimulationEngine engine, int N, int c, int H, int S, PeerSelectionPolicy peerSelectionPolicy, ViewPropagationPolicy viewPropagationPolicy, int T, int A, long seed, int periods, int reportPeriods, double lookahead, int workers){
+            this.engine=engine;
+            this.N=N;
+            this.c=c;
+            this.H=H;
+            this.S=S;
+            this.peerSelectionPolicy=peerSelectionPolicy;
+            this.viewPropagationPolicy=viewPropagationPolicy;
+            this.T=T;
+            this.A=A;
+            this.seed=seed;
+            this.periods=periods;
+            this.reportPeriods=reportPeriods;
+            this.lookahead=lookahead;
+            this.workers=workers;
+        }
+
+        /**
+		 * Runs the configuration and returns the rows of its results.
+		 */
+        private List<String> run() throws InterruptedException{
+            List<String> rows=new ArrayList<String>();
+            InDegreeCollector collector=new InDegreeCollector(N);
+            long start=System.nanoTime();
+            if(this.engine==SimulationEngine.CYCLE){
+                CycleSimulation simulation=new CycleSimulation(N, c, H, S, peerSelectionPolicy, viewPropagationPolicy, seed);
+                for(int period=reportPeriods;period<=periods;period+=reportPeriods){
+                    long messages=0;
+                    for(int i=0;i<reportPeriods;i++){
+                        simulation.run(1);
+                        messages+=simulation.getMessages(PSSMeasurementTags.PAROS_MESS);
+                    }
+                    simulation.countInDegrees(collector);
+                    rows.add(this.createRow(period, messages, collector, start));
+                }
+            }
+            else{
+                ParallelSimulation simulation=new ParallelSimulation(N, c, H, S, peerSelectionPolicy, viewPropagationPolicy, T, A, lookahead, seed, workers);
+                long previousMessages=0;
+                for(int period=reportPeriods;period<=periods;period+=reportPeriods){
+                    simulation.run((double)reportPeriods*T);
+                    long messages=simulation.getMessages()-previousMessages;
+                    previousMessages=simulation.getMessages();
+                    simulation.countInDegrees(collector);
+                    rows.add(this.createRow(period, messages, collector, start));
+                }
+            }
+            return rows;
+        }
+
+        private String createRow(int period, long messages, InDegreeCollector collector, long start){
+            collector.compute();
+            return this+","+period+","+Experiments.round((double)messages/N/reportPeriods, 3)+","+Experiments.round(collector.getStDev(), 3)+","+collector.getMax()+","+collector.getPercentile(1)+","+collector.getPercentile(99)+","+(System.nanoTime()-start)/1000000;
+        }
+
+        @Override
+        public String toString(){
+            String period=engine==SimulationEngine.CYCLE?"-":String.valueOf(T);
+            String ageIncrease=engine==SimulationEngine.CYCLE?"-":String.valueOf(A);
+            return engine+","+N+","+c+","+H+","+S+","+peerSelectionPolicy+","+viewPropagationPolicy+","+period+","+ageIncrease+","+seed;
+        }
+    }
+}
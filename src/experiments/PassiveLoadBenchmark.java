@@ -0,0 +1,229 @@
+/*
+ * Copyright (C) 2015 Evangelos Pournaras
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+
+package experiments;
+
+import components.ViewManager;
+import dsutil.protopeer.FingerDescriptor;
+import enums.MessageType;
+import enums.PeerSelectionPolicy;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import protopeer.Finger;
+import protopeer.RingIdentifier;
+import protopeer.network.IntegerNetworkAddress;
+import util.SerialExecutor;
+import util.SwapMessage;
+import util.SwapMessageCodec;
+
+/**
+ * Measures the latency of the REACTIONs of peers hosted in one JVM at
+ * increasing rates of incoming ACTIONs. A network thread reads the ACTIONs
+ * from a receive queue, in which they arrive at a constant rate, and
+ * deserializes their buffers. Half of the ACTIONs are received by a popular
+ * peer and the rest by the other peers. The passive state, i.e. the REACTION
+ * buffer, its encoding, the selection of the view and the aging, is run either
+ * inline in the network thread or by a <code>SerialExecutor</code> per peer on
+ * a shared pool, as the Peer Sampling Service does with a swap executor. The
+ * latency is the time from the arrival of the ACTION until its REACTION is
+ * created, measured separately for the popular peer and the other peers.
+ *
+ * @author Evangelos
+ */
+public class PassiveLoadBenchmark {
+
+    private final static int peers=100;
+    private final static int c=50;
+    private final static int A=1000;
+    private final static double popularShare=0.5;
+    private final static int[] rates={5000, 10000, 20000, 40000, 80000};
+    private final static int poolThreads=2;
+    private final static int capacity=64;
+    private final static long warmUpDuration=1000;
+    private final static long duration=4000;
+    private final static int bins=200000;
+    private final static double binWidth=50.0;
+
+    private static volatile boolean measuring;
+    private static AtomicLongArray popularLatencies;
+    private static AtomicLongArray otherLatencies;
+    private static AtomicLong dropped;
+
+    /**
+	 * An ACTION in the receive queue.
+	 */
+    private static class Arrival{
+        final long time;
+        final int peer;
+        final List<FingerDescriptor> buffer;
+
+        Arrival(long time, int peer, List<FingerDescriptor> buffer){
+            this.time=time;
+            this.peer=peer;
+            this.buffer=buffer;
+        }
+    }
+
+    public static void main(String[] args) throws InterruptedException {
+        System.out.println("Peers: "+peers+", pool threads: "+poolThreads+", available processors: "+Runtime.getRuntime().availableProcessors());
+        System.out.println("passive state\tACTIONs/s\tpopular p50 (ms)\tpopular p99 (ms)\tothers p50 (ms)\tothers p99 (ms)\tdropped (%)");
+        for(int rate:rates){
+            measure(rate, false);
+            measure(rate, true);
+        }
+    }
+
+    /**
+	 * Runs the receive queue at a rate with the passive state inline or on
+     * the executor and prints the latency percentiles.
+	 */
+    private static void measure(int rate, boolean executor) throws InterruptedException{
+        final ViewManager[] viewManagers=createViewManagers();
+        final List<List<FingerDescriptor>> buffers=new ArrayList<List<FingerDescriptor>>();
+        for(ViewManager viewManager:createViewManagers()){
+            buffers.add(viewManager.createBuffer());
+        }
+        popularLatencies=new AtomicLongArray(bins+1);
+        otherLatencies=new AtomicLongArray(bins+1);
+        dropped=new AtomicLong();
+        ExecutorService pool=Executors.newFixedThreadPool(poolThreads);
+        final SerialExecutor[] swapQueues=new SerialExecutor[peers];
+        for(int i=0;i<peers;i++){
+            swapQueues[i]=executor?new SerialExecutor(pool, capacity):null;
+        }
+        final BlockingQueue<Arrival> receiveQueue=new LinkedBlockingQueue<Arrival>();
+        Thread network=new Thread(){
+            @Override
+            public void run(){
+                try{
+                    while(true){
+                        final Arrival arrival=receiveQueue.take();
+                        if(arrival.peer<0){
+                            return;
+                        }
+                        final List<FingerDescriptor> buffer=new ArrayList<FingerDescriptor>(arrival.buffer.size());
+                        for(FingerDescriptor descriptor:arrival.buffer){
+                            buffer.add(descriptor.clone());
+                        }
+                        final ViewManager viewManager=viewManagers[arrival.peer];
+                        if(swapQueues[arrival.peer]==null){
+                            runPassiveState(viewManager, arrival, buffer);
+                        }
+                        else if(!swapQueues[arrival.peer].offer(new Runnable(){
+                            public void run(){
+                                runPassiveState(viewManager, arrival, buffer);
+                            }
+                        })){
+                            if(measuring){
+                                dropped.incrementAndGet();
+                            }
+                        }
+                    }
+                }
+                catch(InterruptedException e){
+                }
+            }
+        };
+        network.start();
+        Random random=new Random(rate);
+        long start=System.nanoTime();
+        long interval=1000000000L/rate;
+        long end=start+TimeUnit.MILLISECONDS.toNanos(warmUpDuration+duration);
+        long measurementStart=start+TimeUnit.MILLISECONDS.toNanos(warmUpDuration);
+        long sent=0;
+        for(long time=start;time<end;time+=interval){
+            long sleep=time-System.nanoTime();
+            if(sleep>100000){
+                TimeUnit.NANOSECONDS.sleep(sleep);
+            }
+            measuring=time>=measurementStart;
+            int peer=random.nextDouble()<popularShare?0:1+random.nextInt(peers-1);
+            receiveQueue.add(new Arrival(time, peer, buffers.get(random.nextInt(buffers.size()))));
+            if(measuring){
+                sent++;
+            }
+        }
+        measuring=false;
+        receiveQueue.clear();
+        receiveQueue.add(new Arrival(0, -1, null));
+        network.join();
+        pool.shutdownNow();
+        pool.awaitTermination(1, TimeUnit.SECONDS);
+        System.out.println((executor?"executor":"inline")+"\t\t"+rate+"\t\t"+getPercentile(popularLatencies, 50)+"\t\t\t"+getPercentile(popularLatencies, 99)+"\t\t\t"+getPercentile(otherLatencies, 50)+"\t\t"+getPercentile(otherLatencies, 99)+"\t\t"+Experiments.round(100.0*dropped.get()/Math.max(1, sent)));
+    }
+
+    /**
+	 * Runs the passive state of a peer for an ACTION and records the latency
+     * of the REACTION.
+	 */
+    private static void runPassiveState(ViewManager viewManager, Arrival arrival, List<FingerDescriptor> buffer){
+        SwapMessage reaction=new SwapMessage();
+        reaction.type=MessageType.REACTION;
+        reaction.buffer=viewManager.createBuffer();
+        SwapMessageCodec.getEncodedSize(reaction);
+        if(measuring){
+            long latency=Math.max(0, (System.nanoTime()-arrival.time)/1000);
+            AtomicLongArray latencies=arrival.peer==0?popularLatencies:otherLatencies;
+            latencies.incrementAndGet((int)Math.min(bins, latency/binWidth));
+        }
+        viewManager.select(buffer);
+        viewManager.increaseAge(A);
+    }
+
+    private static double getPercentile(AtomicLongArray latencies, double p){
+        long replies=0;
+        for(int i=0;i<=bins;i++){
+            replies+=latencies.get(i);
+        }
+        long rank=(long)Math.ceil(p/100.0*replies);
+        long count=0;
+        for(int i=0;i<=bins;i++){
+            count+=latencies.get(i);
+            if(count>=rank){
+                return Experiments.round((i+1)*binWidth/1000);
+            }
+        }
+        return Experiments.round(bins*binWidth/1000);
+    }
+
+    private static ViewManager[] createViewManagers(){
+        Random random=new Random(c);
+        ViewManager[] viewManagers=new ViewManager[peers];
+        for(int i=0;i<peers;i++){
+            viewManagers[i]=new ViewManager(c, 1, c/2, PeerSelectionPolicy.RAND, createFinger(i));
+            List<Finger> bootstrapPeers=new ArrayList<Finger>();
+            for(int j=0;j<c;j++){
+                bootstrapPeers.add(createFinger(random.nextInt(10*peers)));
+            }
+            viewManagers[i].setBootstrapPeers(bootstrapPeers);
+        }
+        return viewManagers;
+    }
+
+    private static Finger createFinger(int index){
+        return new Finger(new IntegerNetworkAddress(index), new RingIdentifier((double)index/(10*peers)));
+    }
+}
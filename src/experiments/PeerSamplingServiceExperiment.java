@@ -18,88 +18,73 @@
 
 package experiments;
 
+import enums.AgingPolicy;
 import enums.PSSMeasurementTags;
 import enums.PeerSelectionPolicy;
 import enums.ViewPropagationPolicy;
+import java.io.File;
+import java.io.IOException;
+import java.util.Properties;
 import peerlets.PeerSamplingService;
 import protopeer.Experiment;
-import protopeer.NeighborManager;
 import protopeer.Peer;
 import protopeer.PeerFactory;
 import protopeer.SimulatedExperiment;
 import protopeer.network.NetworkInterfaceFactory;
 import protopeer.network.delayloss.DelayLossNetworkInterfaceFactory;
 import protopeer.network.delayloss.UniformDelayModel;
-import protopeer.servers.bootstrap.BootstrapClient;
-import protopeer.servers.bootstrap.BootstrapServer;
-import protopeer.servers.bootstrap.SimpleConnector;
-import protopeer.servers.bootstrap.SimplePeerIdentifierGenerator;
 import protopeer.util.quantities.Time;
 
 /**
+ * Runs the Peer Sampling Service in the ProtoPeer simulation. The parameters
+ * have default values or are read from the configuration file given
+ * as the first argument, in the format of <code>conf/sweep.conf</code>. Only
+ * the first value of a parameter with comma separated values is used, the
+ * experiment runs one configuration.
  *
  * @author Evangelos
  */
 public class PeerSamplingServiceExperiment extends SimulatedExperiment{
 
-    private final static int runDuration=350;
-    private final static int N=1000;
-    private final static int c=50;
-    private final static int H=0;
-    private final static int S=25;
-    private final static ViewPropagationPolicy viewPropagationPolicy=ViewPropagationPolicy.PUSHPULL;
-    private final static PeerSelectionPolicy peerSelectionPolicy=PeerSelectionPolicy.RAND;
-    private final static int T=1000;
-    private final static int A=1000;
-    private final static int B=6000;
-
 //    @Override
 //	public NetworkInterfaceFactory createNetworkInterfaceFactory() {
 //		return new DelayLossNetworkInterfaceFactory(getEventScheduler(),new UniformDelayModel(0.15,2.5));
 //	}
 
-    public static void main(String[] args) {
+    public static void main(String[] args) throws IOException {
+        Properties properties=args.length>0?Experiments.loadProperties(args[0]):new Properties();
+        final int runDuration=Integer.parseInt(Experiments.getValue(properties, "runDuration", "350"));
+        final int N=Integer.parseInt(Experiments.getValue(properties, "N", "1000"));
+        final int c=Integer.parseInt(Experiments.getValue(properties, "c", "50"));
+        final int H=Integer.parseInt(Experiments.getValue(properties, "H", "0"));
+        final int S=Integer.parseInt(Experiments.getValue(properties, "S", "25"));
+        final ViewPropagationPolicy viewPropagationPolicy=ViewPropagationPolicy.valueOf(Experiments.getValue(properties, "viewPropagationPolicy", "PUSHPULL"));
+        final PeerSelectionPolicy peerSelectionPolicy=PeerSelectionPolicy.valueOf(Experiments.getValue(properties, "peerSelectionPolicy", "RAND"));
+        final int T=Integer.parseInt(Experiments.getValue(properties, "T", "1000"));
+        final int A=Integer.parseInt(Experiments.getValue(properties, "A", "1000"));
+        final int B=Integer.parseInt(Experiments.getValue(properties, "B", "6000"));
+        final AgingPolicy agingPolicy=AgingPolicy.valueOf(Experiments.getValue(properties, "agingPolicy", "EVENT"));
+
         Experiment.initEnvironment();
 		PeerSamplingServiceExperiment experiment = new PeerSamplingServiceExperiment();
 		experiment.init();
 		PeerFactory peerFactory=new PeerFactory() {
 			public Peer createPeer(int peerIndex, Experiment experiment) {
-				Peer newPeer = new Peer(peerIndex);
-				if (peerIndex == 0) {
-					newPeer.addPeerlet(new BootstrapServer());
-				}
-				newPeer.addPeerlet(new NeighborManager());
-				newPeer.addPeerlet(new SimpleConnector());
-                                newPeer.addPeerlet(new BootstrapClient(experiment.getAddressToBindTo(0), new SimplePeerIdentifierGenerator()));
-				newPeer.addPeerlet(new PeerSamplingService(c, H, S, peerSelectionPolicy, viewPropagationPolicy, T, A, B));
-				return newPeer;
+				return Experiments.createPeer(peerIndex, experiment, new PeerSamplingService(c, H, S, peerSelectionPolicy, viewPropagationPolicy, T, A, B, agingPolicy));
 			}
 		};
 		experiment.initPeers(0,N,peerFactory);
 		experiment.startPeers(0,N);
 
+        //stream the results of every epoch while the simulation runs
+        EpochReporter reporter=new EpochReporter(experiment, new File("log/epochs.csv"), new File("log/indegrees.csv"), PSSMeasurementTags.values());
+        reporter.start();
+
 		//run the simulation
 		experiment.runSimulation(Time.inSeconds(runDuration));
+        reporter.close();
 
-        ResultsIllustrator results=new ResultsIllustrator(experiment);
-
-        System.out.println("*** RESULTS PER EPOCH ***\n");
-		for (int epochNumber=0; epochNumber<=runDuration; epochNumber++) {
-			results.printEpochNumber(epochNumber);
-            results.printSumEpochMeasurement(epochNumber, PSSMeasurementTags.MESSAGE_ACTION_RECEIVED);
-			results.printSumEpochMeasurement(epochNumber, PSSMeasurementTags.MESSAGE_REACTION_REVEIVED);
-            results.printSumEpochMeasurement(epochNumber, PSSMeasurementTags.MESSAGE_ACTION_SENT);
-            results.printSumEpochMeasurement(epochNumber, PSSMeasurementTags.MESSAGE_REACTION_SENT);
-            results.printEpochInDegreeStDev(epochNumber);
-            if(epochNumber==140)
-                results.printEpochInDegreeNodesProportion(epochNumber);
-            results.clearEpochLog(epochNumber);
-            System.out.println();
-        }
-        System.out.println("\n***********************************************\n");
-        System.out.println("\n*** GLOBAL RESULTS ***\n");
-//        results.printSumAggregateMeasurement(PSSMeasurementTags.MESSAGE_ACTION);
-//        results.printSumAggregateMeasurement(PSSMeasurementTags.MESSAGE_REACTION);
+        System.out.println("*** RESULTS PER EPOCH in log/epochs.csv and log/indegrees.csv ***\n");
     }
 
 }
@@ -0,0 +1,142 @@
+/*
+ * Copyright (C) 2015 Evangelos Pournaras
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+
+package experiments;
+
+import enums.PSSMeasurementTags;
+import enums.PeerSelectionPolicy;
+import enums.ViewPropagationPolicy;
+import peerlets.PeerSamplingService;
+import protopeer.BasePeerlet;
+import protopeer.Experiment;
+import protopeer.Finger;
+import protopeer.Peer;
+import protopeer.PeerFactory;
+import protopeer.SimulatedExperiment;
+import protopeer.network.Message;
+import protopeer.time.Timer;
+import protopeer.time.TimerListener;
+import protopeer.util.quantities.Time;
+import util.SwapCarrier;
+import util.SwapMessage;
+
+/**
+ * Runs the Peer Sampling Service below a peerlet that sends a heartbeat to a
+ * random neighbor of its view every period T, as the aggregation and overlay
+ * peerlets do. The heartbeats are <code>SwapCarrier</code>s, so that the swaps
+ * can be piggybacked on them. The messages sent by both peerlets, the
+ * piggybacked swaps and the standard deviation of the in-degree of the peers
+ * are reported every 10 seconds. The first argument is true or false for the
+ * piggybacking, which is enabled by default.
+ *
+ * @author Evangelos
+ */
+public class PiggybackExperiment extends SimulatedExperiment{
+
+    private final static int runDuration=200;
+    private final static int reportPeriod=10;
+    private final static int N=100;
+    private final static int c=20;
+    private final static int H=1;
+    private final static int S=10;
+    private final static ViewPropagationPolicy viewPropagationPolicy=ViewPropagationPolicy.PUSHPULL;
+    private final static PeerSelectionPolicy peerSelectionPolicy=PeerSelectionPolicy.RAND;
+    private final static int T=1000;
+    private final static int A=1000;
+    private final static int B=6000;
+    private static long heartbeats=0;
+
+    public static void main(String[] args) {
+        final boolean piggybacking=args.length>0?Boolean.parseBoolean(args[0]):true;
+        Experiment.initEnvironment();
+        PiggybackExperiment experiment=new PiggybackExperiment();
+        experiment.init();
+        PeerFactory peerFactory=new PeerFactory() {
+            public Peer createPeer(int peerIndex, Experiment experiment) {
+                PeerSamplingService pss=new PeerSamplingService(c, H, S, peerSelectionPolicy, viewPropagationPolicy, T, A, B);
+                pss.setPiggybacking(piggybacking);
+                Peer newPeer=Experiments.createPeer(peerIndex, experiment, pss);
+                newPeer.addPeerlet(new HeartbeatPeerlet());
+                return newPeer;
+            }
+        };
+        experiment.initPeers(0, N, peerFactory);
+        experiment.startPeers(0, N);
+
+        System.out.println("Piggybacking: "+piggybacking);
+        System.out.println("time (s)\tmessages\tswaps\tpiggybacked\tin-degree st. dev.");
+        Experiments.ReportSums sums=new Experiments.ReportSums(experiment, reportPeriod);
+        long totalMessages=0;
+        for(int time=reportPeriod;time<=runDuration;time+=reportPeriod){
+            heartbeats=0;
+            experiment.runSimulation(Time.inSeconds(reportPeriod));
+            double[] reportSums=sums.next(PSSMeasurementTags.PAROS_MESS, PSSMeasurementTags.PIGGYBACKED_MESS);
+            double swaps=reportSums[0];
+            double piggybacked=reportSums[1];
+            long messages=heartbeats+(long)(swaps-piggybacked);
+            totalMessages+=messages;
+            System.out.println(time+"\t\t"+messages+"\t\t"+(long)swaps+"\t"+(long)piggybacked+"\t\t"+Experiments.round(EpochReporter.collectInDegrees(experiment).getStDev()));
+        }
+        System.out.println("Total messages: "+totalMessages);
+    }
+
+    /**
+	 * Sends a heartbeat to a random neighbor every period T, with the same
+     * jitter as the active state of the Peer Sampling Service.
+	 */
+    private static class HeartbeatPeerlet extends BasePeerlet{
+
+        @Override
+        public void start(){
+            this.scheduleHeartbeat();
+        }
+
+        private void scheduleHeartbeat(){
+            Timer heartbeatTimer=getPeer().getClock().createNewTimer();
+            heartbeatTimer.addTimerListener(new TimerListener(){
+                public void timerExpired(Timer timer){
+                    PeerSamplingService pss=(PeerSamplingService)getPeer().getPeerletOfType(PeerSamplingService.class);
+                    Finger neighbor=pss.getRandomFinger();
+                    if(neighbor!=null){
+                        getPeer().sendMessage(neighbor.getNetworkAddress(), new HeartbeatMessage());
+                        heartbeats++;
+                    }
+                    scheduleHeartbeat();
+                }
+            });
+            heartbeatTimer.schedule(Time.inMilliseconds(T-((Math.random()-0.5)*T)));
+        }
+    }
+
+    /**
+	 * The heartbeat, which can carry a swap.
+	 */
+    private static class HeartbeatMessage extends Message implements SwapCarrier{
+
+        private static final long serialVersionUID=1L;
+        private SwapMessage swapMessage;
+
+        public SwapMessage getSwapMessage(){
+            return this.swapMessage;
+        }
+
+        public void setSwapMessage(SwapMessage swapMessage){
+            this.swapMessage=swapMessage;
+        }
+    }
+}
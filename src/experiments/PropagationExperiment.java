@@ -0,0 +1,109 @@
+/*
+ * Copyright (C) 2015 Evangelos Pournaras
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+
+package experiments;
+
+import enums.PSSMeasurementTags;
+import enums.PeerSelectionPolicy;
+import enums.ViewPropagationPolicy;
+import peerlets.PeerSamplingService;
+import protopeer.Experiment;
+import protopeer.Peer;
+import protopeer.PeerFactory;
+import protopeer.SimulatedExperiment;
+import protopeer.util.quantities.Time;
+
+/**
+ * Compares the PUSH, PULL and PUSHPULL view propagation policies. The
+ * messages, the bytes and the standard deviation of the in-degree of the
+ * peers are reported every 10 seconds. The steady standard deviation is the
+ * average over the second half of the run. The views are considered converged
+ * at the first report after which the standard deviation stays within 10% of
+ * the steady one. The messages and bytes per peer until the convergence and
+ * per peer and period in the steady state are reported at the end. The policy
+ * is given as the first argument and it is PUSHPULL by default.
+ *
+ * @author Evangelos
+ */
+public class PropagationExperiment extends SimulatedExperiment{
+
+    private final static int runDuration=300;
+    private final static int reportPeriod=10;
+    private final static int N=200;
+    private final static int c=20;
+    private final static int H=1;
+    private final static int S=10;
+    private final static PeerSelectionPolicy peerSelectionPolicy=PeerSelectionPolicy.RAND;
+    private final static int T=1000;
+    private final static int A=1000;
+    private final static int B=6000;
+
+    public static void main(String[] args) {
+        final ViewPropagationPolicy viewPropagationPolicy=args.length>0?ViewPropagationPolicy.valueOf(args[0]):ViewPropagationPolicy.PUSHPULL;
+        Experiment.initEnvironment();
+        PropagationExperiment experiment=new PropagationExperiment();
+        experiment.init();
+        PeerFactory peerFactory=new PeerFactory() {
+            public Peer createPeer(int peerIndex, Experiment experiment) {
+                PeerSamplingService pss=new PeerSamplingService(c, H, S, peerSelectionPolicy, viewPropagationPolicy, T, A, B);
+                pss.setSwapBytesMeasurement(true);
+                return Experiments.createPeer(peerIndex, experiment, pss);
+            }
+        };
+        experiment.initPeers(0, N, peerFactory);
+        experiment.startPeers(0, N);
+
+        System.out.println("Policy: "+viewPropagationPolicy);
+        System.out.println("time (s)\tmessages\tbytes\t\tin-degree st. dev.");
+        Experiments.ReportSums sums=new Experiments.ReportSums(experiment, reportPeriod);
+        int reports=runDuration/reportPeriod;
+        double[] messages=new double[reports];
+        double[] bytes=new double[reports];
+        double[] stDevs=new double[reports];
+        for(int r=0;r<reports;r++){
+            int time=(r+1)*reportPeriod;
+            experiment.runSimulation(Time.inSeconds(reportPeriod));
+            double[] reportSums=sums.next(PSSMeasurementTags.PAROS_MESS, PSSMeasurementTags.SWAP_BYTES);
+            messages[r]=reportSums[0];
+            bytes[r]=reportSums[1];
+            stDevs[r]=EpochReporter.collectInDegrees(experiment).getStDev();
+            System.out.println(time+"\t\t"+(long)messages[r]+"\t\t"+(long)bytes[r]+"\t\t"+Experiments.round(stDevs[r]));
+        }
+        double steadyStDev=0.0;
+        double steadyMessages=0.0;
+        double steadyBytes=0.0;
+        for(int r=reports/2;r<reports;r++){
+            steadyStDev+=stDevs[r]/(reports-reports/2);
+            steadyMessages+=messages[r];
+            steadyBytes+=bytes[r];
+        }
+        double periods=(reports-reports/2)*reportPeriod*1000.0/T;
+        int converged=reports-1;
+        while(converged>0&&Math.abs(stDevs[converged-1]-steadyStDev)<=0.1*steadyStDev){
+            converged--;
+        }
+        double convergenceMessages=0.0;
+        double convergenceBytes=0.0;
+        for(int r=0;r<=converged;r++){
+            convergenceMessages+=messages[r];
+            convergenceBytes+=bytes[r];
+        }
+        System.out.println("Steady in-degree st. dev.: "+Experiments.round(steadyStDev)+", messages/peer/period: "+Experiments.round(steadyMessages/N/periods)+", bytes/peer/period: "+Experiments.round(steadyBytes/N/periods));
+        System.out.println("Converged in "+(converged+1)*reportPeriod+" s, messages/peer: "+Experiments.round(convergenceMessages/N)+", bytes/peer: "+Experiments.round(convergenceBytes/N));
+    }
+}
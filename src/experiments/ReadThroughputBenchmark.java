@@ -0,0 +1,132 @@
+/*
+ * Copyright (C) 2015 Evangelos Pournaras
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+
+package experiments;
+
+import components.ImmutableDescriptor;
+import components.ViewManager;
+import dsutil.protopeer.FingerDescriptor;
+import enums.PeerSelectionPolicy;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import protopeer.Finger;
+import protopeer.RingIdentifier;
+import protopeer.network.IntegerNetworkAddress;
+
+/**
+ * Measures the throughput of reading the whole view of a
+ * <code>ViewManager</code> from 1, 4 and 16 threads while another thread
+ * performs swaps with it. The reads of the published snapshot are compared
+ * with reads that lock the view and copy every descriptor, as the Peer
+ * Sampling Service did before the snapshots.
+ *
+ * @author Evangelos
+ */
+public class ReadThroughputBenchmark {
+
+    private final static int c=50;
+    private final static int peers=200;
+    private final static int[] readerThreads={1, 4, 16};
+    private final static long duration=2000;
+
+    public static void main(String[] args) throws InterruptedException {
+        System.out.println("readers\tlocked reads/s\tsnapshot reads/s\tswaps/s (locked)\tswaps/s (snapshot)");
+        for(int readers:readerThreads){
+            long[] locked=measure(readers, true);
+            long[] snapshot=measure(readers, false);
+            System.out.println(readers+"\t"+locked[0]+"\t\t"+snapshot[0]+"\t\t\t"+locked[1]+"\t\t\t"+snapshot[1]);
+        }
+    }
+
+    /**
+	 * Runs the readers and the gossiping thread for the duration of the
+     * measurement and returns the reads and the swaps per second.
+	 */
+    private static long[] measure(int readers, final boolean locked) throws InterruptedException{
+        final Random random=new Random(readers);
+        final ViewManager[] viewManagers=new ViewManager[8];
+        for(int i=0;i<viewManagers.length;i++){
+            viewManagers[i]=new ViewManager(c, 1, c/2, PeerSelectionPolicy.RAND, createFinger(i));
+            List<Finger> bootstrapPeers=new ArrayList<Finger>();
+            for(int j=0;j<c;j++){
+                bootstrapPeers.add(createFinger(random.nextInt(peers)));
+            }
+            viewManagers[i].setBootstrapPeers(bootstrapPeers);
+        }
+        final ViewManager read=viewManagers[0];
+        final AtomicBoolean running=new AtomicBoolean(true);
+        final AtomicLong reads=new AtomicLong();
+        final AtomicLong swaps=new AtomicLong();
+        List<Thread> threads=new ArrayList<Thread>();
+        threads.add(new Thread(){
+            @Override
+            public void run(){
+                while(running.get()){
+                    ViewManager passive=viewManagers[1+random.nextInt(viewManagers.length-1)];
+                    List<FingerDescriptor> actionBuffer=read.createBuffer();
+                    List<FingerDescriptor> reactionBuffer=passive.createBuffer();
+                    passive.select(actionBuffer);
+                    read.select(reactionBuffer);
+                    read.increaseAge(1000);
+                    swaps.incrementAndGet();
+                }
+            }
+        });
+        for(int i=0;i<readers;i++){
+            threads.add(new Thread(){
+                @Override
+                public void run(){
+                    long count=0;
+                    long checksum=0;
+                    while(running.get()){
+                        if(locked){
+                            synchronized(read.getView()){
+                                for(FingerDescriptor descriptor:read.getView()){
+                                    checksum+=descriptor.clone().getNetworkAddress().hashCode();
+                                }
+                            }
+                        }
+                        else{
+                            for(ImmutableDescriptor descriptor:read.getSnapshot().getDescriptors()){
+                                checksum+=descriptor.getNetworkAddress().hashCode();
+                            }
+                        }
+                        count++;
+                    }
+                    reads.addAndGet(count+(checksum==42?1:0));
+                }
+            });
+        }
+        for(Thread thread:threads){
+            thread.start();
+        }
+        Thread.sleep(duration);
+        running.set(false);
+        for(Thread thread:threads){
+            thread.join();
+        }
+        return new long[]{reads.get()*1000/duration, swaps.get()*1000/duration};
+    }
+
+    private static Finger createFinger(int index){
+        return new Finger(new IntegerNetworkAddress(index), new RingIdentifier((double)index/peers));
+    }
+}
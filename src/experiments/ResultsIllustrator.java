@@ -19,13 +19,12 @@
 package experiments;
 
 import enums.PSSMeasurementTags;
-import java.util.HashMap;
-import java.util.Map;
 import java.util.Set;
 import protopeer.Experiment;
 import protopeer.MainConfiguration;
 import protopeer.measurement.MeasurementLog;
 import protopeer.network.NetworkAddress;
+import util.InDegreeCollector;
 
 /**
  *
@@ -52,42 +51,34 @@ public class ResultsIllustrator {
     }
 
     public void printEpochInDegreeStDev(int epochNumber){
-        double sum=0.0;
-        Set peerTags=mlog.getTagsOfType(NetworkAddress.class);
-        for(Object tag:peerTags){
-            sum=sum+mlog.getAggregateByEpochNumber(epochNumber, tag).getSum();
-        }
-        double average=sum/peerTags.size();
-        sum=0.0;
-        for(Object tag:peerTags){
-            sum=sum+Math.pow((mlog.getAggregateByEpochNumber(epochNumber, tag).getSum()-average), 2.0);
-        }
-        double stdev=Math.sqrt(sum/peerTags.size());
-        long l=Math.round(stdev*100);
-        stdev=l/100.0;
+        InDegreeCollector collector=this.collectInDegrees(epochNumber);
+        double stdev=Math.round(collector.getStDev()*100)/100.0;
         System.out.print("Measurement-Indegree St. Deviation: "+stdev);
     }
 
     public void printEpochInDegreeNodesProportion(int epochNumber){
-        Map<Integer, Integer> proportions=new HashMap();
-        Integer value=0;
-        Set peerTags=mlog.getTagsOfType(NetworkAddress.class);
-        for(Object tag:peerTags){
-            value=(int)mlog.getAggregateByEpochNumber(epochNumber, tag).getSum();
-            if(!proportions.containsKey(value)){
-                proportions.put(value, new Integer(1));
-            }
-            else{
-                proportions.put(value, new Integer(proportions.remove(value).intValue()+1));
+        InDegreeCollector collector=this.collectInDegrees(epochNumber);
+        int[] histogram=collector.getHistogram();
+        for(int i=0;i<=collector.getMax();i++){
+            if(histogram[i]>0){
+                System.out.println(i+","+histogram[i]);
             }
         }
-        Integer test=new Integer(0);
-        for(int i=0;i<300;i++){
-            test=i;
-            if(proportions.containsKey(i)){
-                System.out.println(i+","+proportions.get(i).toString());
-            }
+    }
+
+    /**
+	 * Collects the in-degrees logged with the network addresses of the peers
+     * as tags in an epoch.
+	 */
+    private InDegreeCollector collectInDegrees(int epochNumber){
+        Set peerTags=mlog.getTagsOfType(NetworkAddress.class);
+        InDegreeCollector collector=new InDegreeCollector(peerTags.size());
+        int peer=0;
+        for(Object tag:peerTags){
+            collector.set(peer++, (int)mlog.getAggregateByEpochNumber(epochNumber, tag).getSum());
         }
+        collector.compute();
+        return collector;
     }
 
     public void clearEpochLog(int epochNumber){
@@ -0,0 +1,165 @@
+/*
+ * Copyright (C) 2015 Evangelos Pournaras
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+
+package experiments;
+
+import components.ImmutableDescriptor;
+import components.ViewManager;
+import dsutil.protopeer.FingerDescriptor;
+import enums.PeerSelectionPolicy;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import protopeer.Finger;
+import protopeer.RingIdentifier;
+import protopeer.network.IntegerNetworkAddress;
+import protopeer.network.NetworkAddress;
+
+/**
+ * Measures the bytes allocated per random sample taken from a
+ * <code>ViewManager</code>, as the Peer Sampling Service takes them in
+ * <code>getRandomFinger()</code>. A swap is performed after every 100
+ * samples, so that samples are taken both from the queue of fresh
+ * descriptors and from the snapshot of the view. Only the sampling is
+ * measured. The samples returned as copies are compared with the read-only
+ * samples. Then, the throughput of taking k peers per round with k single
+ * samples is compared with one batch of k distinct samples.
+ *
+ * @author Evangelos
+ */
+public class SamplingBenchmark {
+
+    private final static int c=50;
+    private final static int peers=1000;
+    private final static int rounds=20000;
+    private final static int samplesPerRound=100;
+    private final static int[] batchSizes={1, 5, 10, 25, 50};
+
+    public static void main(String[] args) {
+        System.out.println("sampling\tbytes allocated/getRandomFinger()");
+        for(int i=0;i<2;i++){
+            long copied=measureAllocations(true);
+            long readOnly=measureAllocations(false);
+            if(i==1){
+                System.out.println("copied\t\t"+copied/(double)(rounds*samplesPerRound));
+                System.out.println("read-only\t"+readOnly/(double)(rounds*samplesPerRound));
+            }
+        }
+        System.out.println();
+        System.out.println("k\tlooped samples/s\tdistinct\tbatch samples/s\tdistinct");
+        for(int i=0;i<2;i++){
+            for(int k:batchSizes){
+                double[] looped=measureThroughput(k, false);
+                double[] batch=measureThroughput(k, true);
+                if(i==1){
+                    System.out.println(k+"\t"+Math.round(looped[0])+"\t\t"+Experiments.round(looped[1])+"\t\t"+Math.round(batch[0])+"\t\t"+Experiments.round(batch[1]));
+                }
+            }
+        }
+    }
+
+    /**
+	 * Measures the rate of taking k peers per round either by calling
+     * <code>getSample()</code> k times or by one call of
+     * <code>getRandomDescriptors(k)</code>. A swap is performed before every
+     * round and it is not measured. It returns the peers per second and the
+     * average number of distinct peers per round.
+	 */
+    private static double[] measureThroughput(int k, boolean batch){
+        Random random=new Random(k);
+        ViewManager[] viewManagers=createViewManagers(random);
+        ViewManager sampled=viewManagers[0];
+        long time=0;
+        long distinct=0;
+        int measuredRounds=rounds/10;
+        Set<NetworkAddress> peers=new HashSet<NetworkAddress>();
+        for(int r=0;r<measuredRounds;r++){
+            swap(sampled, viewManagers[1+random.nextInt(viewManagers.length-1)]);
+            peers.clear();
+            long start=System.nanoTime();
+            if(batch){
+                for(ImmutableDescriptor peer:sampled.getRandomDescriptors(k)){
+                    peers.add(peer.getNetworkAddress());
+                }
+            }
+            else{
+                for(int i=0;i<k;i++){
+                    peers.add(sampled.getSample().getNetworkAddress());
+                }
+            }
+            time+=System.nanoTime()-start;
+            distinct+=peers.size();
+        }
+        return new double[]{k*measuredRounds*1e9/time, distinct/(double)measuredRounds};
+    }
+
+    private static long measureAllocations(boolean copied){
+        Random random=new Random(c);
+        ViewManager[] viewManagers=createViewManagers(random);
+        ViewManager sampled=viewManagers[0];
+        com.sun.management.ThreadMXBean threads=(com.sun.management.ThreadMXBean)ManagementFactory.getThreadMXBean();
+        long thread=Thread.currentThread().getId();
+        long bytes=0;
+        long checksum=0;
+        for(int r=0;r<rounds;r++){
+            swap(sampled, viewManagers[1+random.nextInt(viewManagers.length-1)]);
+            long start=threads.getThreadAllocatedBytes(thread);
+            for(int i=0;i<samplesPerRound;i++){
+                Finger finger;
+                if(copied){
+                    finger=sampled.getSample().toFingerDescriptor().getFinger();
+                }
+                else{
+                    finger=sampled.getSample().getFinger();
+                }
+                checksum+=finger.hashCode();
+            }
+            bytes+=threads.getThreadAllocatedBytes(thread)-start;
+        }
+        return bytes+(checksum==42?1:0);
+    }
+
+    static ViewManager[] createViewManagers(Random random){
+        ViewManager[] viewManagers=new ViewManager[8];
+        for(int i=0;i<viewManagers.length;i++){
+            viewManagers[i]=new ViewManager(c, 1, c/2, PeerSelectionPolicy.RAND, createFinger(i));
+            List<Finger> bootstrapPeers=new ArrayList<Finger>();
+            for(int j=0;j<c;j++){
+                bootstrapPeers.add(createFinger(random.nextInt(peers)));
+            }
+            viewManagers[i].setBootstrapPeers(bootstrapPeers);
+        }
+        return viewManagers;
+    }
+
+    static void swap(ViewManager active, ViewManager passive){
+        List<FingerDescriptor> actionBuffer=active.createBuffer();
+        List<FingerDescriptor> reactionBuffer=passive.createBuffer();
+        passive.select(actionBuffer);
+        active.select(reactionBuffer);
+        active.increaseAge(1000);
+        passive.increaseAge(1000);
+    }
+
+    private static Finger createFinger(int index){
+        return new Finger(new IntegerNetworkAddress(index), new RingIdentifier((double)index/peers));
+    }
+}
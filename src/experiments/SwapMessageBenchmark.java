@@ -0,0 +1,147 @@
+/*
+ * Copyright (C) 2015 Evangelos Pournaras
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+
+package experiments;
+
+import dsutil.protopeer.FingerDescriptor;
+import enums.FingerDescriptorTypes;
+import enums.MessageType;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.net.InetAddress;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import protopeer.Finger;
+import protopeer.RingIdentifier;
+import protopeer.network.IntegerNetworkAddress;
+import protopeer.network.Message;
+import protopeer.network.NetworkAddress;
+import protopeer.network.mina.MinaAddress;
+import util.SwapMessage;
+
+/**
+ * Compares the compact format of the <code>SwapMessage</code> with the default
+ * Java serialization it replaced. The bytes and the round trips per second of
+ * both formats are measured for buffers of views with c=50 and c=500, with
+ * IPv4 and integer addresses. The round trips of the format are checked by
+ * <code>util.SwapMessageCodecTest</code>.
+ *
+ * @author Evangelos
+ */
+public class SwapMessageBenchmark {
+
+    private final static int[] viewLengths={50, 500};
+    private final static long duration=2000;
+
+    /**
+	 * The swap message before the compact format. Its fields are written by
+     * the default Java serialization.
+	 */
+    private static class LegacySwapMessage extends Message{
+        private static final long serialVersionUID=1L;
+        public MessageType type;
+        public List<FingerDescriptor> buffer;
+    }
+
+    public static void main(String[] args) throws Exception {
+        Random random=new Random(1);
+        System.out.println("c\taddresses\tJava bytes\tcompact bytes\tJava round trips/s\tcompact round trips/s");
+        for(int pass=0;pass<2;pass++){
+            for(int c:viewLengths){
+                for(boolean ipv4:new boolean[]{true, false}){
+                    measure(c, ipv4, random, pass==1);
+                }
+            }
+        }
+    }
+
+    private static void measure(int c, boolean ipv4, Random random, boolean print) throws Exception{
+        SwapMessage message=createMessage(c/2, random);
+        if(!ipv4){
+            for(int i=0;i<message.buffer.size();i++){
+                FingerDescriptor descriptor=message.buffer.get(i);
+                FingerDescriptor integerDescriptor=new FingerDescriptor(new Finger(new IntegerNetworkAddress(random.nextInt(100000)), descriptor.getPeerIdentifier()));
+                integerDescriptor.setDescriptors(descriptor.getDescriptors());
+                message.buffer.set(i, integerDescriptor);
+            }
+        }
+        LegacySwapMessage legacy=new LegacySwapMessage();
+        legacy.type=message.type;
+        legacy.buffer=message.buffer;
+        long legacyRoundTrips=measureRoundTrips(legacy);
+        long roundTrips=measureRoundTrips(message);
+        if(print){
+            System.out.println(c+"\t"+(ipv4?"IPv4":"integer")+"\t\t"+
+                    javaSerialize(legacy).length+"\t\t"+
+                    javaSerialize(message).length+"\t\t"+
+                    legacyRoundTrips+"\t\t\t"+roundTrips);
+        }
+    }
+
+    /**
+	 * Creates a message with a buffer of descriptors as they are created by
+     * the <code>ViewManager</code>, with IPv4 addresses and ages multiple of
+     * the aging period.
+	 */
+    private static SwapMessage createMessage(int length, Random random) throws IOException{
+        SwapMessage message=new SwapMessage();
+        message.type=random.nextBoolean()?MessageType.ACTION:MessageType.REACTION;
+        message.buffer=new ArrayList<FingerDescriptor>();
+        for(int i=0;i<length;i++){
+            byte[] ipv4=new byte[4];
+            random.nextBytes(ipv4);
+            NetworkAddress address=new MinaAddress(InetAddress.getByAddress(ipv4), 1024+random.nextInt(64512));
+            FingerDescriptor descriptor=new FingerDescriptor(new Finger(address, new RingIdentifier(random.nextDouble())));
+            descriptor.addDescriptor(FingerDescriptorTypes.AGE, 1000.0*random.nextInt(100));
+            message.buffer.add(descriptor);
+        }
+        return message;
+    }
+
+    private static long measureRoundTrips(Message message) throws Exception{
+        long roundTrips=0;
+        long checksum=0;
+        long end=System.currentTimeMillis()+duration;
+        while(System.currentTimeMillis()<end){
+            for(int i=0;i<100;i++){
+                checksum+=javaDeserialize(javaSerialize(message)).hashCode();
+            }
+            roundTrips+=100;
+        }
+        return roundTrips*1000/duration+(checksum==42?1:0);
+    }
+
+    private static byte[] javaSerialize(Object object) throws IOException{
+        ByteArrayOutputStream bytes=new ByteArrayOutputStream();
+        ObjectOutputStream out=new ObjectOutputStream(bytes);
+        out.writeObject(object);
+        out.close();
+        return bytes.toByteArray();
+    }
+
+    private static Object javaDeserialize(byte[] bytes) throws Exception{
+        ObjectInputStream in=new ObjectInputStream(new ByteArrayInputStream(bytes));
+        Object object=in.readObject();
+        in.close();
+        return object;
+    }
+}
@@ -0,0 +1,220 @@
+/*
+ * Copyright (C) 2015 Evangelos Pournaras
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+
+package experiments;
+
+import components.ViewManager;
+import enums.MessageType;
+import enums.PeerSelectionPolicy;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import protopeer.Experiment;
+import protopeer.Finger;
+import protopeer.RingIdentifier;
+import protopeer.network.IntegerNetworkAddress;
+import protopeer.time.RealClock;
+import protopeer.time.Timer;
+import protopeer.time.TimerListener;
+import protopeer.util.quantities.Time;
+import util.SwapMessage;
+import util.SwapMessageCodec;
+import util.TimingWheel;
+
+/**
+ * Measures the lateness of the active states of 10000 peers hosted in one JVM,
+ * i.e. the firing time minus the scheduled time. Every peer fires every T with
+ * the jitter of the Peer Sampling Service and performs the local work of an
+ * active state: it creates the buffer, encodes the message and increases the
+ * ages. The timers of the ProtoPeer <code>RealClock</code>, which expire in a
+ * single thread, are compared with a <code>TimingWheel</code> with 1, 2 and 4
+ * workers. The lateness is measured after a warm-up period.
+ *
+ * @author Evangelos
+ */
+public class TimingWheelBenchmark {
+
+    private final static int peers=10000;
+    private final static int c=50;
+    private final static int T=1000;
+    private final static int A=1000;
+    private final static long tickDuration=1;
+    private final static int wheelSize=2048;
+    private final static int[] workers={1, 2, 4};
+    private final static long warmUpDuration=3000;
+    private final static long duration=15000;
+    private final static int bins=100000;
+    private final static double binWidth=10.0;
+
+    private static volatile boolean measuring;
+    private static volatile boolean running;
+    private static AtomicLongArray histogram;
+    private static AtomicLong maxLateness;
+
+    public static void main(String[] args) throws InterruptedException {
+        Experiment.initEnvironment();
+        System.out.println("Peers: "+peers+", available processors: "+Runtime.getRuntime().availableProcessors());
+        System.out.println("scheduler\t\tfirings/s\tmean (ms)\tp50 (ms)\tp99 (ms)\tp99.9 (ms)\tmax (ms)");
+        measureClock();
+        for(int w:workers){
+            measureWheel(w);
+        }
+    }
+
+    /**
+	 * Schedules the peers in the timers of a shared <code>RealClock</code>.
+	 */
+    private static void measureClock() throws InterruptedException{
+        final ViewManager[] viewManagers=createViewManagers();
+        RealClock clock=new RealClock();
+        final Random random=new Random(peers);
+        for(int i=0;i<peers;i++){
+            final ViewManager viewManager=viewManagers[i];
+            Timer timer=clock.createNewTimer();
+            final long[] deadline=new long[1];
+            timer.addTimerListener(new TimerListener(){
+                public void timerExpired(Timer timer){
+                    record(deadline[0]);
+                    runActiveState(viewManager);
+                    if(running){
+                        double delay=getDelay(random);
+                        deadline[0]=System.nanoTime()+(long)(delay*1e6);
+                        timer.schedule(Time.inMilliseconds(delay));
+                    }
+                }
+            });
+            double delay=getDelay(random);
+            deadline[0]=System.nanoTime()+(long)(delay*1e6);
+            timer.schedule(Time.inMilliseconds(delay));
+        }
+        measure("RealClock");
+        clock.deactivate();
+    }
+
+    /**
+	 * Schedules the peers in a timing wheel with the given workers.
+	 */
+    private static void measureWheel(int workers) throws InterruptedException{
+        final ViewManager[] viewManagers=createViewManagers();
+        final TimingWheel wheel=new TimingWheel(tickDuration, wheelSize, workers);
+        wheel.start();
+        for(int i=0;i<peers;i++){
+            final ViewManager viewManager=viewManagers[i];
+            final Random random=new Random(i);
+            wheel.schedule(new Runnable(){
+                private long deadline;
+                public void run(){
+                    if(this.deadline!=0){
+                        record(this.deadline);
+                    }
+                    runActiveState(viewManager);
+                    if(running){
+                        double delay=getDelay(random);
+                        this.deadline=wheel.schedule(this, delay).getDeadline();
+                    }
+                }
+            }, getDelay(random));
+        }
+        measure("TimingWheel ("+workers+")");
+        wheel.stop();
+    }
+
+    /**
+	 * Runs the warm-up and the measurement and prints the lateness.
+	 */
+    private static void measure(String scheduler) throws InterruptedException{
+        histogram=new AtomicLongArray(bins+1);
+        maxLateness=new AtomicLong();
+        running=true;
+        Thread.sleep(warmUpDuration);
+        measuring=true;
+        Thread.sleep(duration);
+        measuring=false;
+        running=false;
+        Thread.sleep(2*T);
+        long firings=0;
+        double sum=0.0;
+        for(int i=0;i<=bins;i++){
+            firings+=histogram.get(i);
+            sum+=histogram.get(i)*(i+0.5)*binWidth;
+        }
+        System.out.println(scheduler+"\t"+(scheduler.length()<16?"\t":"")+firings*1000/duration+"\t\t"+Experiments.round(sum/Math.max(1, firings)/1000)+"\t\t"+getPercentile(firings, 50)+"\t\t"+getPercentile(firings, 99)+"\t\t"+getPercentile(firings, 99.9)+"\t\t"+Experiments.round(maxLateness.get()/1000.0));
+    }
+
+    /**
+	 * Records the lateness of a firing in microseconds.
+	 */
+    private static void record(long deadline){
+        if(!measuring){
+            return;
+        }
+        long lateness=Math.max(0, (System.nanoTime()-deadline)/1000);
+        histogram.incrementAndGet((int)Math.min(bins, lateness/binWidth));
+        long max;
+        while(lateness>(max=maxLateness.get())&&!maxLateness.compareAndSet(max, lateness)){
+        }
+    }
+
+    private static double getPercentile(long firings, double p){
+        long rank=(long)Math.ceil(p/100.0*firings);
+        long count=0;
+        for(int i=0;i<=bins;i++){
+            count+=histogram.get(i);
+            if(count>=rank){
+                return Experiments.round((i+1)*binWidth/1000);
+            }
+        }
+        return Experiments.round(bins*binWidth/1000);
+    }
+
+    /**
+	 * Returns the delay of the next active state with the jitter of the Peer
+     * Sampling Service.
+	 */
+    private static double getDelay(Random random){
+        return T-((random.nextDouble()-0.5)*T);
+    }
+
+    private static void runActiveState(ViewManager viewManager){
+        SwapMessage message=new SwapMessage();
+        message.type=MessageType.ACTION;
+        message.buffer=viewManager.createBuffer();
+        SwapMessageCodec.getEncodedSize(message);
+        viewManager.increaseAge(A);
+    }
+
+    private static ViewManager[] createViewManagers(){
+        Random random=new Random(c);
+        ViewManager[] viewManagers=new ViewManager[peers];
+        for(int i=0;i<peers;i++){
+            viewManagers[i]=new ViewManager(c, 1, c/2, PeerSelectionPolicy.RAND, createFinger(i));
+            List<Finger> bootstrapPeers=new ArrayList<Finger>();
+            for(int j=0;j<c;j++){
+                bootstrapPeers.add(createFinger(random.nextInt(peers)));
+            }
+            viewManagers[i].setBootstrapPeers(bootstrapPeers);
+        }
+        return viewManagers;
+    }
+
+    private static Finger createFinger(int index){
+        return new Finger(new IntegerNetworkAddress(index), new RingIdentifier((double)index/peers));
+    }
+}
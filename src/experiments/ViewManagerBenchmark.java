@@ -0,0 +1,144 @@
+/*
+ * Copyright (C) 2015 Evangelos Pournaras
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+
+package experiments;
+
+import components.ViewManager;
+import dsutil.protopeer.FingerDescriptor;
+import enums.PeerSelectionPolicy;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import protopeer.Finger;
+import protopeer.RingIdentifier;
+import protopeer.network.IntegerNetworkAddress;
+
+/**
+ * Measures the cost of a swap between two <code>ViewManager</code>s for
+ * increasing view lengths. A swap consists of the creation of the two buffers
+ * and the selection of the new views, as it is done by the active and passive
+ * states of the Peer Sampling Service. The views are filled from a population
+ * four times larger than the view length, so that the buffers contain both
+ * known and unknown descriptors. The allocations of the aging and the swaps
+ * are measured for a population of 10000 peers.
+ *
+ * @author Evangelos
+ */
+public class ViewManagerBenchmark {
+
+    private final static int[] viewLengths={20, 50, 100, 200, 500, 1000, 2000};
+    private final static int managers=32;
+    private final static int measuredSwaps=100000;
+    private final static int A=1000;
+    private final static int agingPeers=10000;
+
+    public static void main(String[] args) {
+        System.out.println("c\tH\tS\tmicroseconds/swap");
+        for(int c:viewLengths){
+            int H=1;
+            int S=c/2;
+            double time=measureSwaps(c, H, S);
+            System.out.println(c+"\t"+H+"\t"+S+"\t"+Math.round(time*100)/100.0);
+        }
+        System.out.println();
+        System.out.println("peers\tc\tbytes allocated/aging round\tbytes allocated/swap");
+        measureAllocations(agingPeers, 50);
+    }
+
+    /**
+	 * Measures the bytes allocated by the current thread when the views of a
+     * population of peers are aged once and when swaps are performed between
+     * them.
+	 */
+    private static void measureAllocations(int peers, int c){
+        Random random=new Random(peers);
+        ViewManager[] viewManagers=new ViewManager[peers];
+        for(int i=0;i<peers;i++){
+            viewManagers[i]=new ViewManager(c, 1, c/2, PeerSelectionPolicy.RAND, createFinger(i, peers));
+            List<Finger> bootstrapPeers=new ArrayList<Finger>();
+            for(int j=0;j<c;j++){
+                bootstrapPeers.add(createFinger(random.nextInt(peers), peers));
+            }
+            viewManagers[i].setBootstrapPeers(bootstrapPeers);
+        }
+        com.sun.management.ThreadMXBean threads=(com.sun.management.ThreadMXBean)ManagementFactory.getThreadMXBean();
+        long thread=Thread.currentThread().getId();
+        int rounds=20;
+        long start=threads.getThreadAllocatedBytes(thread);
+        for(int r=0;r<rounds;r++){
+            for(ViewManager viewManager:viewManagers){
+                viewManager.increaseAge(A);
+            }
+        }
+        long agingBytes=(threads.getThreadAllocatedBytes(thread)-start)/rounds;
+        int swaps=10*peers;
+        start=threads.getThreadAllocatedBytes(thread);
+        for(int i=0;i<swaps;i++){
+            swap(viewManagers, random);
+        }
+        long swapBytes=(threads.getThreadAllocatedBytes(thread)-start)/swaps;
+        System.out.println(peers+"\t"+c+"\t"+agingBytes+"\t\t\t\t"+swapBytes);
+    }
+
+    private static Finger createFinger(int index, int population){
+        return new Finger(new IntegerNetworkAddress(index), new RingIdentifier((double)index/population));
+    }
+
+    /**
+	 * Runs swaps between randomly paired view managers and returns the average
+     * time of a swap in microseconds.
+	 */
+    private static double measureSwaps(int c, int H, int S){
+        Random random=new Random(c);
+        int population=4*c;
+        List<Finger> fingers=new ArrayList<Finger>();
+        for(int i=0;i<population;i++){
+            fingers.add(createFinger(i, population));
+        }
+        ViewManager[] viewManagers=new ViewManager[managers];
+        for(int i=0;i<managers;i++){
+            viewManagers[i]=new ViewManager(c, H, S, PeerSelectionPolicy.RAND, fingers.get(i));
+            List<Finger> bootstrapPeers=new ArrayList<Finger>();
+            for(int j=0;j<c;j++){
+                bootstrapPeers.add(fingers.get(random.nextInt(population)));
+            }
+            viewManagers[i].setBootstrapPeers(bootstrapPeers);
+        }
+        int swaps=Math.max(100, measuredSwaps/c);
+        for(int i=0;i<swaps;i++){
+            swap(viewManagers, random);
+        }
+        long start=System.nanoTime();
+        for(int i=0;i<swaps;i++){
+            swap(viewManagers, random);
+        }
+        return (System.nanoTime()-start)/1000.0/swaps;
+    }
+
+    private static void swap(ViewManager[] viewManagers, Random random){
+        ViewManager active=viewManagers[random.nextInt(viewManagers.length)];
+        ViewManager passive=viewManagers[random.nextInt(viewManagers.length)];
+        List<FingerDescriptor> actionBuffer=active.createBuffer();
+        List<FingerDescriptor> reactionBuffer=passive.createBuffer();
+        passive.select(actionBuffer);
+        active.select(reactionBuffer);
+        active.increaseAge(A);
+        passive.increaseAge(A);
+    }
+}
@@ -18,29 +18,50 @@
 
 package peerlets;
 
+import components.ImmutableDescriptor;
+import components.PartnerDigests;
+import components.SampleListener;
+import components.SwapProtocol;
+import components.SwapTransport;
 import components.ViewManager;
+import enums.AgingPolicy;
+import enums.BufferEncoding;
 import enums.PSSMeasurementTags;
 import enums.MessageType;
 import enums.PeerSelectionPolicy;
 import enums.ViewPropagationPolicy;
 import java.util.ArrayList;
 import java.util.Collection;
-import java.util.Queue;
+import java.util.List;
+import java.util.SplittableRandom;
 import protopeer.BasePeerlet;
+import protopeer.Experiment;
+import protopeer.MainConfiguration;
 import protopeer.Peer;
+import protopeer.SimulatedExperiment;
 import protopeer.time.Timer;
 import protopeer.time.TimerListener;
 import protopeer.Finger;
 import dsutil.protopeer.FingerDescriptor;
 import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
 import java.util.concurrent.LinkedBlockingQueue;
+import java.util.function.Consumer;
+import java.util.function.Function;
 import protopeer.NeighborManager;
 import protopeer.measurement.MeasurementLog;
 import protopeer.measurement.MeasurementLoggerListener;
 import protopeer.network.Message;
 import protopeer.network.NetworkAddress;
 import protopeer.util.quantities.Time;
+import util.SerialExecutor;
+import util.SwapCarrier;
 import util.SwapMessage;
+import util.SwapMessageCodec;
+import util.SwapMessagePool;
+import util.TimingWheel;
+import util.TokenBucket;
 
 /**
  * This peerlet implements the Peer Samplign Service. This is a gossiping
@@ -59,6 +80,7 @@ import util.SwapMessage;
 public class PeerSamplingService extends BasePeerlet{
 
     private ViewManager viewManager;
+    private SwapProtocol swapProtocol;
     private final int c;
     private final int H;
     private final int S;
@@ -67,6 +89,33 @@ public class PeerSamplingService extends BasePeerlet{
     private final int T;
     private final int A;
     private final int B;
+    private final AgingPolicy agingPolicy;
+    private final BufferEncoding bufferEncoding;
+    private final PartnerDigests partnerDigests;
+    private final List<SampleListener> sampleListeners;
+    private final List<CompletableFuture<ImmutableDescriptor>> pendingPeers;
+    private SplittableRandom random;
+    private boolean messagePooling=false;
+    private SwapMessagePool messagePool;
+    private boolean piggybacking=false;
+    private boolean swapped=false;
+    private Timer activeStateTimer;
+    private TimingWheel scheduler;
+    private Runnable activeStateTask;
+    private volatile TimingWheel.Timeout activeStateTimeout;
+    private volatile boolean stopped=false;
+    private Executor swapExecutor;
+    private int swapQueueCapacity;
+    private SerialExecutor swapQueue;
+    private Runnable activeSwapTask;
+    private int mergedBuffers=1;
+    private final List<FingerDescriptor> pendingBuffers=new ArrayList<FingerDescriptor>();
+    private final List<FingerDescriptor> sentBuffers=new ArrayList<FingerDescriptor>();
+    private int pendingMerges=0;
+    private TokenBucket admission;
+    private boolean busyReactions=false;
+    private int backOffSelections=4;
+    private boolean swapBytesMeasurement=false;
 
     //measurement metrics
     private double actionsSent=0.0;
@@ -74,6 +123,12 @@ public class PeerSamplingService extends BasePeerlet{
     private double actionsReceived=0.0;
     private double reactionsReceived=0.0;
     private double parosMess=0.0;
+    private double swapBytes=0.0;
+    private double unresolvedReferences=0.0;
+    private double piggybackedMess=0.0;
+    private double droppedMess=0.0;
+    private double deferredMess=0.0;
+    private double rejectedMess=0.0;
 
     /**
 	 * Initiates the peer sampling service. The systems is parameterized.
@@ -89,6 +144,45 @@ public class PeerSamplingService extends BasePeerlet{
      * @param B the bootstrapping initial period
 	 */
     public PeerSamplingService(int c, int H, int S, PeerSelectionPolicy peerSelectionPolicy, ViewPropagationPolicy viewPropagationPolicy, int T, int A, int B){
+        this(c, H, S, peerSelectionPolicy, viewPropagationPolicy, T, A, B, AgingPolicy.EVENT);
+    }
+
+    /**
+	 * Initiates the peer sampling service with an aging policy. In the EVENT
+     * policy the ages increase by A after every active and passive event. In
+     * the CLOCK policy the ages are the time passed on the clock of the peer
+     * since the descriptors were born and A is not used.
+     *
+     * @param c the length of the view
+     * @param H the healing paramerer
+     * @param S the swap parameter
+     * @param peerSelectionPolicy the peer selection policy. It can be RAND or TAIL
+     * @param T the period that the active state is triggered
+     * @param A the period that the age fields of the descriptos is updated
+     * @param B the bootstrapping initial period
+     * @param agingPolicy the aging policy. It can be EVENT or CLOCK
+	 */
+    public PeerSamplingService(int c, int H, int S, PeerSelectionPolicy peerSelectionPolicy, ViewPropagationPolicy viewPropagationPolicy, int T, int A, int B, AgingPolicy agingPolicy){
+        this(c, H, S, peerSelectionPolicy, viewPropagationPolicy, T, A, B, agingPolicy, BufferEncoding.FULL);
+    }
+
+    /**
+	 * Initiates the peer sampling service with an aging policy and a buffer
+     * encoding. In the DELTA encoding the descriptors exchanged with the same
+     * partner in the last swap are sent as references. The buffers exchanged
+     * with a partner are used for references for c periods T.
+     *
+     * @param c the length of the view
+     * @param H the healing paramerer
+     * @param S the swap parameter
+     * @param peerSelectionPolicy the peer selection policy. It can be RAND or TAIL
+     * @param T the period that the active state is triggered
+     * @param A the period that the age fields of the descriptos is updated
+     * @param B the bootstrapping initial period
+     * @param agingPolicy the aging policy. It can be EVENT or CLOCK
+     * @param bufferEncoding the buffer encoding. It can be FULL or DELTA
+	 */
+    public PeerSamplingService(int c, int H, int S, PeerSelectionPolicy peerSelectionPolicy, ViewPropagationPolicy viewPropagationPolicy, int T, int A, int B, AgingPolicy agingPolicy, BufferEncoding bufferEncoding){
         this.c=c;
         this.H=H;
         this.S=S;
@@ -97,6 +191,11 @@ public class PeerSamplingService extends BasePeerlet{
         this.T=T;
         this.A=A;
         this.B=B;
+        this.agingPolicy=agingPolicy;
+        this.bufferEncoding=bufferEncoding;
+        this.partnerDigests=new PartnerDigests(c*T);
+        this.sampleListeners=new ArrayList<SampleListener>();
+        this.pendingPeers=new ArrayList<CompletableFuture<ImmutableDescriptor>>();
    }
 
     /**
@@ -123,21 +222,237 @@ public class PeerSamplingService extends BasePeerlet{
 
     /**
 	 * Starts the peer sampling service by initializing the view manager and
-     * activating the bootstrapping process
+     * activating the bootstrapping process. The sample listeners and the
+     * samples requested before the start are handed over to the view manager.
+     * The view manager and the timers of the peer get their own random
+     * sources split from the random source of the peer.
 	 */
     @Override
-    public void start(){
-        viewManager=new ViewManager(c, H, S, peerSelectionPolicy, getPeer().getFinger().clone());
+    public synchronized void start(){
+        this.random=this.createRandom();
+        if(this.messagePooling&&Experiment.getSingleton() instanceof SimulatedExperiment&&!MainConfiguration.getSingleton().enableMessageSerializationDuringSimulation){
+            this.messagePool=new SwapMessagePool(4);
+        }
+        switch(agingPolicy){
+            case CLOCK:
+                viewManager=new ViewManager(c, H, S, peerSelectionPolicy, getPeer().getFinger().clone(), getPeer().getClock(), random.split());
+                break;
+            default:
+                viewManager=new ViewManager(c, H, S, peerSelectionPolicy, getPeer().getFinger().clone(), null, random.split());
+        }
+        for(SampleListener listener:this.sampleListeners){
+            viewManager.addSampleListener(listener);
+        }
+        this.swapProtocol=new SwapProtocol(viewManager, viewPropagationPolicy, A, backOffSelections, new SwapTransport(){
+            public void send(MessageType type, NetworkAddress destination, boolean withBuffer){
+                sendSwap(type, destination, withBuffer);
+            }
+            public void merge(List<FingerDescriptor> buffer){
+                PeerSamplingService.this.merge(buffer);
+            }
+            public boolean accept(NetworkAddress source){
+                return admit(source);
+            }
+        });
+        this.sampleListeners.clear();
+        for(final CompletableFuture<ImmutableDescriptor> pendingPeer:this.pendingPeers){
+            viewManager.nextSample().thenAccept(new Consumer<ImmutableDescriptor>(){
+                public void accept(ImmutableDescriptor peer){
+                    pendingPeer.complete(peer);
+                }
+            });
+        }
+        this.pendingPeers.clear();
+        this.activeSwapTask=new Runnable(){
+            public void run(){
+                runActiveSwap();
+            }
+        };
+        if(this.swapExecutor!=null){
+            this.swapQueue=new SerialExecutor(this.swapExecutor, this.swapQueueCapacity);
+        }
         this.bootstrap();
     }
 
     /**
-	 * Stops the Peer Sampling Service. NOTE: TODO
+	 * Creates the random source of the peer. It is derived from the master
+     * seed of the experiment and the index of the peer, so that every peer has
+     * a different sequence and the experiment is repeatable.
+	 */
+    private SplittableRandom createRandom(){
+        long masterSeed=MainConfiguration.getSingleton().masterSeed;
+        long seed=new SplittableRandom(masterSeed+getPeer().getIndexNumber()).nextLong();
+        return new SplittableRandom(seed);
+    }
+
+    /**
+	 * Enables or disables the recycling of the swap messages and their buffer
+     * lists with a <code>SwapMessagePool</code>, whose class doc has the
+     * ownership rules. It has to be set before the start. Messages are
+     * recycled only in simulations in which the messages are not serialized.
+     * The views are the same as without recycling. In
+     * <code>AllocationExperiment</code> it lowered the garbage collection time
+     * by about 10% and the allocated bytes by 3%, since the descriptors of
+     * the buffers still have to be copied. It is disabled by default.
+     *
+     * @param messagePooling true if the messages are recycled
+	 */
+    public void setMessagePooling(boolean messagePooling){
+        this.messagePooling=messagePooling;
+    }
+
+    /**
+	 * Enables or disables the measurement of the bytes of the sent swap
+     * messages in the compact format. The bytes are always measured with the
+     * DELTA buffer encoding. Otherwise, they are measured only if this is
+     * enabled, as every measurement encodes the message. It is disabled by
+     * default.
      *
+     * @param swapBytesMeasurement true if the bytes are measured
+	 */
+    public void setSwapBytesMeasurement(boolean swapBytesMeasurement){
+        this.swapBytesMeasurement=swapBytesMeasurement;
+    }
+
+    /**
+	 * Enables or disables the piggybacking of the active swaps on the
+     * <code>SwapCarrier</code> messages of other peerlets. A piggybacked swap
+     * is performed with the destination of the carrier instead of the peer
+     * selected by the peer selection policy, which changes the protocol. The
+     * period of a swap ends with the active state: the first carrier sent in
+     * the period carries the swap, and the active state sends a standalone
+     * swap only if no carrier did, before the next period starts. In this way
+     * there is one swap per period on either path. It is disabled by default.
+     *
+     * @param piggybacking true if the swaps are piggybacked
+	 */
+    public void setPiggybacking(boolean piggybacking){
+        this.piggybacking=piggybacking;
+    }
+
+    /**
+	 * Sets a <code>TimingWheel</code> that schedules the active states in live
+     * runs, instead of the clock of the peer. It can be shared by the peers
+     * hosted in the JVM. It has to be set before the start and it must not be
+     * set in simulations.
+     *
+     * @param scheduler the started timing wheel
+	 */
+    public void setScheduler(TimingWheel scheduler){
+        this.scheduler=scheduler;
+    }
+
+    /**
+	 * Sets an executor that runs the active and passive swaps in live runs,
+     * instead of the timer and network threads. The executor can be shared by
+     * the peers hosted in the JVM, e.g. a small fixed pool. The swaps of a
+     * peer are queued and run one at a time, so the mutations of its view are
+     * serialized. Messages received when the queue of the peer is full are
+     * dropped. It has to be set before the start and it must not be set in
+     * simulations.
+     *
+     * @param swapExecutor the shared executor
+     * @param capacity the maximum number of queued swaps of the peer
+	 */
+    public void setSwapExecutor(Executor swapExecutor, int capacity){
+        this.swapExecutor=swapExecutor;
+        this.swapQueueCapacity=capacity;
+    }
+
+    /**
+	 * Sets the number of received buffers that are merged in the view in one
+     * pass. The buffers are queued and merged when the number is reached or
+     * at the next active state, whichever comes first. The ACTIONs are still
+     * answered immediately with the current view. The descriptors sent in the
+     * meantime are remembered, so that they are the ones removed as swapped.
+     * It is 1 by default, i.e. every buffer is merged when it is received.
+     * In <code>BatchMergeBenchmark</code> the batches did not lower the merge
+     * time per buffer beyond the noise of the measurement, while they doubled
+     * the standard deviation of the in-degree, so they are left disabled.
+     *
+     * @param mergedBuffers the number of buffers merged in one pass
+	 */
+    public void setBatchMerging(int mergedBuffers){
+        this.mergedBuffers=Math.max(1, mergedBuffers);
+    }
+
+    /**
+	 * Limits the rate of the ACTIONs that the peer accepts with a token
+     * bucket, so that the load of a popular peer is bounded. A rejected ACTION
+     * is not merged and it is dropped, or it is answered with a BUSY message
+     * with no descriptors if the busy reactions are enabled. A peer that
+     * receives a BUSY message backs off from the busy peer in its next
+     * selections. The rejected ACTIONs are counted as REJECTED_MESS, apart
+     * from the messages dropped by a full swap queue. It is disabled by
+     * default.
+     *
+     * @param rate the accepted ACTIONs per second
+     * @param burst the ACTIONs accepted in a burst
+     * @param busyReactions true if the rejected ACTIONs are answered with BUSY
+	 */
+    public void setAdmissionControl(double rate, int burst, boolean busyReactions){
+        this.admission=new TokenBucket(rate, burst);
+        this.busyReactions=busyReactions;
+    }
+
+    /**
+	 * Sets the number of peer selections that avoid a peer after it answered
+     * with a BUSY message. It is 4 by default.
+     *
+     * @param backOffSelections the number of selections that avoid the peer
+	 */
+    public void setBackOff(int backOffSelections){
+        this.backOffSelections=backOffSelections;
+    }
+
+    /**
+	 * Returns a message with an empty buffer, from the pool if the messages
+     * are recycled.
+     *
+     * @param messType the type of the message
+	 */
+    private SwapMessage createMessage(MessageType messType){
+        SwapMessage message;
+        if(this.messagePool!=null){
+            message=this.messagePool.acquire();
+        }
+        else{
+            message=new SwapMessage();
+            message.buffer=new ArrayList<FingerDescriptor>();
+        }
+        message.type=messType;
+        return message;
+    }
+
+    /**
+	 * Sends a swap message on its own. The peer sends a shallow copy, so the
+     * message is returned to the pool without its buffer list, which now
+     * belongs to the copy.
+     *
+     * @param destination the destination peer
+     * @param message the sent message
+	 */
+    private void send(NetworkAddress destination, SwapMessage message){
+        getPeer().sendMessage(destination, message);
+        if(this.messagePool!=null){
+            this.messagePool.recycleSent(message);
+        }
+    }
+
+    /**
+	 * Stops the Peer Sampling Service. The timer or the scheduled task of the
+     * active state is cancelled and the active state is not scheduled again,
+     * also if it is running on a worker of the timing wheel at the same time.
 	 */
     @Override
     public void stop(){
-
+        this.stopped=true;
+        if(this.activeStateTimer!=null){
+            this.activeStateTimer.cancel();
+        }
+        if(this.activeStateTimeout!=null){
+            this.activeStateTimeout.cancel();
+        }
     }
 
     /**
@@ -148,16 +463,24 @@ public class PeerSamplingService extends BasePeerlet{
         return this.viewManager.getMyDescriptor().clone();
     }
 
+    /**
+	 * Returns the finger of the local descriptor without copying it.
+	 */
+    public Finger getMyFinger(){
+        return this.viewManager.getMyDescriptor().getFinger();
+    }
+
     /**
 	 * Registers a descriptor type in the local finger descriptor. In this way,
      * information about the fingers is disemminated through the peer sampling
-     * service
+     * service. The type is sent by its name, unless it is registered with an
+     * ID in the <code>SwapMessageCodec</code> by all peers.
      *
      * @param type the descriptor type
      * @param value the value of the descriptor
 	 */
     public void registerDescriptor(Enum type, Object value){
-        this.viewManager.getMyDescriptor().addDescriptor(type, value);
+        this.viewManager.addDescriptor(type, value);
     }
 
     /**
@@ -166,62 +489,156 @@ public class PeerSamplingService extends BasePeerlet{
      * @param type the descriptor type
 	 */
     public void unregisterDescriptor(Enum type){
-        this.viewManager.getMyDescriptor().removeDescriptor(type);
+        this.viewManager.removeDescriptor(type);
     }
 
     /**
 	 * Returns a random finger descriptor that suppose to be a random sample
      * from the whole set of peers in the system. To increase randomness, the
      * method access a quee with samples in order not the same elements to be
-     * returned.
+     * returned. The queue holds the descriptors that entered the view and
+     * have not been returned yet. If it is empty, a random descriptor of the
+     * view is returned. The returned descriptor is a copy that the caller
+     * owns. <code>getRandomPeer()</code> returns the same sample without
+     * copying it.
 	 */
     public FingerDescriptor getRandomFingerDescriptor(){
-        Queue<FingerDescriptor> samples=this.viewManager.getSamples();
-        if(samples.size()>0){
-            return samples.poll().clone();
+        ImmutableDescriptor sample=this.viewManager.getSample();
+        return sample==null?null:sample.toFingerDescriptor();
+    }
+
+    /**
+	 * Returns a random sample as a read-only descriptor. It is the same sample
+     * returned by <code>getRandomFingerDescriptor()</code> but it is not
+     * copied.
+	 */
+    public ImmutableDescriptor getRandomPeer(){
+        return this.viewManager.getSample();
+    }
+
+    /**
+	 * Extracts the finger form the random returned descriptor. It returns null
+     * if the view is empty, e.g. before the bootstrapping is completed.
+     * <code>nextSample()</code> waits for the view to be populated instead.
+	 */
+    public Finger getRandomFinger(){
+        ImmutableDescriptor sample=this.getRandomPeer();
+        return sample==null?null:sample.getFinger();
+    }
+
+    /**
+	 * Returns a future of the finger of the next random sample. It is
+     * completed immediately if the view is not empty. Otherwise, it is
+     * completed as soon as the view is populated, e.g. by the bootstrap
+     * neighbors, without polling. It can be requested before the Peer Sampling
+     * Service is started.
+	 */
+    public CompletableFuture<Finger> nextSample(){
+        return this.nextPeer().thenApply(new Function<ImmutableDescriptor, Finger>(){
+            public Finger apply(ImmutableDescriptor peer){
+                return peer.getFinger();
+            }
+        });
+    }
+
+    /**
+	 * Returns a future of the next random sample as a read-only descriptor.
+     * It is completed as <code>nextSample()</code>.
+	 */
+    public synchronized CompletableFuture<ImmutableDescriptor> nextPeer(){
+        if(this.viewManager==null){
+            CompletableFuture<ImmutableDescriptor> pendingPeer=new CompletableFuture<ImmutableDescriptor>();
+            this.pendingPeers.add(pendingPeer);
+            return pendingPeer;
+        }
+        return this.viewManager.nextSample();
+    }
+
+    /**
+	 * Registers a listener notified about the fresh descriptors that enter the
+     * view after the bootstrapping and every swap. It can be registered
+     * before the Peer Sampling Service is started.
+     *
+     * @param listener the registered listener
+	 */
+    public synchronized void addSampleListener(SampleListener listener){
+        if(this.viewManager==null){
+            this.sampleListeners.add(listener);
         }
         else{
-            synchronized(this.viewManager.getView()){
-                if(this.viewManager.getView().size()>0){
-                    int position=(int)(Math.random()*this.viewManager.getView().size());
-                    return this.viewManager.getView().get(position).clone();
-                }
-                return null;
-            }
+            this.viewManager.addSampleListener(listener);
+        }
+    }
 
+    /**
+	 * Unregisters a listener of the fresh descriptors.
+     *
+     * @param listener the unregistered listener
+	 */
+    public synchronized void removeSampleListener(SampleListener listener){
+        if(this.viewManager==null){
+            this.sampleListeners.remove(listener);
+        }
+        else{
+            this.viewManager.removeSampleListener(listener);
         }
     }
 
     /**
-	 * Extracts the finger form the random returned descriptor.
+	 * Returns k distinct random fingers from the view in one pass over the
+     * snapshot of the view, without locking it. If the view has fewer than k
+     * neighbors, all of them are returned.
+     *
+     * @param k the number of requested fingers
 	 */
-    public Finger getRandomFinger(){
-        return this.getRandomFingerDescriptor().getFinger();
+    public List<Finger> getRandomFingers(int k){
+        List<ImmutableDescriptor> peers=this.viewManager.getRandomDescriptors(k);
+        List<Finger> fingers=new ArrayList<Finger>(peers.size());
+        for(ImmutableDescriptor peer:peers){
+            fingers.add(peer.getFinger());
+        }
+        return fingers;
+    }
+
+    /**
+	 * Returns k distinct random read-only descriptors from the view in one pass
+     * over the snapshot of the view, without locking or copying it. If the
+     * view has fewer than k neighbors, all of them are returned.
+     *
+     * @param k the number of requested descriptors
+	 */
+    public List<ImmutableDescriptor> getRandomPeers(int k){
+        return this.viewManager.getRandomDescriptors(k);
     }
 
     /**
 	 * Returns the fingers from the random view retained in the
-     * <code>ViewManager</code>.
+     * <code>ViewManager</code>. The fingers are read from the snapshot of the
+     * view published after its last update, without locking the view. The
+     * returned collection is read-only.
 	 */
     public Collection<Finger> getRandomFingerView(){
-        Collection<Finger> randFingers=new ArrayList<Finger>();
-        synchronized(this.viewManager.getView()){
-            for(FingerDescriptor descriptor:this.viewManager.getView()){
-                randFingers.add(descriptor.getFinger().clone());
-            }
-        }
-        
-        return randFingers;
+        return this.viewManager.getSnapshot().getFingers();
     }
 
+    /**
+	 * Returns the descriptors from the random view retained in the
+     * <code>ViewManager</code>. The descriptors are read from the snapshot of
+     * the view published after its last update, without locking the view.
+     * They have the ages of that update. The returned collection is read-only
+     * and the descriptors are shared with other callers, so they must not be
+     * modified.
+	 */
     public Collection<FingerDescriptor> getRandomFingerDescriptorView(){
-        Collection<FingerDescriptor> randFingersDescr=new ArrayList<FingerDescriptor>();
-        synchronized(this.viewManager.getView()){
-            for(FingerDescriptor descriptor:this.viewManager.getView()){
-                randFingersDescr.add(descriptor.clone());
-            }
-        }
-        return randFingersDescr;
+        return this.viewManager.getSnapshot().getFingerDescriptors();
+    }
+
+    /**
+	 * Returns the descriptors from the random view as read-only descriptors.
+     * They are read from the snapshot of the view without locking or copying.
+	 */
+    public List<ImmutableDescriptor> getRandomPeerView(){
+        return this.viewManager.getSnapshot().getDescriptors();
     }
 
     /**
@@ -247,78 +664,283 @@ public class PeerSamplingService extends BasePeerlet{
      * period T. Note that the trigerring time is an approximetations rather
      * than the specific time T. In this way, the central timer can work more
      * realisticly without problems of the sequance that the events are
-     * processed. If the peer is in the PUSH state it will create the buffer
-     * and push information. Otherwise it sends a buffer with no descriptors to
-     * trigger an asnwer (REACTION). The method is recursive. The timer is sceduled
-     * again after the time expires. The age is increased after the end of each
-     * active state.
-     *
+     * processed. A single timer of the peer is created at the first call and
+     * it is rescheduled after the time expires, instead of a new timer and
+     * listener in every period. If a <code>TimingWheel</code> is set, the
+     * active state is scheduled in the wheel instead of the clock of the peer.
+     * After the service is stopped, the active state is not scheduled again.
+     * A timeout scheduled while the service is stopped on another thread is
+     * cancelled here, since <code>stop()</code> may have read the previous one.
 	 */
     private void runActiveState(){
-        Timer activeStateTimer=getPeer().getClock().createNewTimer();
-        activeStateTimer.addTimerListener(new TimerListener() {
-            public void timerExpired(Timer timer) {
-                FingerDescriptor neighbor=viewManager.selectPeer();
-                if(neighbor!=null){
-                    switch(viewPropagationPolicy){
-                        case PUSHPULL:
-                            sendBuffer(MessageType.ACTION, neighbor.getNetworkAddress());
-                            break;
-                        case PUSH:
-                            SwapMessage message=new SwapMessage();
-                            message.type=MessageType.ACTION;
-                            message.buffer=new ArrayList();
-                            getPeer().sendMessage(neighbor.getNetworkAddress(), message);
-                            parosMess++;
-                            break;
-                        default:
-                            //other view propagation policy
+        if(this.stopped){
+            return;
+        }
+        double delay=this.T-((random.nextDouble()-0.5)*this.T); //1e3
+        if(this.scheduler!=null){
+            if(this.activeStateTask==null){
+                this.activeStateTask=new Runnable(){
+                    public void run(){
+                        if(!stopped){
+                            startActiveSwap(true);
+                            runActiveState();
+                        }
                     }
-                    actionsSent=actionsSent+1.0;
+                };
+            }
+            TimingWheel.Timeout timeout=this.scheduler.schedule(this.activeStateTask, delay);
+            this.activeStateTimeout=timeout;
+            if(this.stopped){
+                timeout.cancel();
+            }
+            return;
+        }
+        if(this.activeStateTimer==null){
+            this.activeStateTimer=getPeer().getClock().createNewTimer();
+            this.activeStateTimer.addTimerListener(new TimerListener() {
+                public void timerExpired(Timer timer) {
+                    startActiveSwap(false);
+                    runActiveState();
                 }
-                viewManager.increaseAge(A);
-                runActiveState(); //recursive call
+            });
+        }
+        this.activeStateTimer.schedule(Time.inMilliseconds(delay));
+    }
+
+    /**
+	 * Starts the active swap of a period. It is offered to the swap executor
+     * of the peer if one is set, otherwise it runs in the calling thread.
+     *
+     * @param enterExecutionContext true if the calling thread is not in the
+     * execution context of the peer
+	 */
+    private void startActiveSwap(boolean enterExecutionContext){
+        if(this.swapQueue!=null){
+            this.offerSwap(this.activeSwapTask);
+        }
+        else if(enterExecutionContext){
+            this.runInExecutionContext(this.activeSwapTask);
+        }
+        else{
+            this.runActiveSwap();
+        }
+    }
+
+    /**
+	 * Offers a swap to the swap executor of the peer. The swap is dropped if
+     * the queue of the peer is full, as if its message was lost.
+     *
+     * @param swap the active or passive swap
+	 */
+    private void offerSwap(final Runnable swap){
+        boolean offered=this.swapQueue.offer(new Runnable(){
+            public void run(){
+                runInExecutionContext(swap);
             }
         });
-        activeStateTimer.schedule(Time.inMilliseconds(this.T-((Math.random()-0.5)*this.T))); //1e3
+        if(!offered){
+            this.droppedMess+=1.0;
+        }
+    }
+
+    /**
+	 * Runs a task of the peer in a thread of a scheduler or an executor, in
+     * the execution context of the peer as a ProtoPeer timer does.
+     *
+     * @param task the task
+	 */
+    private void runInExecutionContext(Runnable task){
+        Experiment experiment=Experiment.getSingleton();
+        if(experiment==null){
+            task.run();
+            return;
+        }
+        experiment.enterExecutionContext(getPeer().getClock().getExecutionContext());
+        try{
+            task.run();
+        }
+        finally{
+            experiment.leaveExecutionContext();
+        }
+    }
+
+    /**
+	 * Runs the active state of a period with the <code>SwapProtocol</code>.
+     * The queued buffers are merged first.
+     * If the peer is in the PUSH or PUSHPULL state it will create the buffer
+     * and push information. In the PULL state it sends a buffer with no
+     * descriptors to trigger an asnwer (REACTION). The age is increased after
+     * the end of each active state. The active state ends the period of the
+     * swap, so no message is sent if the swap of the period has already been
+     * piggybacked on the message of another peerlet, and then the next period
+     * starts.
+	 */
+    private void runActiveSwap(){
+        this.mergePending();
+        this.swapProtocol.runActiveState(!this.swapped);
+        //the period ends and the next one starts with no swap
+        this.swapped=false;
+    }
+
+    /**
+	 * Creates the message of an active swap with a destination according to
+     * the view propagation policy. In the PUSHPULL and PUSH policies the
+     * message has a buffer, whereas in the PULL policy it has no descriptors.
+     *
+     * @param destination the destination peer
+	 */
+    private SwapMessage createAction(NetworkAddress destination){
+        return this.createSwap(MessageType.ACTION, destination, this.swapProtocol.hasActionBuffer());
+    }
+
+    /**
+	 * Creates a message of a swap with or without a buffer for the
+     * destination.
+     *
+     * @param messType the type of the message
+     * @param destination the destination peer
+     * @param withBuffer true if the message carries a buffer
+	 */
+    private SwapMessage createSwap(MessageType messType, NetworkAddress destination, boolean withBuffer){
+        if(withBuffer){
+            return this.createBuffer(messType, destination);
+        }
+        SwapMessage message=this.createMessage(messType);
+        this.measureSwapBytes(message);
+        this.parosMess+=1.0;
+        return message;
+    }
+
+    /**
+	 * Sends a message of the <code>SwapProtocol</code> and counts the sent
+     * ACTIONs and REACTIONs.
+     *
+     * @param messType the type of the message
+     * @param destination the destination peer
+     * @param withBuffer true if the message carries a buffer
+	 */
+    private void sendSwap(MessageType messType, NetworkAddress destination, boolean withBuffer){
+        if(withBuffer){
+            this.sendBuffer(messType, destination);
+        }
+        else{
+            this.send(destination, this.createSwap(messType, destination, false));
+        }
+        switch(messType){
+            case ACTION:
+                this.actionsSent=this.actionsSent+1.0;
+                break;
+            case REACTION:
+                this.reactionsSent=this.reactionsSent+1.0;
+                break;
+            default:
+        }
     }
 
     /**
-	 * This is the passive thread of the system. It defines the appropriate
+	 * This is the passive thread of the system. It decodes and counts the
+     * received message and runs the passive state of the
+     * <code>SwapProtocol</code>, which defines the appropriate
      * reactions to the received <code>MessageType</code> of messages.
      * The <code>MessageType</code> defines 2 types of messages for the Peer
-     * Sampling Service: The ACTION and REACTION.
+     * Sampling Service: The ACTION and REACTION. An ACTION is answered with a
+     * REACTION in the PUSHPULL and PULL policies and its buffer is merged in
+     * the PUSHPULL and PUSH policies. A REACTION is merged in the PUSHPULL and
+     * PULL policies. An ACTION rejected by the admission control is dropped or
+     * answered with BUSY, and a BUSY message makes the peer back off from its
+     * sender.
      *
      * @param swapMessage the swap message that the passive state of Peer
      * Sampling Service can process
      *
 	 */
     private void runPassiveState(SwapMessage swapMessage){
+        if(swapMessage.references!=null){
+            this.unresolvedReferences+=this.partnerDigests.decode(swapMessage, swapMessage.getSourceAddress(), getPeer().getClock().getCurrentTime());
+        }
         switch(swapMessage.type){
             case REACTION:
                 this.reactionsReceived=this.reactionsReceived+1.0;
-                if(viewPropagationPolicy==viewPropagationPolicy.PUSHPULL){
-                    this.viewManager.select(swapMessage.buffer);
-                }
-                else{
-                    // do nothing
-                }
                 break;
             case ACTION:
                 this.actionsReceived=this.actionsReceived+1.0;
-                if(viewPropagationPolicy==viewPropagationPolicy.PUSHPULL){
-                    this.sendBuffer(MessageType.REACTION, swapMessage.getSourceAddress());
-                    this.reactionsSent=this.reactionsSent+1.0;
-                    this.viewManager.select(swapMessage.buffer);
-                }
-                else{
-                    // do nothing
-                }
+                break;
+            case BUSY:
+                this.deferredMess+=1.0;
                 break;
             default:
-                // another message type has been received and just ignore it...
         }
-        viewManager.increaseAge(A);
+        this.swapProtocol.runPassiveState(swapMessage.type, swapMessage.getSourceAddress(), swapMessage.buffer);
+    }
+
+    /**
+	 * Adds the bytes of a sent message in the compact format to the swap bytes,
+     * if they are measured. Messages that cannot be encoded, e.g. with values
+     * that are not serializable, are not counted.
+     *
+     * @param message the sent message
+	 */
+    private void measureSwapBytes(SwapMessage message){
+        if(this.swapBytesMeasurement||this.bufferEncoding==BufferEncoding.DELTA){
+            int bytes=SwapMessageCodec.getEncodedSize(message);
+            if(bytes>=0){
+                this.swapBytes+=bytes;
+            }
+        }
+    }
+
+    /**
+	 * Accepts an ACTION if it is within the rate of the admission control.
+     * Otherwise, it is answered with a BUSY message if the busy reactions are
+     * enabled and the policy answers the ACTIONs.
+     *
+     * @param source the sender of the ACTION
+	 */
+    private boolean admit(NetworkAddress source){
+        if(this.admission==null||this.admission.tryAcquire(getPeer().getClock().getCurrentTime())){
+            return true;
+        }
+        this.rejectedMess+=1.0;
+        if(this.busyReactions&&viewPropagationPolicy!=ViewPropagationPolicy.PUSH){
+            this.send(source, this.createSwap(MessageType.BUSY, source, false));
+        }
+        return false;
+    }
+
+    /**
+	 * Merges a received buffer in the view, or queues it if the buffers are
+     * merged in batches. The descriptors are copied to the queue, since the
+     * buffer list of a received message may be returned to the pool.
+     *
+     * @param buffer the received buffer
+	 */
+    private void merge(List<FingerDescriptor> buffer){
+        if(this.mergedBuffers==1){
+            this.viewManager.select(buffer);
+            return;
+        }
+        synchronized(this.pendingBuffers){
+            this.pendingBuffers.addAll(buffer);
+            this.pendingMerges++;
+            if(this.pendingMerges>=this.mergedBuffers){
+                this.mergePending();
+            }
+        }
+    }
+
+    /**
+	 * Merges the queued buffers in the view in one pass. The descriptors sent
+     * since the last merge are removed from the view as the swapped ones.
+	 */
+    private void mergePending(){
+        synchronized(this.pendingBuffers){
+            if(this.pendingMerges>0){
+                this.viewManager.selectBatch(this.pendingBuffers, this.pendingMerges, this.sentBuffers);
+                this.pendingBuffers.clear();
+                this.pendingMerges=0;
+            }
+            this.sentBuffers.clear();
+        }
     }
 
     /**
@@ -329,35 +951,108 @@ public class PeerSamplingService extends BasePeerlet{
      * 2. permutes the view
      * 3. moves H oldest items at the end of the view
      * 4. appends c/2-1 items from the head of the view to the buffer
-     * 5. sends the buffer to the destination
+     * 5. delta encodes the buffer for the destination, in the DELTA encoding
+     * 6. sends the buffer to the destination
      *
      * @param messType the type of message to be sent (ACTIONS or REACTION)
      * @param destination the destination peer
 	 */
     private void sendBuffer(MessageType messType, NetworkAddress destination){
-        SwapMessage message=new SwapMessage();
-        message.type=messType;
-        message.buffer=new ArrayList();
-        message.buffer.add(this.viewManager.getMyDescriptor().clone());
-        synchronized(this.viewManager.getView()){
-            this.viewManager.permute();
-            this.viewManager.moveOldItemsAtTheEnd();
-            message.buffer.addAll(this.viewManager.getSomeNeighbors());
-        }
-        this.getPeer().sendMessage(destination, message);
+        this.send(destination, this.createBuffer(messType, destination));
+    }
+
+    /**
+	 * Creates a message with a buffer for the destination, as the steps 1 to 5
+     * of <code>sendBuffer</code>.
+     *
+     * @param messType the type of message to be sent (ACTIONS or REACTION)
+     * @param destination the destination peer
+	 */
+    private SwapMessage createBuffer(MessageType messType, NetworkAddress destination){
+        SwapMessage message=this.createMessage(messType);
+        this.viewManager.createBuffer(message.buffer);
+        if(this.mergedBuffers>1){
+            synchronized(this.pendingBuffers){
+                this.sentBuffers.addAll(message.buffer);
+            }
+        }
+        if(this.bufferEncoding==BufferEncoding.DELTA){
+            this.partnerDigests.encode(message, destination, this.getPeer().getClock().getCurrentTime());
+        }
+        this.measureSwapBytes(message);
         parosMess+=1.0;
+        return message;
     }
 
     /**
-	 * Gurantees the handle of a <code>SwapMessage</code> message.
+	 * Gurantees the handle of a <code>SwapMessage</code> message, either
+     * received on its own or attached to a <code>SwapCarrier</code> message
+     * of another peerlet. If a swap executor is set, the message is queued to it and
+     * the network thread returns immediately. A message received on its own
+     * is the copy of the receiver, so it is returned to the pool after it is
+     * processed, if the messages are recycled.
      *
      * @param message the received message in the peer
 	 */
     @Override
     public void handleIncomingMessage(Message message){
+        SwapMessage swapMessage=null;
+        boolean owned=false;
         if(message instanceof SwapMessage){
-            SwapMessage swapMessage=(SwapMessage) message;
+            swapMessage=(SwapMessage) message;
+            owned=this.messagePool!=null;
+        }
+        else if(message instanceof SwapCarrier){
+            swapMessage=((SwapCarrier) message).getSwapMessage();
+            if(swapMessage!=null){
+                swapMessage.setSourceAddress(message.getSourceAddress());
+            }
+        }
+        if(swapMessage!=null){
+            if(this.swapQueue!=null){
+                final SwapMessage received=swapMessage;
+                final boolean release=owned;
+                this.offerSwap(new Runnable(){
+                    public void run(){
+                        runPassiveState(received);
+                        if(release){
+                            messagePool.release(received);
+                        }
+                    }
+                });
+                return;
+            }
             this.runPassiveState(swapMessage);
+            if(owned){
+                this.messagePool.release(swapMessage);
+            }
+        }
+    }
+
+    /**
+	 * Attaches the active swap of the current period to an outgoing
+     * <code>SwapCarrier</code> message of another peerlet, if the destination
+     * is in the view and the swap of the current period has not been
+     * performed yet on either path. The destination is then the gossiping
+     * partner of the period instead of the peer selected by the peer
+     * selection policy.
+     *
+     * @param message the message sent by the peer
+	 */
+    @Override
+    public void handleOutgoingMessage(Message message){
+        if(this.piggybacking&&!this.swapped&&this.viewManager!=null&&message instanceof SwapCarrier){
+            SwapCarrier carrier=(SwapCarrier) message;
+            NetworkAddress destination=message.getDestinationAddress();
+            if(carrier.getSwapMessage()==null&&this.viewManager.contains(destination)){
+                SwapMessage action=this.createAction(destination);
+                if(action!=null){
+                    carrier.setSwapMessage(action);
+                    this.swapped=true;
+                    this.piggybackedMess+=1.0;
+                    this.actionsSent=this.actionsSent+1.0;
+                }
+            }
         }
     }
 
@@ -380,7 +1075,19 @@ public class PeerSamplingService extends BasePeerlet{
 //                actionsSent=0.0;
 //                reactionsSent=0.0;
                 log.log(epochNumber, PSSMeasurementTags.PAROS_MESS, parosMess);
+                log.log(epochNumber, PSSMeasurementTags.SWAP_BYTES, swapBytes);
+                log.log(epochNumber, PSSMeasurementTags.UNRESOLVED_REFERENCES, unresolvedReferences);
+                log.log(epochNumber, PSSMeasurementTags.PIGGYBACKED_MESS, piggybackedMess);
+                log.log(epochNumber, PSSMeasurementTags.DROPPED_MESS, droppedMess);
+                log.log(epochNumber, PSSMeasurementTags.DEFERRED_MESS, deferredMess);
+                log.log(epochNumber, PSSMeasurementTags.REJECTED_MESS, rejectedMess);
                 parosMess=0.0;
+                swapBytes=0.0;
+                unresolvedReferences=0.0;
+                piggybackedMess=0.0;
+                droppedMess=0.0;
+                deferredMess=0.0;
+                rejectedMess=0.0;
             }
         });
     }
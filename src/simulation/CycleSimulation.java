@@ -0,0 +1,459 @@
+/*
+ * Copyright (C) 2015 Evangelos Pournaras
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+
+package simulation;
+
+import components.View;
+import enums.PSSMeasurementTags;
+import enums.PeerSelectionPolicy;
+import enums.ViewPropagationPolicy;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.SplittableRandom;
+import util.InDegreeCollector;
+
+/**
+ * A cycle-driven simulation of the Peer Sampling Service. In every cycle, every
+ * node runs its active state once, in a random order. The passive state of
+ * the selected partner and the answer run immediately. This follows the
+ * cycle-driven model of PeerSim. There are no ProtoPeer peers, timers or
+ * messages.
+ *
+ * The state of the nodes is kept in flat primitive arrays indexed by the node.
+ * A view is a slice of an array with the indices of the neighbors and another
+ * one with their births. The births are counted in age increases of the node,
+ * one after every active and passive event. The operations on the views are
+ * the ones of the <code>ViewManager</code>: the permutation, the move of the H
+ * oldest items at the end, the buffer of the local descriptor and c/2-1
+ * neighbors from the head, and the selection that appends unique
+ * descriptors and removes the H oldest, S from the head and the rest at
+ * random. The oldest items are found by the partial selection of the
+ * <code>View</code>. For the same views and buffers, the move of the oldest
+ * items and the selection give the same views as the <code>ViewManager</code>.
+ *
+ * @author Evangelos
+ */
+public class CycleSimulation {
+
+    private final int N;
+    private final int c;
+    private final int H;
+    private final int S;
+    private final PeerSelectionPolicy peerSelectionPolicy;
+    private final ViewPropagationPolicy viewPropagationPolicy;
+    private final SplittableRandom random;
+    private final int capacity;
+    private final int[] views;
+    private final int[] births;
+    private final int[] sizes;
+    private final int[] clocks;
+    private final int[] order;
+    private final int[] activeBuffer;
+    private final int[] activeAges;
+    private final int[] passiveBuffer;
+    private final int[] passiveAges;
+    private final boolean[] selected;
+    private final int[] positions;
+    private final double[] oldestBirths;
+    private final int[] oldestPositions;
+    private final int[] movedViews;
+    private final int[] movedBirths;
+    private final Map<PSSMeasurementTags, Long> messages;
+    private int cycle;
+
+    /**
+	 * Creates the simulation and bootstraps every node with c random nodes.
+     *
+     * @param N the number of nodes
+     * @param c the length of the view
+     * @param H the healing paramerer
+     * @param S the swap parameter
+     * @param peerSelectionPolicy the peer selection policy
+     * @param viewPropagationPolicy the view propagation policy
+     * @param seed the seed of the simulation
+	 */
+    public CycleSimulation(int N, int c, int H, int S, PeerSelectionPolicy peerSelectionPolicy, ViewPropagationPolicy viewPropagationPolicy, long seed){
+        this.N=N;
+        this.c=c;
+        this.H=H;
+        this.S=S;
+        this.peerSelectionPolicy=peerSelectionPolicy;
+        this.viewPropagationPolicy=viewPropagationPolicy;
+        this.random=new SplittableRandom(seed);
+        this.capacity=c+c/2+1;
+        this.views=new int[N*capacity];
+        this.births=new int[N*capacity];
+        this.sizes=new int[N];
+        this.clocks=new int[N];
+        this.order=new int[N];
+        this.activeBuffer=new int[capacity];
+        this.activeAges=new int[capacity];
+        this.passiveBuffer=new int[capacity];
+        this.passiveAges=new int[capacity];
+        this.selected=new boolean[capacity];
+        this.positions=new int[capacity];
+        this.oldestBirths=new double[capacity];
+        this.oldestPositions=new int[capacity];
+        this.movedViews=new int[capacity];
+        this.movedBirths=new int[capacity];
+        this.messages=new EnumMap<PSSMeasurementTags, Long>(PSSMeasurementTags.class);
+        for(int node=0;node<N;node++){
+            this.order[node]=node;
+            for(int j=0;j<c;j++){
+                activeBuffer[j]=this.random.nextInt(N);
+                activeAges[j]=0;
+            }
+            this.select(node, activeBuffer, activeAges, c);
+        }
+        this.resetMessages();
+    }
+
+    /**
+	 * Runs a number of cycles.
+     *
+     * @param cycles the number of cycles
+	 */
+    public void run(int cycles){
+        for(int i=0;i<cycles;i++){
+            this.resetMessages();
+            for(int j=N-1;j>0;j--){
+                int k=this.random.nextInt(j+1);
+                int node=order[j];
+                order[j]=order[k];
+                order[k]=node;
+            }
+            for(int node:order){
+                this.runActiveState(node);
+            }
+            this.cycle++;
+        }
+    }
+
+    /**
+	 * The active state of a node and the passive state of its partner, as in
+     * the <code>PeerSamplingService</code>. The age of the active node
+     * increases after the action is sent and after the reaction is merged.
+	 */
+    private void runActiveState(int node){
+        if(sizes[node]>0){
+            int partner=this.selectPeer(node);
+            int actionSize=0;
+            if(viewPropagationPolicy!=ViewPropagationPolicy.PULL){
+                actionSize=this.createBuffer(node, activeBuffer, activeAges);
+            }
+            this.count(PSSMeasurementTags.MESSAGE_ACTION_SENT);
+            this.count(PSSMeasurementTags.PAROS_MESS);
+            clocks[node]++;
+            this.count(PSSMeasurementTags.MESSAGE_ACTION_RECEIVED);
+            if(viewPropagationPolicy!=ViewPropagationPolicy.PUSH){
+                int reactionSize=this.createBuffer(partner, passiveBuffer, passiveAges);
+                this.count(PSSMeasurementTags.MESSAGE_REACTION_SENT);
+                this.count(PSSMeasurementTags.PAROS_MESS);
+                if(viewPropagationPolicy!=ViewPropagationPolicy.PULL){
+                    this.select(partner, activeBuffer, activeAges, actionSize);
+                }
+                clocks[partner]++;
+                this.count(PSSMeasurementTags.MESSAGE_REACTION_REVEIVED);
+                this.select(node, passiveBuffer, passiveAges, reactionSize);
+                clocks[node]++;
+            }
+            else{
+                this.select(partner, activeBuffer, activeAges, actionSize);
+                clocks[partner]++;
+            }
+        }
+        else{
+            clocks[node]++;
+        }
+    }
+
+    /**
+	 * Selects the partner with the RAND or the OLD policy.
+	 */
+    private int selectPeer(int node){
+        int offset=node*capacity;
+        if(peerSelectionPolicy==PeerSelectionPolicy.OLD){
+            int oldest=0;
+            for(int i=1;i<sizes[node];i++){
+                if(births[offset+i]<births[offset+oldest]){
+                    oldest=i;
+                }
+            }
+            return views[offset+oldest];
+        }
+        return views[offset+this.random.nextInt(sizes[node])];
+    }
+
+    /**
+	 * Permutes the view, moves the H oldest items at the end and writes the
+     * buffer with the local descriptor and c/2-1 neighbors from the head of
+     * the view. Returns the size of the buffer.
+	 */
+    private int createBuffer(int node, int[] buffer, int[] ages){
+        int offset=node*capacity;
+        int size=sizes[node];
+        for(int i=1;i<size;i++){
+            this.swap(offset, i, this.random.nextInt(i+1));
+        }
+        this.moveOldItemsAtTheEnd(node);
+        buffer[0]=node;
+        ages[0]=0;
+        int length=1;
+        for(int i=0;i<size/2-1;i++){
+            buffer[length]=views[offset+i];
+            ages[length]=clocks[node]-births[offset+i];
+            length++;
+        }
+        return length;
+    }
+
+    /**
+	 * Moves the size*H/c oldest items of a view at the end, as the
+     * <code>ViewManager</code> does before it creates a buffer.
+	 */
+    void moveOldItemsAtTheEnd(int node){
+        int movedItems=sizes[node]*H/c;
+        if(movedItems>0){
+            this.selectOldest(node, movedItems);
+            this.moveSelectedToEnd(node);
+        }
+    }
+
+    /**
+	 * Merges a buffer in the view of a node and reduces the view to c items.
+     * A descriptor in the view is replaced if the received one is younger and
+     * the descriptor of the node itself is ignored. Then, the H oldest items,
+     * S items from the head and random items are removed.
+	 */
+    void select(int node, int[] buffer, int[] ages, int length){
+        int offset=node*capacity;
+        int clock=clocks[node];
+        for(int k=0;k<length;k++){
+            int neighbor=buffer[k];
+            if(neighbor==node){
+                continue;
+            }
+            int duplicate=-1;
+            for(int i=0;i<sizes[node];i++){
+                if(views[offset+i]==neighbor){
+                    duplicate=i;
+                    break;
+                }
+            }
+            if(duplicate>=0){
+                if(clock-births[offset+duplicate]<=ages[k]){
+                    continue;
+                }
+                this.removeHead(node, duplicate, 1);
+            }
+            views[offset+sizes[node]]=neighbor;
+            births[offset+sizes[node]]=clock-ages[k];
+            sizes[node]++;
+        }
+        int h=Math.min(H, sizes[node]-c);
+        if(h>0){
+            this.selectOldest(node, h);
+            this.removeSelected(node);
+        }
+        int s=Math.min(S, sizes[node]-c);
+        if(s>0){
+            this.removeHead(node, 0, s);
+        }
+        int r=sizes[node]-c;
+        if(r>0){
+            for(int i=0;i<sizes[node];i++){
+                selected[i]=false;
+            }
+            for(int i=0;i<r;i++){
+                int position=this.random.nextInt(sizes[node]);
+                while(selected[position]){
+                    position=this.random.nextInt(sizes[node]);
+                }
+                selected[position]=true;
+            }
+            this.removeSelected(node);
+        }
+    }
+
+    /**
+	 * Marks the n oldest items of a view. Among items with the same age, the
+     * ones closer to the head are marked first.
+	 */
+    private void selectOldest(int node, int n){
+        int offset=node*capacity;
+        int size=sizes[node];
+        for(int i=0;i<size;i++){
+            selected[i]=false;
+            oldestBirths[i]=births[offset+i];
+            oldestPositions[i]=i;
+        }
+        View.selectOldest(oldestBirths, oldestPositions, size, n);
+        for(int i=0;i<Math.min(n, size);i++){
+            selected[oldestPositions[i]]=true;
+        }
+    }
+
+    /**
+	 * Moves the marked items at the end of the view, retaining the order of
+     * both the moved and the remaining items.
+	 */
+    private void moveSelectedToEnd(int node){
+        int offset=node*capacity;
+        int size=sizes[node];
+        int j=0;
+        int m=0;
+        for(int i=0;i<size;i++){
+            if(selected[i]){
+                positions[m++]=i;
+            }
+            else{
+                movedViews[j]=views[offset+i];
+                movedBirths[j]=births[offset+i];
+                j++;
+            }
+        }
+        for(int i=0;i<m;i++){
+            movedViews[j]=views[offset+positions[i]];
+            movedBirths[j]=births[offset+positions[i]];
+            j++;
+        }
+        System.arraycopy(movedViews, 0, views, offset, size);
+        System.arraycopy(movedBirths, 0, births, offset, size);
+    }
+
+    /**
+	 * Removes the marked items of the view, retaining the order of the rest.
+	 */
+    private void removeSelected(int node){
+        int offset=node*capacity;
+        int j=0;
+        for(int i=0;i<sizes[node];i++){
+            if(!selected[i]){
+                views[offset+j]=views[offset+i];
+                births[offset+j]=births[offset+i];
+                j++;
+            }
+        }
+        sizes[node]=j;
+    }
+
+    /**
+	 * Removes n items of the view starting from a position.
+	 */
+    private void removeHead(int node, int from, int n){
+        int offset=node*capacity;
+        int moved=sizes[node]-from-n;
+        System.arraycopy(views, offset+from+n, views, offset+from, moved);
+        System.arraycopy(births, offset+from+n, births, offset+from, moved);
+        sizes[node]-=n;
+    }
+
+    private void swap(int offset, int i, int j){
+        int view=views[offset+i];
+        views[offset+i]=views[offset+j];
+        views[offset+j]=view;
+        int birth=births[offset+i];
+        births[offset+i]=births[offset+j];
+        births[offset+j]=birth;
+    }
+
+    private void count(PSSMeasurementTags tag){
+        this.messages.put(tag, this.messages.get(tag)+1);
+    }
+
+    private void resetMessages(){
+        for(PSSMeasurementTags tag:PSSMeasurementTags.values()){
+            this.messages.put(tag, 0L);
+        }
+    }
+
+    /**
+	 * Returns the number of messages of a type in the last cycle.
+     *
+     * @param tag the message type, as it is measured by the Peer Sampling
+     * Service
+	 */
+    public long getMessages(PSSMeasurementTags tag){
+        return this.messages.get(tag);
+    }
+
+    /**
+	 * Counts the views that contain every node in a collector.
+     *
+     * @param collector the collector of the in-degrees of the N nodes
+	 */
+    public void countInDegrees(InDegreeCollector collector){
+        collector.reset();
+        for(int node=0;node<N;node++){
+            int offset=node*capacity;
+            for(int i=0;i<sizes[node];i++){
+                collector.count(views[offset+i]);
+            }
+        }
+    }
+
+    /**
+	 * Returns the neighbors in the view of a node.
+     *
+     * @param node the index of the node
+	 */
+    public int[] getView(int node){
+        int[] view=new int[sizes[node]];
+        System.arraycopy(views, node*capacity, view, 0, sizes[node]);
+        return view;
+    }
+
+    /**
+	 * Returns the ages of the neighbors in the view of a node, in the order of
+     * <code>getView</code>.
+     *
+     * @param node the index of the node
+	 */
+    int[] getAges(int node){
+        int offset=node*capacity;
+        int[] ages=new int[sizes[node]];
+        for(int i=0;i<sizes[node];i++){
+            ages[i]=clocks[node]-births[offset+i];
+        }
+        return ages;
+    }
+
+    /**
+	 * Replaces the view of a node.
+     *
+     * @param node the index of the node
+     * @param neighbors the neighbors of the view, at most c+c/2+1
+     * @param ages the ages of the neighbors
+	 */
+    void setView(int node, int[] neighbors, int[] ages){
+        int offset=node*capacity;
+        for(int i=0;i<neighbors.length;i++){
+            views[offset+i]=neighbors[i];
+            births[offset+i]=clocks[node]-ages[i];
+        }
+        sizes[node]=neighbors.length;
+    }
+
+    public int getN(){
+        return this.N;
+    }
+
+    public int getCycle(){
+        return this.cycle;
+    }
+}
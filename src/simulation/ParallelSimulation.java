@@ -0,0 +1,396 @@
+/*
+ * Copyright (C) 2015 Evangelos Pournaras
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+
+package simulation;
+
+import components.ImmutableDescriptor;
+import components.SwapProtocol;
+import components.SwapTransport;
+import components.ViewManager;
+import dsutil.protopeer.FingerDescriptor;
+import enums.MessageType;
+import enums.PeerSelectionPolicy;
+import enums.ViewPropagationPolicy;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.SplittableRandom;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import protopeer.Finger;
+import protopeer.RingIdentifier;
+import protopeer.network.IntegerNetworkAddress;
+import protopeer.network.NetworkAddress;
+import util.InDegreeCollector;
+
+/**
+ * A discrete event simulation of the Peer Sampling Service that runs the peers
+ * on several worker threads. Every peer runs the active and passive states of
+ * the <code>SwapProtocol</code> on its <code>ViewManager</code>, as the
+ * <code>PeerSamplingService</code> peerlet does, but without the ProtoPeer
+ * event loop, so that populations of 100k peers and more can be simulated.
+ *
+ * The messages are events of the simulation instead of ProtoPeer messages, so
+ * the options of the peerlet that depend on them are not simulated: the
+ * DELTA buffer encoding, the piggybacking, the swap executor, the admission
+ * control, the bootstrapping server and the message loss of ProtoPeer. The
+ * aging is the EVENT aging. Its results do not have to match the ones of the
+ * <code>PeerSamplingServiceExperiment</code>, which uses its own scheduler
+ * and latencies. The windows only add overhead without several processors.
+ *
+ * The peers are partitioned across the workers by their index. The
+ * synchronization is conservative: every message has a latency of at least
+ * the lookahead, so the events of a window of the length of the lookahead can
+ * be processed by the partitions in parallel. The messages to the peers of
+ * other partitions are exchanged at the barrier at the end of the window.
+ *
+ * The events of a peer are ordered by their time, the peer that caused them
+ * and a sequence number of that peer. The randomness of every peer is drawn
+ * from a source seeded by the seed and its index, as in the
+ * <code>PeerSamplingService</code>. Therefore, the results are identical for
+ * any number of workers and the run with one worker is the sequential run.
+ *
+ * @author Evangelos
+ */
+public class ParallelSimulation {
+
+    private final int N;
+    private final int c;
+    private final int H;
+    private final int S;
+    private final PeerSelectionPolicy peerSelectionPolicy;
+    private final ViewPropagationPolicy viewPropagationPolicy;
+    private final int T;
+    private final int A;
+    private final double lookahead;
+    private final ViewManager[] viewManagers;
+    private final SwapProtocol[] protocols;
+    private final NetworkAddress[] addresses;
+    private final SplittableRandom[] randoms;
+    private final long[] sequences;
+    private final Partition[] partitions;
+    private double time;
+    private long events;
+    private long messages;
+
+    /**
+	 * Creates the simulation and bootstraps every peer with c random peers.
+     *
+     * @param N the number of peers
+     * @param c the length of the view
+     * @param H the healing paramerer
+     * @param S the swap parameter
+     * @param peerSelectionPolicy the peer selection policy
+     * @param viewPropagationPolicy the view propagation policy
+     * @param T the period that the active state is triggered
+     * @param A the age increase after every active and passive event
+     * @param lookahead the minimum latency of a message in milliseconds. The
+     * latency is uniform between the lookahead and twice the lookahead
+     * @param seed the seed of the simulation
+     * @param workers the number of worker threads
+	 */
+    public ParallelSimulation(int N, int c, int H, int S, PeerSelectionPolicy peerSelectionPolicy, ViewPropagationPolicy viewPropagationPolicy, int T, int A, double lookahead, long seed, int workers){
+        this.N=N;
+        this.c=c;
+        this.H=H;
+        this.S=S;
+        this.peerSelectionPolicy=peerSelectionPolicy;
+        this.viewPropagationPolicy=viewPropagationPolicy;
+        this.T=T;
+        this.A=A;
+        this.lookahead=lookahead;
+        this.viewManagers=new ViewManager[N];
+        this.protocols=new SwapProtocol[N];
+        this.addresses=new NetworkAddress[N];
+        this.randoms=new SplittableRandom[N];
+        this.sequences=new long[N];
+        this.partitions=new Partition[workers];
+        for(int i=0;i<workers;i++){
+            this.partitions[i]=new Partition(workers);
+        }
+        SplittableRandom bootstrapRandom=new SplittableRandom(seed);
+        for(int i=0;i<N;i++){
+            this.randoms[i]=new SplittableRandom(new SplittableRandom(seed+i).nextLong());
+            Finger finger=this.createFinger(i);
+            this.addresses[i]=finger.getNetworkAddress();
+            this.viewManagers[i]=new ViewManager(c, H, S, peerSelectionPolicy, finger, null, this.randoms[i].split());
+            this.protocols[i]=new SwapProtocol(this.viewManagers[i], viewPropagationPolicy, A, 0, this.createTransport(i));
+            List<Finger> bootstrapPeers=new ArrayList<Finger>();
+            for(int j=0;j<c;j++){
+                bootstrapPeers.add(this.createFinger(bootstrapRandom.nextInt(N)));
+            }
+            this.viewManagers[i].setBootstrapPeers(bootstrapPeers);
+            this.getPartition(i).queue.add(new Event(this.randoms[i].nextDouble()*T, MessageType.ACTION, i, i, this.sequences[i]++, null, true));
+        }
+    }
+
+    /**
+	 * Runs the simulation for a duration after the current time.
+     *
+     * @param duration the simulated duration in milliseconds
+	 */
+    public void run(double duration) throws InterruptedException{
+        double end=this.time+duration;
+        ExecutorService executor=Executors.newFixedThreadPool(this.partitions.length);
+        try{
+            List<Callable<Void>> processing=new ArrayList<Callable<Void>>();
+            List<Callable<Void>> exchange=new ArrayList<Callable<Void>>();
+            for(int p=0;p<this.partitions.length;p++){
+                final Partition partition=this.partitions[p];
+                final int index=p;
+                processing.add(new Callable<Void>(){
+                    public Void call(){
+                        partition.process(Math.min(partition.windowEnd, partition.runEnd));
+                        return null;
+                    }
+                });
+                exchange.add(new Callable<Void>(){
+                    public Void call(){
+                        for(Partition sender:partitions){
+                            partition.queue.addAll(sender.outboxes.get(index));
+                            sender.outboxes.get(index).clear();
+                        }
+                        return null;
+                    }
+                });
+            }
+            while(true){
+                double start=Double.POSITIVE_INFINITY;
+                for(Partition partition:this.partitions){
+                    Event next=partition.queue.peek();
+                    if(next!=null){
+                        start=Math.min(start, next.time);
+                    }
+                }
+                if(start>=end){
+                    break;
+                }
+                for(Partition partition:this.partitions){
+                    partition.windowEnd=start+this.lookahead;
+                    partition.runEnd=end;
+                }
+                this.invokeAll(executor, processing);
+                this.invokeAll(executor, exchange);
+            }
+        }
+        finally{
+            executor.shutdown();
+        }
+        this.time=end;
+        for(Partition partition:this.partitions){
+            this.events+=partition.events;
+            this.messages+=partition.messages;
+            partition.events=0;
+            partition.messages=0;
+        }
+    }
+
+    private void invokeAll(ExecutorService executor, List<Callable<Void>> tasks) throws InterruptedException{
+        for(Future<Void> future:executor.invokeAll(tasks)){
+            try{
+                future.get();
+            }
+            catch(ExecutionException e){
+                throw new IllegalStateException("Simulation failed", e.getCause());
+            }
+        }
+    }
+
+    /**
+	 * Returns a checksum of the network addresses and ages in the views of all
+     * peers. Equal checksums show identical runs.
+	 */
+    public long getChecksum(){
+        long checksum=17;
+        for(ViewManager viewManager:this.viewManagers){
+            for(ImmutableDescriptor descriptor:viewManager.getSnapshot().getDescriptors()){
+                checksum=31*checksum+descriptor.getNetworkAddress().hashCode();
+                checksum=31*checksum+Double.doubleToLongBits(descriptor.getAge());
+            }
+        }
+        return checksum;
+    }
+
+    /**
+	 * Counts the views that contain every peer in a collector.
+     *
+     * @param collector the collector of the in-degrees of the N peers
+	 */
+    public void countInDegrees(InDegreeCollector collector){
+        collector.reset();
+        for(ViewManager viewManager:this.viewManagers){
+            for(ImmutableDescriptor neighbor:viewManager.getSnapshot().getDescriptors()){
+                collector.count(((IntegerNetworkAddress)neighbor.getNetworkAddress()).getIntValue());
+            }
+        }
+    }
+
+    public ViewManager getViewManager(int index){
+        return this.viewManagers[index];
+    }
+
+    public int getN(){
+        return this.N;
+    }
+
+    public double getTime(){
+        return this.time;
+    }
+
+    /**
+	 * Returns the number of events processed so far.
+	 */
+    public long getEvents(){
+        return this.events;
+    }
+
+    /**
+	 * Returns the number of messages sent so far.
+	 */
+    public long getMessages(){
+        return this.messages;
+    }
+
+    private Partition getPartition(int peer){
+        return this.partitions[peer%this.partitions.length];
+    }
+
+    private Finger createFinger(int index){
+        return new Finger(new IntegerNetworkAddress(index), new RingIdentifier((double)index/N));
+    }
+
+    /**
+	 * Creates the transport of a peer. Its messages are sent at the time of
+     * the event processed by the partition of the peer and every ACTION is
+     * accepted.
+     *
+     * @param peer the index of the peer
+	 */
+    private SwapTransport createTransport(final int peer){
+        return new SwapTransport(){
+            public void send(MessageType type, NetworkAddress destination, boolean withBuffer){
+                List<FingerDescriptor> buffer=withBuffer?viewManagers[peer].createBuffer():Collections.<FingerDescriptor>emptyList();
+                getPartition(peer).send(type, peer, ((IntegerNetworkAddress)destination).getIntValue(), buffer);
+            }
+            public void merge(List<FingerDescriptor> buffer){
+                viewManagers[peer].select(buffer);
+            }
+            public boolean accept(NetworkAddress source){
+                return true;
+            }
+        };
+    }
+
+    /**
+	 * The peers of a worker with their pending events and the messages to the
+     * peers of the other partitions.
+	 */
+    private class Partition{
+
+        private final PriorityQueue<Event> queue;
+        private final List<List<Event>> outboxes;
+        private double windowEnd;
+        private double runEnd;
+        private double now;
+        private long events;
+        private long messages;
+
+        private Partition(int partitions){
+            this.queue=new PriorityQueue<Event>(11, new Comparator<Event>(){
+                public int compare(Event a, Event b){
+                    if(a.time!=b.time){
+                        return Double.compare(a.time, b.time);
+                    }
+                    if(a.source!=b.source){
+                        return Integer.compare(a.source, b.source);
+                    }
+                    return Long.compare(a.sequence, b.sequence);
+                }
+            });
+            this.outboxes=new ArrayList<List<Event>>(partitions);
+            for(int i=0;i<partitions;i++){
+                this.outboxes.add(new ArrayList<Event>());
+            }
+        }
+
+        /**
+		 * Processes the events before the end of the window. The events
+         * caused in the window happen after its end, except for the timers of
+         * the partition.
+		 */
+        private void process(double end){
+            while(!this.queue.isEmpty()&&this.queue.peek().time<end){
+                Event event=this.queue.poll();
+                this.now=event.time;
+                if(event.timer){
+                    this.runActiveState(event);
+                }
+                else{
+                    this.runPassiveState(event);
+                }
+                this.events++;
+            }
+        }
+
+        private void runActiveState(Event event){
+            int peer=event.peer;
+            protocols[peer].runActiveState(true);
+            this.queue.add(new Event(event.time+T-(randoms[peer].nextDouble()-0.5)*T, MessageType.ACTION, peer, peer, sequences[peer]++, null, true));
+        }
+
+        private void runPassiveState(Event event){
+            protocols[event.peer].runPassiveState(event.type, addresses[event.source], event.buffer);
+        }
+
+        private void send(MessageType type, int source, int destination, List<FingerDescriptor> buffer){
+            double latency=lookahead*(1.0+randoms[source].nextDouble());
+            Event message=new Event(this.now+latency, type, destination, source, sequences[source]++, buffer, false);
+            this.outboxes.get(destination%this.outboxes.size()).add(message);
+            this.messages++;
+        }
+    }
+
+    /**
+	 * A timer of the active state or a message to a peer.
+	 */
+    private static class Event{
+
+        private final double time;
+        private final MessageType type;
+        private final int peer;
+        private final int source;
+        private final long sequence;
+        private final List<FingerDescriptor> buffer;
+        private final boolean timer;
+
+        private Event(double time, MessageType type, int peer, int source, long sequence, List<FingerDescriptor> buffer, boolean timer){
+            this.time=time;
+            this.type=type;
+            this.peer=peer;
+            this.source=source;
+            this.sequence=sequence;
+            this.buffer=buffer;
+            this.timer=timer;
+        }
+    }
+}
@@ -0,0 +1,201 @@
+/*
+ * Copyright (C) 2015 Evangelos Pournaras
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+
+package util;
+
+import components.ImmutableDescriptor;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import protopeer.network.NetworkAddress;
+
+/**
+ * Collects the in-degree of the peers, i.e. the number of views that contain
+ * every peer. The in-degrees are counted in a primitive array indexed by the
+ * peer, so a collection costs one integer increment per descriptor of every
+ * view, with no logging per descriptor. The histogram, the mean, the standard
+ * deviation, the maximum and the percentiles are computed from the counts.
+ * The arrays are reused by the next collection.
+ *
+ * @author Evangelos
+ */
+public class InDegreeCollector {
+
+    private final Map<NetworkAddress, Integer> indices;
+    private final int[] inDegrees;
+    private int[] histogram;
+    private int max;
+    private double mean;
+    private double stDev;
+
+    /**
+	 * Creates a collector for the peers with the indices 0 to N-1. The peers
+     * are counted only by their index, since there are no network addresses
+     * to index.
+     *
+     * @param N the number of peers
+	 */
+    public InDegreeCollector(int N){
+        this.indices=null;
+        this.inDegrees=new int[N];
+        this.histogram=new int[1];
+    }
+
+    /**
+	 * Creates a collector for the peers with the given network addresses,
+     * indexed in the order of the list.
+     *
+     * @param peers the network addresses of the peers
+	 */
+    public InDegreeCollector(List<NetworkAddress> peers){
+        this.indices=new HashMap<NetworkAddress, Integer>();
+        for(NetworkAddress peer:peers){
+            this.indices.put(peer, this.indices.size());
+        }
+        this.inDegrees=new int[this.indices.size()];
+        this.histogram=new int[1];
+    }
+
+    /**
+	 * Sets the in-degrees to zero before a new collection.
+	 */
+    public void reset(){
+        for(int i=0;i<this.inDegrees.length;i++){
+            this.inDegrees[i]=0;
+        }
+    }
+
+    /**
+	 * Counts a view that contains a peer.
+     *
+     * @param peer the index of the peer
+	 */
+    public void count(int peer){
+        this.inDegrees[peer]++;
+    }
+
+    /**
+	 * Counts a view that contains a peer. Unknown peers are ignored.
+     *
+     * @param peer the network address of the peer
+     * @throws IllegalStateException if the collector was created without the
+     * network addresses of the peers
+	 */
+    public void count(NetworkAddress peer){
+        if(this.indices==null){
+            throw new IllegalStateException("The peers are counted by their index, as the collector was created without their network addresses");
+        }
+        Integer index=this.indices.get(peer);
+        if(index!=null){
+            this.inDegrees[index]++;
+        }
+    }
+
+    /**
+	 * Sets the in-degree of a peer counted elsewhere, e.g. in a log.
+     *
+     * @param peer the index of the peer
+     * @param inDegree the in-degree of the peer
+	 */
+    public void set(int peer, int inDegree){
+        this.inDegrees[peer]=inDegree;
+    }
+
+    /**
+	 * Counts the descriptors of a view.
+     *
+     * @param view the descriptors of the view
+     * @throws IllegalStateException if the collector was created without the
+     * network addresses of the peers
+	 */
+    public void countView(Collection<ImmutableDescriptor> view){
+        for(ImmutableDescriptor neighbor:view){
+            this.count(neighbor.getNetworkAddress());
+        }
+    }
+
+    /**
+	 * Computes the histogram and the statistics of the collected in-degrees.
+	 */
+    public void compute(){
+        int N=this.inDegrees.length;
+        long sum=0;
+        this.max=0;
+        for(int inDegree:this.inDegrees){
+            sum+=inDegree;
+            this.max=Math.max(this.max, inDegree);
+        }
+        this.mean=N>0?(double)sum/N:0.0;
+        if(this.histogram.length<=this.max){
+            this.histogram=new int[Math.max(this.max+1, 2*this.histogram.length)];
+        }
+        for(int i=0;i<this.histogram.length;i++){
+            this.histogram[i]=0;
+        }
+        double squares=0.0;
+        for(int inDegree:this.inDegrees){
+            squares+=(inDegree-this.mean)*(inDegree-this.mean);
+            this.histogram[inDegree]++;
+        }
+        this.stDev=N>0?Math.sqrt(squares/N):0.0;
+    }
+
+    /**
+	 * Returns the in-degree of the given percentile, i.e. the smallest
+     * in-degree that at least the given proportion of the peers does not
+     * exceed.
+     *
+     * @param p the percentile between 0 and 100
+	 */
+    public int getPercentile(double p){
+        long rank=Math.max(1, (long)Math.ceil(p/100.0*this.inDegrees.length));
+        long peers=0;
+        for(int i=0;i<=this.max;i++){
+            peers+=this.histogram[i];
+            if(peers>=rank){
+                return i;
+            }
+        }
+        return this.max;
+    }
+
+    /**
+	 * Returns the number of peers with every in-degree up to the maximum. The
+     * array can be longer than the maximum plus one.
+	 */
+    public int[] getHistogram(){
+        return this.histogram;
+    }
+
+    public int[] getInDegrees(){
+        return this.inDegrees;
+    }
+
+    public int getMax(){
+        return this.max;
+    }
+
+    public double getMean(){
+        return this.mean;
+    }
+
+    public double getStDev(){
+        return this.stDev;
+    }
+}
@@ -0,0 +1,139 @@
+/*
+ * Copyright (C) 2015 Evangelos Pournaras
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+
+package util;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import org.apache.log4j.Logger;
+
+/**
+ * Executes the tasks of a peer one at a time and in the order they are
+ * offered, on the threads of an executor shared by many peers. At most one
+ * task of the peer is in the executor at any time, so the tasks of a peer are
+ * serialized without holding a thread while the peer has nothing to do. A
+ * thread runs a limited number of tasks of the peer before it is handed back
+ * to the executor, so a busy peer does not hold a thread from the other peers.
+ * The queue of the peer is bounded: a task offered to a full queue is
+ * rejected and the caller decides how to handle it.
+ *
+ * @author Evangelos
+ */
+public class SerialExecutor {
+
+    private final static Logger logger=Logger.getLogger(SerialExecutor.class);
+    private final static int tasksPerRun=16;
+
+    private final Executor executor;
+    private final int capacity;
+    private final Deque<Runnable> tasks;
+    private final Runnable runner;
+    private boolean running;
+
+    /**
+	 * Creates a serial executor on a shared executor.
+     *
+     * @param executor the shared executor
+     * @param capacity the maximum number of queued tasks
+	 */
+    public SerialExecutor(Executor executor, int capacity){
+        this.executor=executor;
+        this.capacity=capacity;
+        this.tasks=new ArrayDeque<Runnable>();
+        this.runner=new Runnable(){
+            public void run(){
+                runTasks();
+            }
+        };
+    }
+
+    /**
+	 * Queues a task. It returns immediately, so the caller never runs or
+     * waits for the task.
+     *
+     * @param task the task
+     * @return false if the queue is full or the executor is shut down. The
+     * queued tasks are dropped when the executor is shut down.
+	 */
+    public boolean offer(Runnable task){
+        synchronized(this.tasks){
+            if(this.tasks.size()>=this.capacity){
+                return false;
+            }
+            this.tasks.add(task);
+            if(this.running){
+                return true;
+            }
+            this.running=true;
+        }
+        try{
+            this.executor.execute(this.runner);
+            return true;
+        }
+        catch(RejectedExecutionException e){
+            synchronized(this.tasks){
+                this.tasks.clear();
+                this.running=false;
+            }
+            return false;
+        }
+    }
+
+    /**
+	 * Returns the number of queued tasks.
+	 */
+    public int size(){
+        synchronized(this.tasks){
+            return this.tasks.size();
+        }
+    }
+
+    /**
+	 * Runs up to <code>tasksPerRun</code> tasks and hands the runner back to
+     * the executor if there are more.
+	 */
+    private void runTasks(){
+        for(int i=0;i<tasksPerRun;i++){
+            Runnable task;
+            synchronized(this.tasks){
+                task=this.tasks.poll();
+                if(task==null){
+                    this.running=false;
+                    return;
+                }
+            }
+            try{
+                task.run();
+            }
+            catch(RuntimeException e){
+                logger.error("Serial task failed", e);
+            }
+        }
+        try{
+            this.executor.execute(this.runner);
+        }
+        catch(RejectedExecutionException e){
+            synchronized(this.tasks){
+                this.tasks.clear();
+                this.running=false;
+            }
+        }
+    }
+}
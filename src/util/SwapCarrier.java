@@ -0,0 +1,51 @@
+/*
+ * Copyright (C) 2015 Evangelos Pournaras
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+
+package util;
+
+/**
+ * A message of another peerlet that can carry a <code>SwapMessage</code> of
+ * the Peer Sampling Service, so that the gossiping rides on the existing
+ * traffic instead of separate messages. The Peer Sampling Service attaches a
+ * swap message to an outgoing carrier in its <code>handleOutgoingMessage</code>
+ * when the destination is in its view and the swap of the current period has
+ * not been performed yet. It extracts the swap message from an incoming
+ * carrier in its <code>handleIncomingMessage</code>. The sender of the
+ * carrier is the sender of the swap message.
+ *
+ * A carrier that is serialized has to serialize the attached swap message as
+ * well, e.g. with the <code>SwapMessageCodec</code> or as a serializable
+ * field. A carrier must not be sent again with the attached swap message,
+ * since the receiver owns the swap message.
+ *
+ * @author Evangelos
+ */
+public interface SwapCarrier {
+
+    /**
+	 * Returns the attached swap message or null if there is none.
+	 */
+    public SwapMessage getSwapMessage();
+
+    /**
+	 * Attaches a swap message to the carrier.
+     *
+     * @param swapMessage the attached swap message
+	 */
+    public void setSwapMessage(SwapMessage swapMessage);
+}
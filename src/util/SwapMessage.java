@@ -19,18 +19,59 @@
 package util;
 
 import enums.MessageType;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
 import java.util.List;
 import dsutil.protopeer.FingerDescriptor;
 import protopeer.network.Message;
+import protopeer.util.LightweightObjectInputStream;
+import protopeer.util.LightweightObjectOutputStream;
+import protopeer.util.LightweightSerializable;
 
 /**
  * The message used for the Peer Sampling Service. The extra information is the
  * type of gossip message (ACTION or REACTION) and the buffer with the
- * <code>FingerDescriptor</code>s. 
+ * <code>FingerDescriptor</code>s. Both are written in the compact format of
+ * the <code>SwapMessageCodec</code> by the Java and the lightweight
+ * serialization.
+ *
+ * A delta encoded message has a sequence number and references. The buffer
+ * then holds only the descriptors sent in full. For every position of the
+ * complete buffer, the references hold -1 for the next descriptor sent in
+ * full or the reference to a descriptor of the last buffers exchanged with
+ * the receiver, whose age is in the ages. The bases are the sequence numbers
+ * of the last buffer sent to and received from the receiver. The message is
+ * decoded by the <code>PartnerDigests</code> of the receiver.
  *
  * @author Evangelos
  */
-public class SwapMessage extends Message{
-    public MessageType type;
-    public List<FingerDescriptor> buffer;
+public class SwapMessage extends Message implements LightweightSerializable{
+    public transient MessageType type;
+    public transient List<FingerDescriptor> buffer;
+    public transient int sequence;
+    public transient int sentBase;
+    public transient int receivedBase;
+    public transient int[] references;
+    public transient double[] ages;
+
+    private void writeObject(ObjectOutputStream out) throws IOException{
+        out.defaultWriteObject();
+        SwapMessageCodec.encode(this, out);
+    }
+
+    private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException{
+        in.defaultReadObject();
+        SwapMessageCodec.decode(in, this);
+    }
+
+    public void serialize(LightweightObjectOutputStream out) throws IOException{
+        this.baseMessageSerialize(out);
+        SwapMessageCodec.encode(this, out);
+    }
+
+    public void deserialize(LightweightObjectInputStream in) throws IOException{
+        this.baseMessageDeserialize(in);
+        SwapMessageCodec.decode(in, this);
+    }
 }
@@ -0,0 +1,562 @@
+/*
+ * Copyright (C) 2015 Evangelos Pournaras
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+
+package util;
+
+import dsutil.protopeer.FingerDescriptor;
+import enums.FingerDescriptorTypes;
+import enums.MessageType;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.OutputStream;
+import java.io.Serializable;
+import java.net.Inet4Address;
+import java.net.Inet6Address;
+import java.net.InetAddress;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import protopeer.Finger;
+import protopeer.PeerIdentifier;
+import protopeer.RingIdentifier;
+import protopeer.network.IntegerNetworkAddress;
+import protopeer.network.NetworkAddress;
+import protopeer.network.mina.MinaAddress;
+
+/**
+ * The compact binary format of the <code>SwapMessage</code>. It replaces the
+ * default Java serialization of the message type and the buffer, which writes
+ * class descriptors, a map of descriptors and boxed ages for every neighbor.
+ * The format is the following:
+ *
+ * type byte (with the delta flag), for delta encoded messages the varint
+ * sequence number, bases and number of references followed by every varint
+ * reference + 1 and the age of the referenced descriptors, varint number of
+ * descriptors + 1 (0 for no buffer), and for every descriptor:
+ * header byte (address kind << 4 | identifier kind), address, identifier,
+ * varint number of descriptor types and for every type its varint ID
+ * followed by its value.
+ *
+ * Integer addresses are written as zigzag varints and MINA addresses as 4 or
+ * 16 bytes of IPv4 or IPv6 followed by a 2 bytes port. Ring identifiers are
+ * written as 8 bytes. Whole numbers, e.g. the ages, are written as zigzag
+ * varints. Descriptor types are written as the IDs they are registered with.
+ * The IDs are given explicitly, so that they do not depend on the order in
+ * which the peers register their types, and a registration that collides with
+ * another type or ID is rejected. Unregistered types and other kinds of
+ * addresses, identifiers and values fall back to their names or to Java
+ * serialization.
+ *
+ * The counts and lengths read from the input are checked against limits
+ * before anything is allocated, so that a malformed or hostile message fails
+ * with an <code>IOException</code>.
+ *
+ * @author Evangelos
+ */
+public class SwapMessageCodec {
+
+    private final static int NULL_TYPE=0x3F;
+    private final static int DELTA_FLAG=0x40;
+
+    private final static int INTEGER_ADDRESS=0;
+    private final static int IPV4_ADDRESS=1;
+    private final static int IPV6_ADDRESS=2;
+    private final static int SERIALIZED_ADDRESS=3;
+
+    private final static int RING_IDENTIFIER=0;
+    private final static int SERIALIZED_IDENTIFIER=1;
+
+    private final static int NULL_VALUE=0;
+    private final static int WHOLE_DOUBLE_VALUE=1;
+    private final static int DOUBLE_VALUE=2;
+    private final static int INTEGER_VALUE=3;
+    private final static int LONG_VALUE=4;
+    private final static int FALSE_VALUE=5;
+    private final static int TRUE_VALUE=6;
+    private final static int STRING_VALUE=7;
+    private final static int SERIALIZED_VALUE=8;
+
+    private final static int UNREGISTERED_TYPE=0;
+    private final static int AGE_TYPE=1;
+
+    private final static int MAX_DESCRIPTORS=1<<16;
+    private final static int MAX_DESCRIPTOR_TYPES=1<<10;
+    private final static int MAX_SERIALIZED_BYTES=1<<20;
+
+    private final static Map<Enum<?>, Integer> typeIDs=new HashMap<Enum<?>, Integer>();
+    private final static Map<Integer, Enum<?>> types=new HashMap<Integer, Enum<?>>();
+    private final static ThreadLocal<CountingOutput> counters=new ThreadLocal<CountingOutput>(){
+        @Override
+        protected CountingOutput initialValue(){
+            return new CountingOutput();
+        }
+    };
+
+    static{
+        registerDescriptor(FingerDescriptorTypes.AGE, AGE_TYPE);
+    }
+
+    /**
+	 * Registers a descriptor type with an ID, so that it is written as the ID
+     * instead of its class and constant names. All peers have to register a
+     * type with the same ID. The ID 1 is used by the AGE. Registering a type
+     * twice with the same ID has no effect.
+     *
+     * @param type the registered descriptor type
+     * @param id the positive ID of the type
+     * @throws IllegalArgumentException if the ID is not positive or the type
+     * or the ID is already registered with another ID or type
+	 */
+    public static synchronized void registerDescriptor(Enum<?> type, int id){
+        if(id<=UNREGISTERED_TYPE){
+            throw new IllegalArgumentException("Not positive descriptor type ID "+id);
+        }
+        Integer registeredID=typeIDs.get(type);
+        Enum<?> registeredType=types.get(id);
+        if(registeredID!=null&&registeredID!=id){
+            throw new IllegalArgumentException("Descriptor type "+type+" is registered with ID "+registeredID);
+        }
+        if(registeredType!=null&&registeredType!=type){
+            throw new IllegalArgumentException("Descriptor type ID "+id+" is registered for "+registeredType);
+        }
+        typeIDs.put(type, id);
+        types.put(id, type);
+    }
+
+    private static synchronized Integer getTypeID(Enum<?> type){
+        return typeIDs.get(type);
+    }
+
+    private static synchronized Enum<?> getType(int id) throws IOException{
+        Enum<?> type=types.get(id);
+        if(type==null){
+            throw new IOException("Unregistered descriptor type ID "+id);
+        }
+        return type;
+    }
+
+    /**
+	 * Writes the type and the buffer of a message.
+     *
+     * @param message the written message
+     * @param out the output
+	 */
+    public static void encode(SwapMessage message, DataOutput out) throws IOException{
+        int type=message.type==null?NULL_TYPE:message.type.ordinal();
+        if(message.references!=null){
+            out.writeByte(type|DELTA_FLAG);
+            writeVarint(out, message.sequence);
+            writeVarint(out, message.sentBase);
+            writeVarint(out, message.receivedBase);
+            writeVarint(out, message.references.length);
+            int referenced=0;
+            for(int reference:message.references){
+                writeVarint(out, reference+1);
+                if(reference>=0){
+                    writeDouble(out, message.ages[referenced++]);
+                }
+            }
+        }
+        else{
+            out.writeByte(type);
+        }
+        if(message.buffer==null){
+            writeVarint(out, 0);
+            return;
+        }
+        writeVarint(out, message.buffer.size()+1);
+        for(FingerDescriptor descriptor:message.buffer){
+            writeDescriptor(out, descriptor);
+        }
+    }
+
+    /**
+	 * Reads the type and the buffer of a message.
+     *
+     * @param in the input
+     * @param message the message whose type and buffer are read
+	 */
+    public static void decode(DataInput in, SwapMessage message) throws IOException{
+        int type=in.readUnsignedByte();
+        if((type&NULL_TYPE)!=NULL_TYPE&&(type&NULL_TYPE)>=MessageType.values().length){
+            throw new IOException("Unknown message type "+(type&NULL_TYPE));
+        }
+        message.type=(type&NULL_TYPE)==NULL_TYPE?null:MessageType.values()[type&NULL_TYPE];
+        message.references=null;
+        message.ages=null;
+        if((type&DELTA_FLAG)!=0){
+            message.sequence=(int)readVarint(in);
+            message.sentBase=(int)readVarint(in);
+            message.receivedBase=(int)readVarint(in);
+            int[] references=new int[readLength(in, MAX_DESCRIPTORS)];
+            double[] ages=new double[references.length];
+            int referenced=0;
+            for(int i=0;i<references.length;i++){
+                references[i]=readLength(in, Integer.MAX_VALUE)-1;
+                if(references[i]>=0){
+                    Object age=readValue(in);
+                    if(!(age instanceof Double)){
+                        throw new IOException("Not a double age of reference "+i);
+                    }
+                    ages[referenced++]=(Double)age;
+                }
+            }
+            message.references=references;
+            message.ages=Arrays.copyOf(ages, referenced);
+        }
+        int size=readLength(in, MAX_DESCRIPTORS+1)-1;
+        if(message.references!=null&&size!=message.references.length-message.ages.length){
+            throw new IOException("Buffer of "+size+" descriptors for "+(message.references.length-message.ages.length)+" full references");
+        }
+        if(size<0){
+            message.buffer=null;
+            return;
+        }
+        message.buffer=new ArrayList<FingerDescriptor>(size);
+        for(int i=0;i<size;i++){
+            message.buffer.add(readDescriptor(in));
+        }
+    }
+
+    /**
+	 * Returns the number of bytes of a message in the compact format, or -1 if
+     * the message cannot be encoded, e.g. because of a descriptor value that
+     * is not serializable. The message is written to a counting output of the
+     * thread, which is reused.
+     *
+     * @param message the measured message
+	 */
+    public static int getEncodedSize(SwapMessage message){
+        CountingOutput out=counters.get();
+        out.reset();
+        try{
+            encode(message, out);
+        }
+        catch(IOException e){
+            return -1;
+        }
+        return out.size();
+    }
+
+    @SuppressWarnings("rawtypes")
+    private static void writeDescriptor(DataOutput out, FingerDescriptor descriptor) throws IOException{
+        NetworkAddress address=descriptor.getNetworkAddress();
+        PeerIdentifier identifier=descriptor.getPeerIdentifier();
+        int addressKind=SERIALIZED_ADDRESS;
+        if(address instanceof IntegerNetworkAddress){
+            addressKind=INTEGER_ADDRESS;
+        }
+        else if(address instanceof MinaAddress){
+            InetAddress inetAddress=((MinaAddress)address).getInetAddress();
+            if(inetAddress instanceof Inet4Address){
+                addressKind=IPV4_ADDRESS;
+            }
+            else if(inetAddress instanceof Inet6Address){
+                addressKind=IPV6_ADDRESS;
+            }
+        }
+        int identifierKind=identifier instanceof RingIdentifier?RING_IDENTIFIER:SERIALIZED_IDENTIFIER;
+        out.writeByte(addressKind<<4|identifierKind);
+        switch(addressKind){
+            case INTEGER_ADDRESS:
+                writeVarint(out, zigzag(((IntegerNetworkAddress)address).getIntValue()));
+                break;
+            case IPV4_ADDRESS:
+            case IPV6_ADDRESS:
+                MinaAddress minaAddress=(MinaAddress)address;
+                out.write(minaAddress.getInetAddress().getAddress());
+                out.writeShort(minaAddress.getPort());
+                break;
+            default:
+                writeSerialized(out, address);
+        }
+        if(identifierKind==RING_IDENTIFIER){
+            out.writeDouble(((RingIdentifier)identifier).getPosition());
+        }
+        else{
+            writeSerialized(out, identifier);
+        }
+        Map<Enum, Object> descriptors=descriptor.getDescriptors();
+        writeVarint(out, descriptors.size());
+        for(Map.Entry<Enum, Object> entry:descriptors.entrySet()){
+            writeType(out, entry.getKey());
+            writeValue(out, entry.getValue());
+        }
+    }
+
+    private static FingerDescriptor readDescriptor(DataInput in) throws IOException{
+        int header=in.readUnsignedByte();
+        NetworkAddress address;
+        switch(header>>4){
+            case INTEGER_ADDRESS:
+                address=new IntegerNetworkAddress((int)unzigzag(readVarint(in)));
+                break;
+            case IPV4_ADDRESS:
+            case IPV6_ADDRESS:
+                byte[] bytes=new byte[(header>>4)==IPV4_ADDRESS?4:16];
+                in.readFully(bytes);
+                address=new MinaAddress(InetAddress.getByAddress(bytes), in.readUnsignedShort());
+                break;
+            default:
+                address=readSerialized(in, NetworkAddress.class);
+        }
+        PeerIdentifier identifier;
+        if((header&0xF)==RING_IDENTIFIER){
+            identifier=new RingIdentifier(in.readDouble());
+        }
+        else{
+            identifier=readSerialized(in, PeerIdentifier.class);
+        }
+        FingerDescriptor descriptor=new FingerDescriptor(new Finger(address, identifier));
+        int descriptors=readLength(in, MAX_DESCRIPTOR_TYPES);
+        for(int i=0;i<descriptors;i++){
+            Enum<?> type=readType(in);
+            descriptor.addDescriptor(type, readValue(in));
+        }
+        return descriptor;
+    }
+
+    private static void writeType(DataOutput out, Enum<?> type) throws IOException{
+        Integer id=getTypeID(type);
+        if(id!=null){
+            writeVarint(out, id);
+        }
+        else{
+            writeVarint(out, UNREGISTERED_TYPE);
+            out.writeUTF(type.getDeclaringClass().getName());
+            out.writeUTF(type.name());
+        }
+    }
+
+    /**
+	 * Reads a registered type by its ID, or an unregistered type by its class
+     * and constant names. The class is loaded without being initialized and
+     * it is used only if it is an enum, so that a malformed or hostile name
+     * fails with an <code>IOException</code>.
+	 */
+    private static Enum<?> readType(DataInput in) throws IOException{
+        int id=readLength(in, Integer.MAX_VALUE);
+        if(id!=UNREGISTERED_TYPE){
+            return getType(id);
+        }
+        String className=in.readUTF();
+        String name=in.readUTF();
+        Class<?> typeClass;
+        try{
+            typeClass=Class.forName(className, false, SwapMessageCodec.class.getClassLoader());
+        }
+        catch(ClassNotFoundException e){
+            throw new IOException("Unknown descriptor type "+className, e);
+        }
+        catch(LinkageError e){
+            throw new IOException("Unknown descriptor type "+className, e);
+        }
+        if(!typeClass.isEnum()){
+            throw new IOException("Not an enum descriptor type "+className);
+        }
+        for(Object constant:typeClass.getEnumConstants()){
+            Enum<?> type=(Enum<?>)constant;
+            if(type.name().equals(name)){
+                return type;
+            }
+        }
+        throw new IOException("Unknown descriptor type "+className+"."+name);
+    }
+
+    private static void writeValue(DataOutput out, Object value) throws IOException{
+        if(value==null){
+            out.writeByte(NULL_VALUE);
+        }
+        else if(value instanceof Double){
+            writeDouble(out, (Double)value);
+        }
+        else if(value instanceof Integer){
+            out.writeByte(INTEGER_VALUE);
+            writeVarint(out, zigzag((Integer)value));
+        }
+        else if(value instanceof Long){
+            out.writeByte(LONG_VALUE);
+            writeVarint(out, zigzag((Long)value));
+        }
+        else if(value instanceof Boolean){
+            out.writeByte((Boolean)value?TRUE_VALUE:FALSE_VALUE);
+        }
+        else if(value instanceof String){
+            out.writeByte(STRING_VALUE);
+            out.writeUTF((String)value);
+        }
+        else{
+            out.writeByte(SERIALIZED_VALUE);
+            writeSerialized(out, value);
+        }
+    }
+
+    /**
+	 * Writes a double as a zigzag varint if it is a whole number, e.g. an age,
+     * and as 8 bytes otherwise. It is read by <code>readValue</code>.
+	 */
+    private static void writeDouble(DataOutput out, double number) throws IOException{
+        if(number==Math.rint(number)&&Math.abs(number)<=1L<<53&&!(number==0.0&&1/number<0)){
+            out.writeByte(WHOLE_DOUBLE_VALUE);
+            writeVarint(out, zigzag((long)number));
+        }
+        else{
+            out.writeByte(DOUBLE_VALUE);
+            out.writeDouble(number);
+        }
+    }
+
+    private static Object readValue(DataInput in) throws IOException{
+        int kind=in.readByte();
+        switch(kind){
+            case NULL_VALUE:
+                return null;
+            case WHOLE_DOUBLE_VALUE:
+                return (double)unzigzag(readVarint(in));
+            case DOUBLE_VALUE:
+                return in.readDouble();
+            case INTEGER_VALUE:
+                return (int)unzigzag(readVarint(in));
+            case LONG_VALUE:
+                return unzigzag(readVarint(in));
+            case FALSE_VALUE:
+                return false;
+            case TRUE_VALUE:
+                return true;
+            case STRING_VALUE:
+                return in.readUTF();
+            case SERIALIZED_VALUE:
+                return readSerialized(in);
+            default:
+                throw new IOException("Unknown descriptor value kind "+kind);
+        }
+    }
+
+    /**
+	 * Writes an object with Java serialization, prefixed by the varint length
+     * of its bytes.
+	 */
+    private static void writeSerialized(DataOutput out, Object object) throws IOException{
+        if(!(object instanceof Serializable)){
+            throw new IOException("Not serializable descriptor value "+object);
+        }
+        ByteArrayOutputStream bytes=new ByteArrayOutputStream();
+        ObjectOutputStream objectOut=new ObjectOutputStream(bytes);
+        objectOut.writeObject(object);
+        objectOut.close();
+        writeVarint(out, bytes.size());
+        out.write(bytes.toByteArray());
+    }
+
+    /**
+	 * Reads an object with Java serialization and checks that it is of the
+     * expected class.
+	 */
+    private static <T> T readSerialized(DataInput in, Class<T> type) throws IOException{
+        Object object=readSerialized(in);
+        if(!type.isInstance(object)){
+            throw new IOException("Not a "+type.getSimpleName()+": "+object);
+        }
+        return type.cast(object);
+    }
+
+    private static Object readSerialized(DataInput in) throws IOException{
+        byte[] bytes=new byte[readLength(in, MAX_SERIALIZED_BYTES)];
+        in.readFully(bytes);
+        ObjectInputStream objectIn=new ObjectInputStream(new ByteArrayInputStream(bytes));
+        try{
+            return objectIn.readObject();
+        }
+        catch(ClassNotFoundException e){
+            throw new IOException("Unknown serialized class", e);
+        }
+        finally{
+            objectIn.close();
+        }
+    }
+
+    private static long zigzag(long value){
+        return (value<<1)^(value>>63);
+    }
+
+    private static long unzigzag(long value){
+        return (value>>>1)^-(value&1);
+    }
+
+    private static void writeVarint(DataOutput out, long value) throws IOException{
+        while((value&~0x7FL)!=0){
+            out.writeByte((int)((value&0x7F)|0x80));
+            value>>>=7;
+        }
+        out.writeByte((int)value);
+    }
+
+    private static long readVarint(DataInput in) throws IOException{
+        long value=0;
+        for(int shift=0;shift<64;shift+=7){
+            int b=in.readUnsignedByte();
+            value|=(long)(b&0x7F)<<shift;
+            if((b&0x80)==0){
+                return value;
+            }
+        }
+        throw new IOException("Malformed varint");
+    }
+
+    /**
+	 * Reads a varint count or length and checks that it is not larger than the
+     * given limit.
+	 */
+    private static int readLength(DataInput in, int max) throws IOException{
+        long length=readVarint(in);
+        if(length<0||length>max){
+            throw new IOException("Count "+length+" out of the range [0, "+max+"]");
+        }
+        return (int)length;
+    }
+
+    /**
+	 * An output that only counts the written bytes.
+	 */
+    private static class CountingOutput extends DataOutputStream{
+
+        private CountingOutput(){
+            super(new OutputStream(){
+                @Override
+                public void write(int b){
+                }
+
+                @Override
+                public void write(byte[] b, int offset, int length){
+                }
+            });
+        }
+
+        private void reset(){
+            this.written=0;
+        }
+    }
+}
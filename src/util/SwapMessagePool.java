@@ -0,0 +1,124 @@
+/*
+ * Copyright (C) 2015 Evangelos Pournaras
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+
+package util;
+
+import dsutil.protopeer.FingerDescriptor;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+
+/**
+ * A pool of <code>SwapMessage</code>s and buffer lists of a peer. It is used
+ * in simulations where the messages are not serialized. A sent message is
+ * copied shallowly by the peer, so the copy delivered to the receiver shares
+ * the buffer list of the message of the sender. The ownership is the
+ * following:
+ *
+ * 1. A message acquired from the pool is owned by the sender until it is sent.
+ * 2. After sending it, the sender returns the message with
+ * <code>recycleSent</code>. The buffer list is detached and now belongs only
+ * to the copy, so just the message object is reused.
+ * 3. The copy and its buffer list are owned by the receiver, which returns
+ * them with <code>release</code> after the buffer is merged. The list is
+ * cleared and reused, but the descriptors it contained are not: they are owned
+ * by the view of the receiver after the selection. Other peerlets must not
+ * keep references to swap messages.
+ * 4. A message attached to a <code>SwapCarrier</code> is not copied, since
+ * the carrier is copied instead. It is neither recycled by the sender nor
+ * released by the receiver.
+ * 5. Messages lost by the network are not returned and are garbage collected.
+ *
+ * @author Evangelos
+ */
+public class SwapMessagePool {
+
+    private final Deque<SwapMessage> messages;
+    private final Deque<List<FingerDescriptor>> buffers;
+    private final int capacity;
+
+    /**
+	 * Creates an empty pool.
+     *
+     * @param capacity the maximum number of pooled messages and of pooled
+     * buffer lists
+	 */
+    public SwapMessagePool(int capacity){
+        this.messages=new ArrayDeque<SwapMessage>(capacity);
+        this.buffers=new ArrayDeque<List<FingerDescriptor>>(capacity);
+        this.capacity=capacity;
+    }
+
+    /**
+	 * Returns a pooled message or a new one, with an empty buffer.
+	 */
+    public synchronized SwapMessage acquire(){
+        SwapMessage message=this.messages.poll();
+        if(message==null){
+            message=new SwapMessage();
+        }
+        message.buffer=this.buffers.poll();
+        if(message.buffer==null){
+            message.buffer=new ArrayList<FingerDescriptor>();
+        }
+        return message;
+    }
+
+    /**
+	 * Returns a sent message to the pool without its buffer list, which is
+     * shared with the copy delivered to the receiver.
+     *
+     * @param message the sent message
+	 */
+    public synchronized void recycleSent(SwapMessage message){
+        message.buffer=null;
+        this.recycle(message);
+    }
+
+    /**
+	 * Returns a received message and its buffer list to the pool after its
+     * buffer has been merged.
+     *
+     * @param message the processed message
+	 */
+    public synchronized void release(SwapMessage message){
+        if(message.buffer!=null&&this.buffers.size()<this.capacity){
+            message.buffer.clear();
+            this.buffers.push(message.buffer);
+        }
+        message.buffer=null;
+        this.recycle(message);
+    }
+
+    private void recycle(SwapMessage message){
+        if(this.messages.size()>=this.capacity){
+            return;
+        }
+        message.type=null;
+        message.sequence=0;
+        message.sentBase=0;
+        message.receivedBase=0;
+        message.references=null;
+        message.ages=null;
+        message.setSourceAddress(null);
+        message.setDestinationAddress(null);
+        message.setSize(null);
+        this.messages.push(message);
+    }
+}
@@ -0,0 +1,258 @@
+/*
+ * Copyright (C) 2015 Evangelos Pournaras
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+
+package util;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import org.apache.log4j.Logger;
+
+/**
+ * A hashed timing wheel that schedules the active states of many Peer
+ * Sampling Service instances hosted in one JVM in live runs. The time is
+ * divided in ticks and the wheel has a bucket for every tick of one rotation.
+ * A task is put in the bucket of the tick of its deadline, with the number of
+ * rotations it has to wait. A single ticker thread advances the wheel every
+ * tick and collects all the tasks due in that tick in one batch. The batch is
+ * split in equal parts that are executed by a pool of worker threads, so the
+ * ticker never executes the tasks itself and a slow task does not delay the
+ * other firings of the tick more than its part of the batch.
+ *
+ * Scheduling and cancelling are thread-safe and cost O(1). New tasks are
+ * handed over to the ticker in a concurrent queue, so the buckets are accessed
+ * only by the ticker thread. A task fires at most one tick late, plus the time
+ * the workers need to reach it in its batch.
+ *
+ * @author Evangelos
+ */
+public class TimingWheel {
+
+    private final static Logger logger=Logger.getLogger(TimingWheel.class);
+
+    private final long tickNanos;
+    private final List<List<Timeout>> wheel;
+    private final int mask;
+    private final Queue<Timeout> pending;
+    private final ExecutorService executor;
+    private final int workers;
+    private final Thread ticker;
+    private volatile boolean running;
+    private long startTime;
+    private long tick;
+
+    /**
+	 * A task scheduled in the wheel. It can be cancelled before it fires.
+	 */
+    public static class Timeout {
+
+        private final Runnable task;
+        private final long deadline;
+        private long rotations;
+        private volatile boolean cancelled;
+
+        private Timeout(Runnable task, long deadline){
+            this.task=task;
+            this.deadline=deadline;
+        }
+
+        /**
+    	 * Cancels the task if it has not fired yet.
+    	 */
+        public void cancel(){
+            this.cancelled=true;
+        }
+
+        public boolean isCancelled(){
+            return this.cancelled;
+        }
+
+        /**
+    	 * Returns the deadline of the task in the time of
+         * <code>System.nanoTime()</code>.
+    	 */
+        public long getDeadline(){
+            return this.deadline;
+        }
+    }
+
+    /**
+	 * Creates the timing wheel. It has to be started with
+     * <code>start()</code>.
+     *
+     * @param tickDuration the duration of a tick in milliseconds
+     * @param wheelSize the number of buckets, rounded up to a power of two
+     * @param workers the number of worker threads
+	 */
+    public TimingWheel(long tickDuration, int wheelSize, int workers){
+        if(tickDuration<=0||wheelSize<=0||workers<=0){
+            throw new IllegalArgumentException("tick duration, wheel size and workers must be positive");
+        }
+        this.tickNanos=TimeUnit.MILLISECONDS.toNanos(tickDuration);
+        int buckets=Integer.highestOneBit(wheelSize);
+        if(buckets<wheelSize){
+            buckets=buckets<<1;
+        }
+        this.wheel=new ArrayList<List<Timeout>>(buckets);
+        for(int i=0;i<buckets;i++){
+            this.wheel.add(new ArrayList<Timeout>());
+        }
+        this.mask=buckets-1;
+        this.pending=new ConcurrentLinkedQueue<Timeout>();
+        this.workers=workers;
+        this.executor=Executors.newFixedThreadPool(workers);
+        this.ticker=new Thread(new Runnable(){
+            public void run(){
+                runTicker();
+            }
+        }, "TimingWheel");
+        this.ticker.setDaemon(true);
+    }
+
+    /**
+	 * Starts the ticker thread.
+	 */
+    public synchronized void start(){
+        if(!this.running){
+            this.startTime=System.nanoTime();
+            this.running=true;
+            this.ticker.start();
+        }
+    }
+
+    /**
+	 * Stops the ticker and the workers. The tasks that have not fired are
+     * dropped.
+	 */
+    public void stop(){
+        this.running=false;
+        this.ticker.interrupt();
+        try{
+            this.ticker.join();
+        }
+        catch(InterruptedException e){
+            Thread.currentThread().interrupt();
+        }
+        this.executor.shutdown();
+    }
+
+    /**
+	 * Schedules a task after a delay.
+     *
+     * @param task the task
+     * @param delay the delay in milliseconds
+     * @return the scheduled task, which can be cancelled
+	 */
+    public Timeout schedule(Runnable task, double delay){
+        Timeout timeout=new Timeout(task, System.nanoTime()+(long)(delay*1e6));
+        this.pending.add(timeout);
+        return timeout;
+    }
+
+    public int getWorkers(){
+        return this.workers;
+    }
+
+    /**
+	 * Advances the wheel every tick and dispatches the tasks due in the tick.
+	 */
+    private void runTicker(){
+        List<Timeout> batch=new ArrayList<Timeout>();
+        while(this.running){
+            long tickEnd=this.startTime+(this.tick+1)*this.tickNanos;
+            long sleep=tickEnd-System.nanoTime();
+            if(sleep>0){
+                try{
+                    TimeUnit.NANOSECONDS.sleep(sleep);
+                }
+                catch(InterruptedException e){
+                    continue;
+                }
+            }
+            this.transferPending();
+            List<Timeout> bucket=this.wheel.get((int)(this.tick&this.mask));
+            Iterator<Timeout> iterator=bucket.iterator();
+            while(iterator.hasNext()){
+                Timeout timeout=iterator.next();
+                if(timeout.cancelled){
+                    iterator.remove();
+                }
+                else if(timeout.rotations<=0){
+                    iterator.remove();
+                    batch.add(timeout);
+                }
+                else{
+                    timeout.rotations--;
+                }
+            }
+            this.dispatch(batch);
+            batch=new ArrayList<Timeout>();
+            this.tick++;
+        }
+    }
+
+    /**
+	 * Puts the newly scheduled tasks in the buckets of their deadlines. Tasks
+     * with a deadline in the past are put in the current bucket.
+	 */
+    private void transferPending(){
+        Timeout timeout;
+        while((timeout=this.pending.poll())!=null){
+            if(timeout.cancelled){
+                continue;
+            }
+            long ticks=Math.max(this.tick, (timeout.deadline-this.startTime)/this.tickNanos);
+            timeout.rotations=(ticks-this.tick)/this.wheel.size();
+            this.wheel.get((int)(ticks&this.mask)).add(timeout);
+        }
+    }
+
+    /**
+	 * Splits the batch of a tick in one part per worker and submits the parts
+     * to the workers.
+	 */
+    private void dispatch(final List<Timeout> batch){
+        if(batch.isEmpty()){
+            return;
+        }
+        int parts=Math.min(this.workers, batch.size());
+        int size=(batch.size()+parts-1)/parts;
+        for(int from=0;from<batch.size();from+=size){
+            final List<Timeout> part=batch.subList(from, Math.min(from+size, batch.size()));
+            this.executor.execute(new Runnable(){
+                public void run(){
+                    for(Timeout timeout:part){
+                        if(!timeout.cancelled){
+                            try{
+                                timeout.task.run();
+                            }
+                            catch(RuntimeException e){
+                                logger.error("Scheduled task failed", e);
+                            }
+                        }
+                    }
+                }
+            });
+        }
+    }
+}
@@ -0,0 +1,80 @@
+/*
+ * Copyright (C) 2015 Evangelos Pournaras
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+
+package util;
+
+/**
+ * A token bucket that limits the rate of the swaps a peer accepts. The bucket
+ * holds up to a burst of tokens and it is refilled at a constant rate. Every
+ * accepted swap takes a token, so in the long run at most the rate of swaps
+ * is accepted, and a burst of swaps is accepted after a quiet period. The
+ * time is given by the caller, e.g. the clock of the peer, so the bucket works
+ * both in simulations and in live runs.
+ *
+ * @author Evangelos
+ */
+public class TokenBucket {
+
+    private final double rate;
+    private final double burst;
+    private double tokens;
+    private double time;
+
+    /**
+	 * Creates a full bucket.
+     *
+     * @param rate the tokens added per second
+     * @param burst the maximum number of tokens
+	 */
+    public TokenBucket(double rate, double burst){
+        if(rate<=0||burst<1){
+            throw new IllegalArgumentException("the rate must be positive and the burst at least 1");
+        }
+        this.rate=rate;
+        this.burst=burst;
+        this.tokens=burst;
+        this.time=Double.NaN;
+    }
+
+    /**
+	 * Takes a token if there is one, after the bucket is refilled for the time
+     * passed since the last call.
+     *
+     * @param time the current time in milliseconds
+     * @return true if a token was taken
+	 */
+    public synchronized boolean tryAcquire(double time){
+        if(!Double.isNaN(this.time)&&time>this.time){
+            this.tokens=Math.min(this.burst, this.tokens+(time-this.time)*this.rate/1000.0);
+        }
+        this.time=Double.isNaN(this.time)?time:Math.max(this.time, time);
+        if(this.tokens>=1.0){
+            this.tokens-=1.0;
+            return true;
+        }
+        return false;
+    }
+
+    public double getRate(){
+        return this.rate;
+    }
+
+    public double getBurst(){
+        return this.burst;
+    }
+}
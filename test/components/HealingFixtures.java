@@ -0,0 +1,127 @@
+/*
+ * Copyright (C) 2015 Evangelos Pournaras
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+
+
+package components;
+
+import dsutil.protopeer.FingerDescriptor;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import protopeer.Finger;
+import protopeer.RingIdentifier;
+import protopeer.network.IntegerNetworkAddress;
+
+/**
+ * The random views and the insertion sort algorithms of the healing
+ * operations that <code>ViewHealingTest</code> compares with the view.
+ *
+ * @author Evangelos
+ */
+class HealingFixtures {
+
+    /**
+	 * Creates a view of descriptors with ages drawn from a small range, so
+     * that many descriptors have the same age.
+	 */
+    static List<FingerDescriptor> createView(int length, Random random){
+        AgeDescriptorManager ageManager=new AgeDescriptorManager();
+        List<FingerDescriptor> view=new ArrayList<FingerDescriptor>();
+        for(int i=0;i<length;i++){
+            int address=1+random.nextInt(Integer.MAX_VALUE-1);
+            FingerDescriptor descriptor=new FingerDescriptor(new Finger(new IntegerNetworkAddress(address), new RingIdentifier(random.nextDouble())));
+            ageManager.initAge(descriptor);
+            ageManager.setAge(descriptor, 1000.0*random.nextInt(Math.max(1, length/4)));
+            view.add(descriptor);
+        }
+        return view;
+    }
+
+    /**
+	 * The insertion sort algorithm that removed the H oldest items.
+	 */
+    static void removeOldItems(List<FingerDescriptor> view, int H){
+        AgeDescriptorManager ageManager=new AgeDescriptorManager();
+        ArrayList<Integer> sortedIndices=new ArrayList<Integer>();
+        for(int i=0;i<view.size();i++){
+            sortedIndices.add(i);
+        }
+        for(int i=1;i<sortedIndices.size();i++){
+            FingerDescriptor descriptor=view.get(sortedIndices.get(i));
+            for(int j=0;j<i;j++){
+                FingerDescriptor comparedDescriptor=view.get(sortedIndices.get(j));
+                if(ageManager.isOlder(descriptor, comparedDescriptor)){
+                    sortedIndices.add(j, sortedIndices.remove(i));
+                    break;
+                }
+            }
+        }
+        ArrayList<FingerDescriptor> kOldestItems=new ArrayList<FingerDescriptor>();
+        for(int i=0;i<H;i++){
+           kOldestItems.add(view.get(sortedIndices.get(i)));
+        }
+        view.removeAll(kOldestItems);
+    }
+
+    /**
+	 * The insertion sort algorithm that moved the H oldest items at the end.
+     * The original version always removed the first element of the sorted
+     * indices instead of the moved one, so for more than one moved item it
+     * did not move the oldest items. That index is corrected here.
+	 */
+    static void moveOldItemsAtTheEnd(List<FingerDescriptor> view, int c, int H){
+        AgeDescriptorManager ageManager=new AgeDescriptorManager();
+        ArrayList<Integer> sortedIndices=new ArrayList<Integer>();
+        for(int i=0;i<view.size();i++){
+            sortedIndices.add(i);
+        }
+        for(int i=1;i<sortedIndices.size();i++){
+            FingerDescriptor descriptor=view.get(sortedIndices.get(i));
+            for(int j=0;j<i;j++){
+                FingerDescriptor comparedDescriptor=view.get(sortedIndices.get(j));
+                if(ageManager.isOlder(descriptor, comparedDescriptor)){
+                    sortedIndices.add(j, sortedIndices.remove(i));
+                    break;
+                }
+            }
+        }
+        int movedItems=view.size()*H/c;
+        int scannedItems=movedItems;
+        for(int i=0;i<movedItems;i++){
+            int min=Integer.MAX_VALUE;
+            int movedItemIndex=-1;
+            for(int j=0;j<scannedItems;j++){
+                int indexElement=sortedIndices.get(j).intValue();
+                if(indexElement<min){
+                    min=indexElement;
+                    movedItemIndex=j;
+                }
+            }
+            sortedIndices.remove(movedItemIndex);
+            scannedItems--;
+            view.add(view.remove(min));
+            for(int j=0;j<sortedIndices.size();j++){
+                Integer indexToNeighbor=sortedIndices.get(j);
+                if(indexToNeighbor.intValue()>min){
+                    indexToNeighbor=indexToNeighbor.intValue()-1;
+                    sortedIndices.set(j, indexToNeighbor);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,124 @@
+/*
+ * Copyright (C) 2015 Evangelos Pournaras
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+
+
+package components;
+
+import dsutil.protopeer.FingerDescriptor;
+import enums.PeerSelectionPolicy;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import static org.junit.Assert.assertEquals;
+import org.junit.Test;
+import protopeer.Finger;
+import protopeer.RingIdentifier;
+import protopeer.network.IntegerNetworkAddress;
+
+/**
+ * Checks that the healing operations of the view find and handle the same
+ * oldest descriptors as the insertion sort algorithms they replaced, on random
+ * views in which many descriptors have the same age.
+ *
+ * @author Evangelos
+ */
+public class ViewHealingTest {
+
+    private final static int[] viewLengths={1, 2, 20, 50, 200};
+    private final static int checkedViews=200;
+
+    @Test
+    public void selectOldestFindsTheHeadOfAStableSortByAge(){
+        Random random=new Random(1);
+        for(int c:viewLengths){
+            for(int n:new int[]{0, 1, c/2, c-1, c, c+1}){
+                for(int i=0;i<checkedViews;i++){
+                    final AgeDescriptorManager ageManager=new AgeDescriptorManager();
+                    final View view=new View(ageManager);
+                    view.appendUnique(HealingFixtures.createView(c, random), null);
+                    List<Integer> sorted=new ArrayList<Integer>();
+                    for(int j=0;j<view.size();j++){
+                        sorted.add(j);
+                    }
+                    Collections.sort(sorted, new Comparator<Integer>(){
+                        public int compare(Integer a, Integer b){
+                            return Double.compare(ageManager.getAge(view.get(b)), ageManager.getAge(view.get(a)));
+                        }
+                    });
+                    int k=Math.max(0, Math.min(n, view.size()));
+                    int[] expected=new int[k];
+                    for(int j=0;j<k;j++){
+                        expected[j]=sorted.get(j);
+                    }
+                    int[] actual=Arrays.copyOf(view.selectOldest(n), k);
+                    Arrays.sort(expected);
+                    Arrays.sort(actual);
+                    assertEquals("selectOldest("+n+") of "+c+" descriptors", Arrays.toString(expected), Arrays.toString(actual));
+                }
+            }
+        }
+    }
+
+    @Test
+    public void moveOldItemsAtTheEndMatchesTheInsertionSort(){
+        Random random=new Random(2);
+        for(int c:viewLengths){
+            for(int H:new int[]{0, 1, c/2, c}){
+                for(int i=0;i<checkedViews;i++){
+                    List<FingerDescriptor> view=HealingFixtures.createView(c, random);
+                    ViewManager viewManager=createViewManager(c, H, view);
+                    viewManager.moveOldItemsAtTheEnd();
+                    List<FingerDescriptor> expected=new ArrayList<FingerDescriptor>(view);
+                    HealingFixtures.moveOldItemsAtTheEnd(expected, c, H);
+                    assertEquals("moveOldItemsAtTheEnd for c="+c+", H="+H, expected, viewManager.getView());
+                }
+            }
+        }
+    }
+
+    @Test
+    public void removeOldItemsMatchesTheInsertionSort(){
+        Random random=new Random(3);
+        for(int c:viewLengths){
+            for(int H:new int[]{1, c/2, c}){
+                for(int i=0;i<checkedViews;i++){
+                    List<FingerDescriptor> view=HealingFixtures.createView(c+H, random);
+                    ViewManager viewManager=createViewManager(c, H, view);
+                    List<FingerDescriptor> expected=new ArrayList<FingerDescriptor>(view);
+                    HealingFixtures.removeOldItems(expected, H);
+                    assertEquals("removeOldItems for c="+c+", H="+H, expected, viewManager.getView());
+                }
+            }
+        }
+    }
+
+    /**
+	 * Creates a view manager whose view contains the given descriptors in the
+     * same order. With S equal to 0, the selection only removes the H oldest
+     * descriptors when they are more than c.
+	 */
+    private static ViewManager createViewManager(int c, int H, List<FingerDescriptor> view){
+        Finger myFinger=new Finger(new IntegerNetworkAddress(0), new RingIdentifier(0.0));
+        ViewManager viewManager=new ViewManager(c, H, 0, PeerSelectionPolicy.RAND, myFinger);
+        viewManager.select(view);
+        return viewManager;
+    }
+}
@@ -0,0 +1,134 @@
+/*
+ * Copyright (C) 2015 Evangelos Pournaras
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package components;
+
+import dsutil.protopeer.FingerDescriptor;
+import enums.PeerSelectionPolicy;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.SplittableRandom;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import org.junit.Test;
+import protopeer.Finger;
+import protopeer.RingIdentifier;
+import protopeer.network.NetworkAddress;
+import protopeer.network.IntegerNetworkAddress;
+
+/**
+ * Checks that the RAND peer selection draws the peers uniformly among the
+ * peers that have not been backed off, whatever their positions in the view,
+ * and that the OLD peer selection breaks the ties between descriptors of the
+ * same age by position, as the scan of the list did.
+ *
+ * @author Evangelos
+ */
+public class ViewManagerSelectionTest {
+
+    private final static int c=10;
+    private final static int selections=50000;
+    private final static int checkedViews=500;
+
+    @Test
+    public void randSelectionIsUniformAmongThePeersNotBackedOff(){
+        ViewManager viewManager=createViewManager();
+        List<FingerDescriptor> view=viewManager.getView();
+        int backedOff=c/2;
+        for(int i=0;i<backedOff;i++){
+            viewManager.backOff(view.get(i).getNetworkAddress(), 2*selections);
+        }
+        Map<NetworkAddress, Integer> counts=select(viewManager);
+        double expected=(double)selections/(c-backedOff);
+        for(int i=0;i<c;i++){
+            Integer count=counts.get(view.get(i).getNetworkAddress());
+            if(i<backedOff){
+                assertEquals("backed-off peer "+i, null, count);
+            }
+            else{
+                assertTrue("peer "+i+" selected "+count+" times", Math.abs(count-expected)<0.05*expected);
+            }
+        }
+    }
+
+    @Test
+    public void randSelectionFallsBackToAllThePeersWhenAllAreBackedOff(){
+        ViewManager viewManager=createViewManager();
+        List<FingerDescriptor> view=viewManager.getView();
+        for(int i=0;i<c;i++){
+            viewManager.backOff(view.get(i).getNetworkAddress(), 2*selections);
+        }
+        Map<NetworkAddress, Integer> counts=select(viewManager);
+        assertEquals(c, counts.size());
+    }
+
+    @Test
+    public void oldSelectionBreaksTiesByPosition(){
+        Random random=new Random(1);
+        AgeDescriptorManager ageManager=new AgeDescriptorManager();
+        for(int i=0;i<checkedViews;i++){
+            ViewManager viewManager=new ViewManager(c, 0, c/2, PeerSelectionPolicy.OLD, createFinger(0), null, new SplittableRandom(i));
+            List<FingerDescriptor> descriptors=new ArrayList<FingerDescriptor>();
+            for(int j=1;j<=c;j++){
+                FingerDescriptor descriptor=new FingerDescriptor(createFinger(j));
+                ageManager.initAge(descriptor);
+                ageManager.setAge(descriptor, random.nextInt(3));
+                descriptors.add(descriptor);
+            }
+            viewManager.select(descriptors);
+            viewManager.permute();
+            List<FingerDescriptor> view=viewManager.getView();
+            assertEquals(ageManager.getOldestDescriptor(view), viewManager.selectPeer());
+            List<FingerDescriptor> eligible=new ArrayList<FingerDescriptor>(view);
+            for(int j=0;j<c/2;j++){
+                FingerDescriptor backedOff=eligible.remove(random.nextInt(eligible.size()));
+                viewManager.backOff(backedOff.getNetworkAddress(), 1);
+            }
+            assertEquals(ageManager.getOldestDescriptor(eligible), viewManager.selectPeer());
+        }
+    }
+
+    private static Map<NetworkAddress, Integer> select(ViewManager viewManager){
+        Map<NetworkAddress, Integer> counts=new HashMap<NetworkAddress, Integer>();
+        for(int i=0;i<selections;i++){
+            NetworkAddress peer=viewManager.selectPeer().getNetworkAddress();
+            Integer count=counts.get(peer);
+            counts.put(peer, count==null?1:count+1);
+        }
+        return counts;
+    }
+
+    private static ViewManager createViewManager(){
+        ViewManager viewManager=new ViewManager(c, 0, c/2, PeerSelectionPolicy.RAND, createFinger(0), null, new SplittableRandom(1));
+        AgeDescriptorManager ageManager=new AgeDescriptorManager();
+        List<FingerDescriptor> descriptors=new ArrayList<FingerDescriptor>();
+        for(int i=1;i<=c;i++){
+            FingerDescriptor descriptor=new FingerDescriptor(createFinger(i));
+            ageManager.initAge(descriptor);
+            descriptors.add(descriptor);
+        }
+        viewManager.select(descriptors);
+        return viewManager;
+    }
+
+    private static Finger createFinger(int index){
+        return new Finger(new IntegerNetworkAddress(index), new RingIdentifier((double)index/(c+1)));
+    }
+}
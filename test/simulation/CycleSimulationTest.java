@@ -0,0 +1,164 @@
+/*
+ * Copyright (C) 2015 Evangelos Pournaras
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+
+
+package simulation;
+
+import components.AgeDescriptorManager;
+import components.ViewManager;
+import dsutil.protopeer.FingerDescriptor;
+import enums.PeerSelectionPolicy;
+import enums.ViewPropagationPolicy;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import static org.junit.Assert.assertEquals;
+import org.junit.Test;
+import protopeer.Finger;
+import protopeer.RingIdentifier;
+import protopeer.network.IntegerNetworkAddress;
+
+/**
+ * Checks that the operations on the views of the <code>CycleSimulation</code>
+ * give the same views as the <code>ViewManager</code> for the same views and
+ * buffers. The ages are drawn from a small range, so that many of them are
+ * equal. The buffers are not longer than H+S, so that the selection removes
+ * no items at random.
+ *
+ * @author Evangelos
+ */
+public class CycleSimulationTest {
+
+    private final static int N=200;
+    private final static int c=20;
+    private final static int[][] parameters={{0, 10}, {1, 9}, {5, 5}, {10, 0}, {10, 10}};
+    private final static int checkedViews=500;
+
+    @Test
+    public void selectMatchesTheViewManager(){
+        Random random=new Random(1);
+        for(int[] parameter:parameters){
+            int H=parameter[0];
+            int S=parameter[1];
+            for(int i=0;i<checkedViews;i++){
+                int size=1+random.nextInt(c);
+                int[] neighbors=createNeighbors(size, random);
+                int[] ages=createAges(size, random);
+                int length=1+random.nextInt(c/2);
+                int[] buffer=new int[length];
+                int[] bufferAges=createAges(length, random);
+                for(int j=0;j<length;j++){
+                    buffer[j]=random.nextBoolean()?neighbors[random.nextInt(size)]:random.nextInt(N);
+                }
+                CycleSimulation simulation=createSimulation(H, S, neighbors, ages);
+                simulation.select(0, buffer, bufferAges, length);
+                ViewManager viewManager=createViewManager(H, S, neighbors, ages);
+                viewManager.select(createDescriptors(buffer, bufferAges));
+                assertViewEquals("select for H="+H+", S="+S, viewManager, simulation);
+            }
+        }
+    }
+
+    @Test
+    public void moveOldItemsAtTheEndMatchesTheViewManager(){
+        Random random=new Random(2);
+        for(int[] parameter:parameters){
+            int H=parameter[0];
+            int S=parameter[1];
+            for(int i=0;i<checkedViews;i++){
+                int size=1+random.nextInt(c);
+                int[] neighbors=createNeighbors(size, random);
+                int[] ages=createAges(size, random);
+                CycleSimulation simulation=createSimulation(H, S, neighbors, ages);
+                simulation.moveOldItemsAtTheEnd(0);
+                ViewManager viewManager=createViewManager(H, S, neighbors, ages);
+                viewManager.moveOldItemsAtTheEnd();
+                assertViewEquals("moveOldItemsAtTheEnd for H="+H+", S="+S, viewManager, simulation);
+            }
+        }
+    }
+
+    private static void assertViewEquals(String operation, ViewManager viewManager, CycleSimulation simulation){
+        AgeDescriptorManager ageManager=new AgeDescriptorManager();
+        List<FingerDescriptor> view=viewManager.getView();
+        int[] expectedNeighbors=new int[view.size()];
+        int[] expectedAges=new int[view.size()];
+        for(int i=0;i<view.size();i++){
+            expectedNeighbors[i]=((IntegerNetworkAddress)view.get(i).getNetworkAddress()).getIntValue();
+            expectedAges[i]=(int)ageManager.getAge(view.get(i));
+        }
+        assertEquals(operation, Arrays.toString(expectedNeighbors), Arrays.toString(simulation.getView(0)));
+        assertEquals(operation, Arrays.toString(expectedAges), Arrays.toString(simulation.getAges(0)));
+    }
+
+    private static CycleSimulation createSimulation(int H, int S, int[] neighbors, int[] ages){
+        CycleSimulation simulation=new CycleSimulation(N, c, H, S, PeerSelectionPolicy.RAND, ViewPropagationPolicy.PUSHPULL, 1);
+        simulation.setView(0, neighbors, ages);
+        return simulation;
+    }
+
+    /**
+	 * Creates the view manager of node 0 whose view contains the given
+     * neighbors in the same order.
+	 */
+    private static ViewManager createViewManager(int H, int S, int[] neighbors, int[] ages){
+        ViewManager viewManager=new ViewManager(c, H, S, PeerSelectionPolicy.RAND, createFinger(0));
+        viewManager.select(createDescriptors(neighbors, ages));
+        return viewManager;
+    }
+
+    private static List<FingerDescriptor> createDescriptors(int[] neighbors, int[] ages){
+        AgeDescriptorManager ageManager=new AgeDescriptorManager();
+        List<FingerDescriptor> descriptors=new ArrayList<FingerDescriptor>();
+        for(int i=0;i<neighbors.length;i++){
+            FingerDescriptor descriptor=new FingerDescriptor(createFinger(neighbors[i]));
+            ageManager.initAge(descriptor);
+            ageManager.setAge(descriptor, ages[i]);
+            descriptors.add(descriptor);
+        }
+        return descriptors;
+    }
+
+    /**
+	 * Creates distinct neighbors of node 0.
+	 */
+    private static int[] createNeighbors(int size, Random random){
+        List<Integer> nodes=new ArrayList<Integer>();
+        for(int node=1;node<N;node++){
+            nodes.add(node);
+        }
+        int[] neighbors=new int[size];
+        for(int i=0;i<size;i++){
+            neighbors[i]=nodes.remove(random.nextInt(nodes.size()));
+        }
+        return neighbors;
+    }
+
+    private static int[] createAges(int length, Random random){
+        int[] ages=new int[length];
+        for(int i=0;i<length;i++){
+            ages[i]=random.nextInt(5);
+        }
+        return ages;
+    }
+
+    private static Finger createFinger(int index){
+        return new Finger(new IntegerNetworkAddress(index), new RingIdentifier((double)index/N));
+    }
+}
@@ -0,0 +1,190 @@
+/*
+ * Copyright (C) 2015 Evangelos Pournaras
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+
+package simulation;
+
+import components.ImmutableDescriptor;
+import components.SwapProtocol;
+import components.SwapTransport;
+import components.ViewManager;
+import dsutil.protopeer.FingerDescriptor;
+import enums.MessageType;
+import enums.PeerSelectionPolicy;
+import enums.ViewPropagationPolicy;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.SplittableRandom;
+import static org.junit.Assert.assertEquals;
+import org.junit.Test;
+import protopeer.Finger;
+import protopeer.RingIdentifier;
+import protopeer.network.IntegerNetworkAddress;
+import protopeer.network.NetworkAddress;
+
+/**
+ * Checks that the <code>ParallelSimulation</code> gives the same views with
+ * one and several workers as a sequential run of the
+ * <code>SwapProtocol</code> of the peers. The sequential run processes all
+ * the events in one queue, without windows and barriers, with the seeds, the
+ * latencies and the periods of the parallel simulation.
+ *
+ * @author Evangelos
+ */
+public class ParallelSimulationTest {
+
+    private final static int N=300;
+    private final static int c=20;
+    private final static int H=1;
+    private final static int S=9;
+    private final static int T=1000;
+    private final static int A=1000;
+    private final static double lookahead=50;
+    private final static long seed=3;
+    private final static double duration=20000;
+
+    @Test
+    public void parallelRunsMatchTheSequentialRun() throws InterruptedException{
+        for(ViewPropagationPolicy viewPropagationPolicy:ViewPropagationPolicy.values()){
+            for(PeerSelectionPolicy peerSelectionPolicy:PeerSelectionPolicy.values()){
+                SequentialRun sequential=new SequentialRun(peerSelectionPolicy, viewPropagationPolicy);
+                sequential.run(duration);
+                for(int workers:new int[]{1, 4}){
+                    ParallelSimulation simulation=new ParallelSimulation(N, c, H, S, peerSelectionPolicy, viewPropagationPolicy, T, A, lookahead, seed, workers);
+                    simulation.run(duration/2);
+                    simulation.run(duration/2);
+                    String run=viewPropagationPolicy+", "+peerSelectionPolicy+", "+workers+" workers";
+                    assertEquals(run, sequential.messages, simulation.getMessages());
+                    assertEquals(run, sequential.events, simulation.getEvents());
+                    assertEquals(run, sequential.getChecksum(), simulation.getChecksum());
+                }
+            }
+        }
+    }
+
+    /**
+	 * The peers with their swap protocols and one queue of events.
+	 */
+    private static class SequentialRun{
+
+        private final ViewManager[] viewManagers=new ViewManager[N];
+        private final SwapProtocol[] protocols=new SwapProtocol[N];
+        private final NetworkAddress[] addresses=new NetworkAddress[N];
+        private final SplittableRandom[] randoms=new SplittableRandom[N];
+        private final long[] sequences=new long[N];
+        private final PriorityQueue<Event> queue;
+        private double now;
+        private long events;
+        private long messages;
+
+        private SequentialRun(PeerSelectionPolicy peerSelectionPolicy, ViewPropagationPolicy viewPropagationPolicy){
+            this.queue=new PriorityQueue<Event>(11, new Comparator<Event>(){
+                public int compare(Event a, Event b){
+                    if(a.time!=b.time){
+                        return Double.compare(a.time, b.time);
+                    }
+                    if(a.source!=b.source){
+                        return Integer.compare(a.source, b.source);
+                    }
+                    return Long.compare(a.sequence, b.sequence);
+                }
+            });
+            SplittableRandom bootstrapRandom=new SplittableRandom(seed);
+            for(int i=0;i<N;i++){
+                final int peer=i;
+                this.randoms[i]=new SplittableRandom(new SplittableRandom(seed+i).nextLong());
+                Finger finger=createFinger(i);
+                this.addresses[i]=finger.getNetworkAddress();
+                this.viewManagers[i]=new ViewManager(c, H, S, peerSelectionPolicy, finger, null, this.randoms[i].split());
+                this.protocols[i]=new SwapProtocol(this.viewManagers[i], viewPropagationPolicy, A, 0, new SwapTransport(){
+                    public void send(MessageType type, NetworkAddress destination, boolean withBuffer){
+                        List<FingerDescriptor> buffer=withBuffer?viewManagers[peer].createBuffer():Collections.<FingerDescriptor>emptyList();
+                        double latency=lookahead*(1.0+randoms[peer].nextDouble());
+                        queue.add(new Event(now+latency, type, ((IntegerNetworkAddress)destination).getIntValue(), peer, sequences[peer]++, buffer, false));
+                        messages++;
+                    }
+                    public void merge(List<FingerDescriptor> buffer){
+                        viewManagers[peer].select(buffer);
+                    }
+                    public boolean accept(NetworkAddress source){
+                        return true;
+                    }
+                });
+                List<Finger> bootstrapPeers=new ArrayList<Finger>();
+                for(int j=0;j<c;j++){
+                    bootstrapPeers.add(createFinger(bootstrapRandom.nextInt(N)));
+                }
+                this.viewManagers[i].setBootstrapPeers(bootstrapPeers);
+                this.queue.add(new Event(this.randoms[i].nextDouble()*T, MessageType.ACTION, i, i, this.sequences[i]++, null, true));
+            }
+        }
+
+        private void run(double end){
+            while(!this.queue.isEmpty()&&this.queue.peek().time<end){
+                Event event=this.queue.poll();
+                this.now=event.time;
+                if(event.timer){
+                    this.protocols[event.peer].runActiveState(true);
+                    this.queue.add(new Event(event.time+T-(this.randoms[event.peer].nextDouble()-0.5)*T, MessageType.ACTION, event.peer, event.peer, this.sequences[event.peer]++, null, true));
+                }
+                else{
+                    this.protocols[event.peer].runPassiveState(event.type, this.addresses[event.source], event.buffer);
+                }
+                this.events++;
+            }
+        }
+
+        private long getChecksum(){
+            long checksum=17;
+            for(ViewManager viewManager:this.viewManagers){
+                for(ImmutableDescriptor descriptor:viewManager.getSnapshot().getDescriptors()){
+                    checksum=31*checksum+descriptor.getNetworkAddress().hashCode();
+                    checksum=31*checksum+Double.doubleToLongBits(descriptor.getAge());
+                }
+            }
+            return checksum;
+        }
+    }
+
+    private static class Event{
+
+        private final double time;
+        private final MessageType type;
+        private final int peer;
+        private final int source;
+        private final long sequence;
+        private final List<FingerDescriptor> buffer;
+        private final boolean timer;
+
+        private Event(double time, MessageType type, int peer, int source, long sequence, List<FingerDescriptor> buffer, boolean timer){
+            this.time=time;
+            this.type=type;
+            this.peer=peer;
+            this.source=source;
+            this.sequence=sequence;
+            this.buffer=buffer;
+            this.timer=timer;
+        }
+    }
+
+    private static Finger createFinger(int index){
+        return new Finger(new IntegerNetworkAddress(index), new RingIdentifier((double)index/N));
+    }
+}
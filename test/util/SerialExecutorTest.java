@@ -0,0 +1,93 @@
+/*
+ * Copyright (C) 2015 Evangelos Pournaras
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package util;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executor;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import org.junit.Test;
+
+/**
+ * Checks that the serial executor runs the tasks in the order they are
+ * offered, keeps draining the queue after a task fails and rejects the tasks
+ * beyond its capacity.
+ *
+ * @author Evangelos
+ */
+public class SerialExecutorTest {
+
+    @Test
+    public void tasksRunInOrderAfterAFailingTask(){
+        QueuedExecutor executor=new QueuedExecutor();
+        SerialExecutor serialExecutor=new SerialExecutor(executor, 100);
+        final List<Integer> runs=new ArrayList<Integer>();
+        for(int i=0;i<40;i++){
+            final int task=i;
+            assertTrue(serialExecutor.offer(new Runnable(){
+                public void run(){
+                    if(task%10==0){
+                        throw new IllegalStateException("failing task "+task);
+                    }
+                    runs.add(task);
+                }
+            }));
+        }
+        executor.runAll();
+        assertEquals(36, runs.size());
+        for(int i=1;i<runs.size();i++){
+            assertTrue(runs.get(i-1)<runs.get(i));
+        }
+        assertEquals(0, serialExecutor.size());
+    }
+
+    @Test
+    public void tasksBeyondTheCapacityAreRejected(){
+        QueuedExecutor executor=new QueuedExecutor();
+        SerialExecutor serialExecutor=new SerialExecutor(executor, 2);
+        Runnable task=new Runnable(){
+            public void run(){
+            }
+        };
+        assertTrue(serialExecutor.offer(task));
+        assertTrue(serialExecutor.offer(task));
+        assertTrue(!serialExecutor.offer(task));
+        executor.runAll();
+        assertTrue(serialExecutor.offer(task));
+    }
+
+    /**
+	 * An executor that queues the runners and runs them when asked, in the
+     * calling thread.
+	 */
+    private static class QueuedExecutor implements Executor{
+
+        private final List<Runnable> runners=new ArrayList<Runnable>();
+
+        public void execute(Runnable runner){
+            this.runners.add(runner);
+        }
+
+        private void runAll(){
+            while(!this.runners.isEmpty()){
+                this.runners.remove(0).run();
+            }
+        }
+    }
+}
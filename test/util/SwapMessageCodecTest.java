@@ -0,0 +1,387 @@
+/*
+ * Copyright (C) 2015 Evangelos Pournaras
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+
+
+package util;
+
+import components.PartnerDigests;
+import dsutil.protopeer.FingerDescriptor;
+import enums.FingerDescriptorTypes;
+import enums.MessageType;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.net.InetAddress;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.fail;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import protopeer.Finger;
+import protopeer.PeerIdentifier;
+import protopeer.RingIdentifier;
+import protopeer.network.IntegerNetworkAddress;
+import protopeer.network.NetworkAddress;
+import protopeer.network.mina.MinaAddress;
+import protopeer.util.LightweightObjectInputStream;
+import protopeer.util.LightweightObjectOutputStream;
+
+/**
+ * Checks that swap messages are identical after a round trip through the
+ * compact format of the <code>SwapMessageCodec</code>, both with the Java and
+ * the lightweight serialization, and that malformed input and colliding
+ * registrations are rejected.
+ *
+ * @author Evangelos
+ */
+public class SwapMessageCodecTest {
+
+    private final static int REGISTERED_TYPE_ID=100;
+
+    private enum RegisteredTypes{
+        LOAD, CAPACITY
+    }
+
+    private enum UnregisteredTypes{
+        LOAD
+    }
+
+    /**
+	 * An address of a kind the codec does not know, which is written with the
+     * Java serialization.
+	 */
+    private static class NamedAddress extends NetworkAddress{
+
+        private final String name;
+
+        private NamedAddress(String name){
+            this.name=name;
+        }
+
+        @Override
+        public long toLongValue(){
+            return this.name.hashCode();
+        }
+
+        @Override
+        public boolean equals(Object o){
+            return o instanceof NamedAddress&&((NamedAddress)o).name.equals(this.name);
+        }
+
+        @Override
+        public int hashCode(){
+            return this.name.hashCode();
+        }
+    }
+
+    /**
+	 * An identifier of a kind the codec does not know, which is written with
+     * the Java serialization.
+	 */
+    private static class IntegerIdentifier extends PeerIdentifier{
+
+        private final int id;
+
+        private IntegerIdentifier(int id){
+            this.id=id;
+        }
+
+        @Override
+        public double distanceTo(PeerIdentifier identifier){
+            return Math.abs(this.id-((IntegerIdentifier)identifier).id);
+        }
+
+        @Override
+        public double getMaxDistance(){
+            return Integer.MAX_VALUE;
+        }
+
+        @Override
+        public boolean equals(Object o){
+            return o instanceof IntegerIdentifier&&((IntegerIdentifier)o).id==this.id;
+        }
+
+        @Override
+        public int hashCode(){
+            return this.id;
+        }
+    }
+
+    @BeforeClass
+    public static void registerTypes(){
+        SwapMessageCodec.registerDescriptor(RegisteredTypes.LOAD, REGISTERED_TYPE_ID);
+    }
+
+    @Test
+    public void nullAndEmptyBuffersRoundTrip() throws Exception{
+        SwapMessage message=new SwapMessage();
+        this.checkRoundTrips(message);
+        message.type=MessageType.ACTION;
+        this.checkRoundTrips(message);
+        message.buffer=new ArrayList<FingerDescriptor>();
+        this.checkRoundTrips(message);
+    }
+
+    @Test
+    public void everyAddressKindRoundTrips() throws Exception{
+        NetworkAddress[] addresses={
+            new IntegerNetworkAddress(0),
+            new IntegerNetworkAddress(-1),
+            new IntegerNetworkAddress(Integer.MAX_VALUE),
+            new IntegerNetworkAddress(Integer.MIN_VALUE),
+            new MinaAddress(InetAddress.getByAddress(new byte[]{10, 0, 0, 1}), 0),
+            new MinaAddress(InetAddress.getByAddress(new byte[]{(byte)192, (byte)168, 1, (byte)255}), 65535),
+            new MinaAddress(InetAddress.getByName("::1"), 8080),
+            new MinaAddress(InetAddress.getByName("fe80::1:2:3:4"), 1),
+            new NamedAddress("peer")
+        };
+        for(NetworkAddress address:addresses){
+            SwapMessage message=createMessage(MessageType.REACTION);
+            message.buffer.add(createDescriptor(address, 1000.0));
+            this.checkRoundTrips(message);
+        }
+        SwapMessage message=createMessage(MessageType.ACTION);
+        message.buffer.add(new FingerDescriptor(new Finger(new IntegerNetworkAddress(7), new IntegerIdentifier(7))));
+        this.checkRoundTrips(message);
+    }
+
+    @Test
+    public void registeredAndUnregisteredTypesRoundTrip() throws Exception{
+        Object[] values={null, 5000.0, -0.0, 0.25, -1e300, Double.NaN, 42, Integer.MIN_VALUE, Long.MAX_VALUE, true, false, "load", new ArrayList<Integer>(Arrays.asList(1, 2))};
+        for(Object value:values){
+            SwapMessage message=createMessage(MessageType.ACTION);
+            FingerDescriptor descriptor=createDescriptor(new IntegerNetworkAddress(1), 3000.0);
+            descriptor.addDescriptor(RegisteredTypes.LOAD, value);
+            descriptor.addDescriptor(UnregisteredTypes.LOAD, value);
+            message.buffer.add(descriptor);
+            this.checkRoundTrips(message);
+        }
+        SwapMessage registered=createMessage(MessageType.ACTION);
+        registered.buffer.add(createDescriptor(new IntegerNetworkAddress(1), 0.0));
+        registered.buffer.get(0).addDescriptor(RegisteredTypes.LOAD, 1);
+        SwapMessage unregistered=createMessage(MessageType.ACTION);
+        unregistered.buffer.add(createDescriptor(new IntegerNetworkAddress(1), 0.0));
+        unregistered.buffer.get(0).addDescriptor(UnregisteredTypes.LOAD, 1);
+        if(SwapMessageCodec.getEncodedSize(registered)>=SwapMessageCodec.getEncodedSize(unregistered)){
+            fail("A registered type is not written as an ID");
+        }
+    }
+
+    @Test
+    public void deltaEncodedMessagesRoundTrip() throws Exception{
+        Random random=new Random(1);
+        NetworkAddress[] partners={new IntegerNetworkAddress(1), new IntegerNetworkAddress(2)};
+        PartnerDigests[] digests={new PartnerDigests(1000), new PartnerDigests(1000)};
+        List<FingerDescriptor> previous=new ArrayList<FingerDescriptor>();
+        int deltaMessages=0;
+        for(int i=0;i<200;i++){
+            int sender=i%2;
+            SwapMessage message=createMessage(random.nextBoolean()?MessageType.ACTION:MessageType.REACTION);
+            for(int j=0;j<1+random.nextInt(30);j++){
+                if(!previous.isEmpty()&&random.nextBoolean()){
+                    FingerDescriptor descriptor=previous.get(random.nextInt(previous.size())).clone();
+                    descriptor.replaceDescriptor(FingerDescriptorTypes.AGE, 1000.0*random.nextInt(100)+(random.nextBoolean()?0.5:0.0));
+                    message.buffer.add(descriptor);
+                }
+                else{
+                    message.buffer.add(createDescriptor(new IntegerNetworkAddress(random.nextInt(1000)), 1000.0*random.nextInt(100)));
+                }
+            }
+            SwapMessage expected=createMessage(message.type);
+            expected.buffer.addAll(message.buffer);
+            digests[sender].encode(message, partners[1-sender], i);
+            if(message.references!=null){
+                deltaMessages++;
+            }
+            SwapMessage received=(SwapMessage)javaDeserialize(javaSerialize(message));
+            assertEquals("unresolved references of message "+i, 0, digests[1-sender].decode(received, partners[sender], i));
+            assertMessageEquals(expected, received);
+            previous=expected.buffer;
+        }
+        if(deltaMessages==0){
+            fail("No message is delta encoded");
+        }
+    }
+
+    @Test
+    public void notEncodableMessagesHaveNoSize(){
+        SwapMessage message=createMessage(MessageType.ACTION);
+        FingerDescriptor descriptor=createDescriptor(new IntegerNetworkAddress(1), 0.0);
+        descriptor.addDescriptor(UnregisteredTypes.LOAD, new Object());
+        message.buffer.add(descriptor);
+        assertEquals(-1, SwapMessageCodec.getEncodedSize(message));
+    }
+
+    @Test
+    public void collidingRegistrationsAreRejected(){
+        SwapMessageCodec.registerDescriptor(RegisteredTypes.LOAD, REGISTERED_TYPE_ID);
+        try{
+            SwapMessageCodec.registerDescriptor(RegisteredTypes.LOAD, REGISTERED_TYPE_ID+1);
+            fail("A type is registered with two IDs");
+        }
+        catch(IllegalArgumentException e){
+        }
+        try{
+            SwapMessageCodec.registerDescriptor(RegisteredTypes.CAPACITY, REGISTERED_TYPE_ID);
+            fail("An ID is registered for two types");
+        }
+        catch(IllegalArgumentException e){
+        }
+        try{
+            SwapMessageCodec.registerDescriptor(RegisteredTypes.CAPACITY, 0);
+            fail("A type is registered with a not positive ID");
+        }
+        catch(IllegalArgumentException e){
+        }
+    }
+
+    @Test
+    public void malformedInputIsRejected() throws Exception{
+        int action=MessageType.ACTION.ordinal();
+        //a buffer of 2^32-2 descriptors
+        this.checkRejected(new byte[]{(byte)action, (byte)0xFF, (byte)0xFF, (byte)0xFF, (byte)0xFF, 0x0F});
+        //a negative number of descriptors
+        this.checkRejected(new byte[]{(byte)action, (byte)0xFF, (byte)0xFF, (byte)0xFF, (byte)0xFF, (byte)0xFF, (byte)0xFF, (byte)0xFF, (byte)0xFF, (byte)0xFF, 0x01});
+        //a delta encoded message with 2^28 references
+        this.checkRejected(new byte[]{(byte)(action|0x40), 0, 0, 0, (byte)0x80, (byte)0x80, (byte)0x80, (byte)0x80, 0x01});
+        //an unknown message type
+        this.checkRejected(new byte[]{0x3E, 0});
+        //a descriptor with an unregistered type ID
+        this.checkRejected(new byte[]{(byte)action, 2, 0, 1, 0, 0, 0, 0, 0, 0, 0, 0, 1, 99, 0});
+        //unregistered types of a class that is not an enum, of an unknown
+        //constant and of an unknown class
+        this.checkRejected(createUnregisteredType("java.lang.String", "CASE_INSENSITIVE_ORDER"));
+        this.checkRejected(createUnregisteredType(MessageType.class.getName(), "UNKNOWN"));
+        this.checkRejected(createUnregisteredType("util.UnknownTypes", "LOAD"));
+        //a serialized address that is not a network address
+        this.checkRejected(createSerializedAddress("address"));
+    }
+
+    /**
+	 * Returns an ACTION with one descriptor of an unregistered type with the
+     * given class and constant names.
+	 */
+    private static byte[] createUnregisteredType(String className, String name) throws IOException{
+        ByteArrayOutputStream bytes=new ByteArrayOutputStream();
+        DataOutputStream out=new DataOutputStream(bytes);
+        out.write(new byte[]{(byte)MessageType.ACTION.ordinal(), 2, 0, 1, 0, 0, 0, 0, 0, 0, 0, 0, 1, 0});
+        out.writeUTF(className);
+        out.writeUTF(name);
+        out.writeByte(0);
+        out.close();
+        return bytes.toByteArray();
+    }
+
+    /**
+	 * Returns an ACTION with one descriptor whose serialized address is the
+     * given object.
+	 */
+    private static byte[] createSerializedAddress(Object address) throws IOException{
+        byte[] serialized=javaSerialize(address);
+        ByteArrayOutputStream bytes=new ByteArrayOutputStream();
+        DataOutputStream out=new DataOutputStream(bytes);
+        out.write(new byte[]{(byte)MessageType.ACTION.ordinal(), 2, 0x30, (byte)serialized.length});
+        out.write(serialized);
+        out.write(new byte[]{0, 0, 0, 0, 0, 0, 0, 0, 0});
+        out.close();
+        return bytes.toByteArray();
+    }
+
+    private void checkRejected(byte[] bytes){
+        try{
+            SwapMessageCodec.decode(new DataInputStream(new ByteArrayInputStream(bytes)), new SwapMessage());
+            fail("Malformed input "+Arrays.toString(bytes)+" is decoded");
+        }
+        catch(IOException e){
+        }
+    }
+
+    private void checkRoundTrips(SwapMessage message) throws Exception{
+        assertMessageEquals(message, (SwapMessage)javaDeserialize(javaSerialize(message)));
+        ByteArrayOutputStream bytes=new ByteArrayOutputStream();
+        LightweightObjectOutputStream out=new LightweightObjectOutputStream(bytes);
+        message.serialize(out);
+        out.close();
+        SwapMessage lightweight=new SwapMessage();
+        lightweight.deserialize(new LightweightObjectInputStream(new ByteArrayInputStream(bytes.toByteArray())));
+        assertMessageEquals(message, lightweight);
+    }
+
+    private static void assertMessageEquals(SwapMessage expected, SwapMessage actual){
+        assertEquals(expected.type, actual.type);
+        assertNull(actual.references);
+        if(expected.buffer==null){
+            assertNull(actual.buffer);
+            return;
+        }
+        assertEquals(expected.buffer.size(), actual.buffer.size());
+        for(int i=0;i<expected.buffer.size();i++){
+            FingerDescriptor expectedDescriptor=expected.buffer.get(i);
+            FingerDescriptor actualDescriptor=actual.buffer.get(i);
+            assertEquals(expectedDescriptor.getNetworkAddress(), actualDescriptor.getNetworkAddress());
+            assertEquals(expectedDescriptor.getPeerIdentifier(), actualDescriptor.getPeerIdentifier());
+            assertEquals(expectedDescriptor.getDescriptors().keySet(), actualDescriptor.getDescriptors().keySet());
+            for(Enum type:expectedDescriptor.getDescriptors().keySet()){
+                Object expectedValue=expectedDescriptor.getDescriptor(type);
+                Object actualValue=actualDescriptor.getDescriptor(type);
+                if(expectedValue instanceof Double){
+                    assertEquals(Double.doubleToRawLongBits((Double)expectedValue), Double.doubleToRawLongBits((Double)actualValue));
+                }
+                else{
+                    assertEquals(expectedValue, actualValue);
+                }
+            }
+        }
+    }
+
+    private static SwapMessage createMessage(MessageType type){
+        SwapMessage message=new SwapMessage();
+        message.type=type;
+        message.buffer=new ArrayList<FingerDescriptor>();
+        return message;
+    }
+
+    private static FingerDescriptor createDescriptor(NetworkAddress address, double age){
+        FingerDescriptor descriptor=new FingerDescriptor(new Finger(address, new RingIdentifier(address.hashCode()/(double)Integer.MAX_VALUE)));
+        descriptor.addDescriptor(FingerDescriptorTypes.AGE, age);
+        return descriptor;
+    }
+
+    private static byte[] javaSerialize(Object object) throws IOException{
+        ByteArrayOutputStream bytes=new ByteArrayOutputStream();
+        ObjectOutputStream out=new ObjectOutputStream(bytes);
+        out.writeObject(object);
+        out.close();
+        return bytes.toByteArray();
+    }
+
+    private static Object javaDeserialize(byte[] bytes) throws Exception{
+        ObjectInputStream in=new ObjectInputStream(new ByteArrayInputStream(bytes));
+        Object object=in.readObject();
+        in.close();
+        return object;
+    }
+}
@@ -0,0 +1,104 @@
+/*
+ * Copyright (C) 2015 Evangelos Pournaras
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+
+package util;
+
+import dsutil.protopeer.FingerDescriptor;
+import enums.MessageType;
+import java.util.List;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import org.junit.Test;
+import protopeer.Finger;
+import protopeer.network.IntegerNetworkAddress;
+
+/**
+ * Checks the ownership rules of the swap message pool with the shallow copy
+ * that a peer sends: the buffer delivered to the receiver is not reused by the
+ * sender, and the receiver reuses the buffer list after releasing it.
+ *
+ * @author Evangelos
+ */
+public class SwapMessagePoolTest {
+
+    @Test
+    public void sentBufferIsNotReusedBySender(){
+        SwapMessagePool senderPool=new SwapMessagePool(4);
+        SwapMessage sent=senderPool.acquire();
+        sent.type=MessageType.ACTION;
+        sent.buffer.add(createDescriptor(1));
+        sent.buffer.add(createDescriptor(2));
+        SwapMessage delivered=(SwapMessage) sent.clone();
+        senderPool.recycleSent(sent);
+        assertNull(sent.buffer);
+
+        SwapMessage next=senderPool.acquire();
+        assertSame(sent, next);
+        assertNotSame(delivered.buffer, next.buffer);
+        next.buffer.add(createDescriptor(3));
+        assertEquals(2, delivered.buffer.size());
+        assertEquals(MessageType.ACTION, delivered.type);
+    }
+
+    @Test
+    public void receiverReusesReleasedMessage(){
+        SwapMessagePool senderPool=new SwapMessagePool(4);
+        SwapMessagePool receiverPool=new SwapMessagePool(4);
+        SwapMessage sent=senderPool.acquire();
+        sent.type=MessageType.REACTION;
+        sent.sequence=7;
+        sent.buffer.add(createDescriptor(1));
+        sent.setSourceAddress(new IntegerNetworkAddress(1));
+        SwapMessage delivered=(SwapMessage) sent.clone();
+        senderPool.recycleSent(sent);
+        List<FingerDescriptor> buffer=delivered.buffer;
+
+        receiverPool.release(delivered);
+        SwapMessage reused=receiverPool.acquire();
+        assertSame(delivered, reused);
+        assertSame(buffer, reused.buffer);
+        assertTrue(reused.buffer.isEmpty());
+        assertNull(reused.type);
+        assertEquals(0, reused.sequence);
+        assertNull(reused.getSourceAddress());
+    }
+
+    @Test
+    public void poolIsBounded(){
+        SwapMessagePool pool=new SwapMessagePool(2);
+        SwapMessage[] messages=new SwapMessage[3];
+        for(int i=0;i<messages.length;i++){
+            messages[i]=pool.acquire();
+        }
+        for(SwapMessage message:messages){
+            pool.release(message);
+        }
+        assertSame(messages[1], pool.acquire());
+        assertSame(messages[0], pool.acquire());
+        SwapMessage created=pool.acquire();
+        assertNotSame(messages[2], created);
+        assertTrue(created.buffer.isEmpty());
+    }
+
+    private static FingerDescriptor createDescriptor(int address){
+        return new FingerDescriptor(new Finger(new IntegerNetworkAddress(address), null));
+    }
+}
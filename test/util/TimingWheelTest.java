@@ -0,0 +1,80 @@
+/*
+ * Copyright (C) 2015 Evangelos Pournaras
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package util;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import static org.junit.Assert.assertTrue;
+import org.junit.Test;
+
+/**
+ * Checks that the timing wheel fires the tasks after their delays, also after
+ * more than one rotation of the wheel, and that a failing task does not stop
+ * the other tasks.
+ *
+ * @author Evangelos
+ */
+public class TimingWheelTest {
+
+    @Test
+    public void tasksFireAfterTheirDelaysAcrossRotations() throws Exception{
+        TimingWheel wheel=new TimingWheel(1, 8, 1);
+        wheel.start();
+        try{
+            final CountDownLatch fired=new CountDownLatch(1);
+            final long start=System.nanoTime();
+            final long[] elapsed=new long[1];
+            wheel.schedule(new Runnable(){
+                public void run(){
+                    elapsed[0]=System.nanoTime()-start;
+                    fired.countDown();
+                }
+            }, 30);
+            assertTrue(fired.await(5, TimeUnit.SECONDS));
+            assertTrue("fired after "+elapsed[0]+" ns", elapsed[0]>=TimeUnit.MILLISECONDS.toNanos(30));
+        }
+        finally{
+            wheel.stop();
+        }
+    }
+
+    @Test
+    public void aFailingTaskDoesNotStopTheOthers() throws Exception{
+        TimingWheel wheel=new TimingWheel(1, 8, 1);
+        wheel.start();
+        try{
+            final CountDownLatch fired=new CountDownLatch(2);
+            for(int i=0;i<2;i++){
+                wheel.schedule(new Runnable(){
+                    public void run(){
+                        throw new IllegalStateException("failing task");
+                    }
+                }, 2);
+                wheel.schedule(new Runnable(){
+                    public void run(){
+                        fired.countDown();
+                    }
+                }, 2);
+            }
+            assertTrue(fired.await(5, TimeUnit.SECONDS));
+        }
+        finally{
+            wheel.stop();
+        }
+    }
+}